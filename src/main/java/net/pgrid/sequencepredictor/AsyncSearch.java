@@ -0,0 +1,114 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs pattern searches asynchronously, for {@code Predictor.initAsync}.
+ *
+ * Every search has its own SearchContext. When its future completes
+ * exceptionally before the search is done, because it is cancelled or times
+ * out, the context is cancelled, so the search stops at its next check and
+ * frees its thread. A search that has not started yet is skipped.
+ *
+ * Timeouts are run by a single daemon timer thread, which only completes the
+ * futures that are still pending at their deadline.
+ *
+ * @author Patrick Kramer
+ */
+final class AsyncSearch {
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private AsyncSearch() {
+    }
+
+    /**
+     * Holds the timer, so the timer thread is only started when a timeout is
+     * used.
+     */
+    private static final class Timer {
+        private static final ScheduledThreadPoolExecutor TIMER =
+                new ScheduledThreadPoolExecutor(1, r -> {
+                    Thread thread = new Thread(r, "predictor-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        static {
+            TIMER.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * Starts the search of the given Predictor on the executor.
+     * @param predictor The Predictor.
+     * @param executor  The executor that runs the search.
+     * @return          The future of the initialized Predictor.
+     */
+    static CompletableFuture<Predictor> start(Predictor predictor, Executor executor) {
+        SearchContext search = new SearchContext();
+        CompletableFuture<Predictor> future = new CompletableFuture<>();
+        future.whenComplete((result, failure) -> {
+            if (failure != null) {
+                search.cancel();
+            }
+        });
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(predictor.search(null, search));
+                } catch (NoPatternFoundException | RuntimeException | Error ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Completes the futures that are still pending after the timeout with a
+     * {@code SearchTimeoutException}.
+     * @param futures The futures.
+     * @param timeout The timeout.
+     * @param unit    The unit of the timeout.
+     */
+    static void timeout(List<CompletableFuture<Predictor>> futures, long timeout,
+            TimeUnit unit) {
+        ScheduledFuture<?> task = Timer.TIMER.schedule(() -> {
+            for (CompletableFuture<Predictor> future : futures) {
+                future.completeExceptionally(
+                        new SearchTimeoutException("Search deadline exceeded"));
+            }
+        }, timeout, unit);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .whenComplete((result, failure) -> task.cancel(false));
+    }
+}
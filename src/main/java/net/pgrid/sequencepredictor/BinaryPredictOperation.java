@@ -44,6 +44,19 @@ public interface BinaryPredictOperation extends
         return applyInverse(lastOriginal, lastComputed);
     }
     
+    /**
+     * Returns 1, since {@code computeNext} only reads the last value of both 
+     * Lists.
+     * 
+     * Implementations that override {@code computeNext} to read further back
+     * must override this method as well.
+     * @return 1
+     */
+    @Override
+    public default int historySize() {
+        return 1;
+    }
+    
     @Override
     public double applyAsDouble(double left, double right);
     
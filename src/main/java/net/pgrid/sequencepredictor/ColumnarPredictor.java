@@ -0,0 +1,498 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects the patterns of many sequences of the same length at once.
+ *
+ * Intended for tables of many columns, such as metrics. Instead of one search
+ * per column, a single depth-first search runs over all columns: every level
+ * of the search holds the values of all undecided columns in one array,
+ * value {@code t} of column slot {@code j} at index {@code t * k + j} for
+ * {@code k} columns, so every operation is applied to all columns in one
+ * sweep over consecutive memory. Columns that become constant are resolved
+ * and dropped from the search, columns that cannot follow a branch are only
+ * dropped from that branch, and columns that follow the same chain of
+ * operations share the cost of every level.
+ *
+ * Every column gets the same pattern as {@code new Predictor(column).init()}
+ * would find. This includes the exact search of integer sequences; columns
+ * whose integer levels exceed 2^53, where doubles are no longer exact, are
+ * detected with their own Predictor, as are integer columns with a level
+ * that narrowly misses being constant (see {@code DoubleDouble}). Periodic and 
+ * geometric columns are detected up front by the same pre-passes as 
+ * {@code init()}.
+ *
+ * @author Patrick Kramer
+ */
+public class ColumnarPredictor {
+
+    /**
+     * The largest magnitude up to which integral doubles are exact.
+     */
+    private static final double MAX_EXACT_DOUBLE = 0x1p53;
+
+    private final double[][] columns;
+    private final int length;
+
+    // Per depth: the values, the column of every slot, whether every slot is
+    // searched exactly (as integers), and the amount of values and slots.
+    private double[][] levels = new double[8][];
+    private int[][] slots = new int[8][];
+    private boolean[][] exact = new boolean[8][];
+    private int[] lengths = new int[8];
+    private int[] widths = new int[8];
+    private PredictOperation[] ops = new PredictOperation[8];
+
+    // Per column: the result, whether it is decided, and whether its input
+    // holds exact integers.
+    private Predictor[] results;
+    private boolean[] done;
+    private boolean[] delegated;
+    private boolean[] integral;
+
+    // Per slot scratch space for classifying a level.
+    private int[] state = new int[0];
+
+    /**
+     * Initializes a new ColumnarPredictor.
+     * @param columns The sequences, all of the same length, not null.
+     * @throws IllegalArgumentException - If the columns differ in length.
+     */
+    public ColumnarPredictor(double[][] columns) {
+        this.columns = columns;
+        this.length = columns.length == 0 ? 0 : columns[0].length;
+        for (double[] column : columns) {
+            if (column.length != length) {
+                throw new IllegalArgumentException("Columns differ in length");
+            }
+        }
+    }
+
+    /**
+     * Detects the patterns of all columns.
+     * @return The initialized Predictor of every column, or null for columns
+     *         without a pattern.
+     * @throws SearchCancelledException - If the thread is interrupted.
+     */
+    public Predictor[] init() throws SearchCancelledException {
+        return init(new SearchContext());
+    }
+
+    /**
+     * Detects the patterns of all columns, giving up after the given timeout.
+     * @param timeout The maximum time to search.
+     * @param unit    The unit of the timeout, not null.
+     * @return        The initialized Predictor of every column, or null for
+     *                columns without a pattern.
+     * @throws SearchTimeoutException   - If the timeout passes.
+     * @throws SearchCancelledException - If the thread is interrupted.
+     */
+    public Predictor[] init(long timeout, TimeUnit unit) throws SearchCancelledException {
+        return init(new SearchContext(System.nanoTime() + unit.toNanos(timeout)));
+    }
+
+    /**
+     * Detects the patterns of all columns as part of the given search.
+     * @param search The search.
+     * @return       The Predictors.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    private Predictor[] init(SearchContext search) throws SearchCancelledException {
+        int count = columns.length;
+        results = new Predictor[count];
+        done = new boolean[count];
+        delegated = new boolean[count];
+        integral = new boolean[count];
+        if (length < 2) {
+            return results;
+        }
+
+        // Classify the input columns, like Predictor.init and SearchTableau.
+        int k = 0;
+        for (int c = 0; c < count; c++) {
+            boolean finite = true, isIntegral = true;
+            double max = 0;
+            for (double value : columns[c]) {
+                finite &= Double.isFinite(value);
+                isIntegral &= value == Math.rint(value);
+                max = Math.max(max, Math.abs(value));
+            }
+            Predictor closed;
+            if (!finite) {
+                done[c] = true;
+            } else if ((closed = prepass(columns[c])) != null) {
+                results[c] = closed;
+                done[c] = true;
+            } else if (isIntegral && max > MAX_EXACT_DOUBLE
+                    && max <= SearchTableau.MAX_EXACT) {
+                done[c] = true;
+                delegated[c] = true;
+            } else {
+                integral[c] = isIntegral;
+                k++;
+            }
+        }
+        double[] level = level(0, length * k);
+        int[] slot = slots(0, k);
+        boolean[] integers = exact[0];
+        int j = 0;
+        for (int c = 0; c < count; c++) {
+            if (!done[c]) {
+                slot[j] = c;
+                integers[j] = integral[c];
+                double[] column = columns[c];
+                for (int t = 0; t < length; t++) {
+                    level[t * k + j] = column[t];
+                }
+                j++;
+            }
+        }
+        lengths[0] = length;
+        widths[0] = k;
+
+        search(0, null, search);
+
+        for (int c = 0; c < count; c++) {
+            if (delegated[c]) {
+                try {
+                    results[c] = new Predictor(columns[c]).init();
+                } catch (SearchCancelledException ex) {
+                    throw ex;
+                } catch (NoPatternFoundException ex) {
+                    // No pattern, leave null
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the pattern of a column found by the pre-passes of the search,
+     * see {@code SearchTableau.prepass}.
+     * @param column The values of the column, all finite.
+     * @return       The initialized Predictor, or null if the column is not
+     *               periodic or geometric.
+     */
+    private static Predictor prepass(double[] column) {
+        if (column.length < 3) {
+            return null;
+        }
+        List<Double> values = new ArrayList<>(column.length);
+        for (double value : column) {
+            values.add(value);
+        }
+        return SearchTableau.prepass(values);
+    }
+
+    /**
+     * Searches the patterns of the columns at the given depth.
+     * @param depth  The depth.
+     * @param prev   The operation that derived the level, can be null.
+     * @param search The search.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    private void search(int depth, PredictOperation prev, SearchContext search)
+            throws SearchCancelledException {
+        search.check();
+        int len = lengths[depth];
+        if (len < 2 || widths[depth] == 0) {
+            return;
+        }
+        classify(depth);
+        if (widths[depth] == 0) {
+            return;
+        }
+
+        for (PredictOperation operation : Operations.getAll()) {
+            if (prev == null || operation.canApplyAfter(prev)) {
+                Object event = Events.beginBranch();
+                int level = search.descend();
+                try {
+                    ops[depth] = operation;
+                    apply(operation, depth);
+                    search(depth + 1, operation, search);
+                } finally {
+                    search.ascend();
+                    Events.endBranch(event, operation, level, false);
+                }
+                compact(depth);
+                if (widths[depth] == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the constant columns of a level, and drops the columns that
+     * are decided or contain non-finite values.
+     * @param depth The depth.
+     */
+    private void classify(int depth) {
+        int len = lengths[depth];
+        int k = widths[depth];
+        double[] in = levels[depth];
+        int[] slot = slots[depth];
+        boolean[] ex = exact[depth];
+        if (state.length < k) {
+            state = new int[k];
+        }
+
+        // 1: constant so far, 0: not constant, -1: not finite or decided.
+        for (int j = 0; j < k; j++) {
+            state[j] = done[slot[j]] ? -1 : 1;
+        }
+        for (int t = 0; t < len; t++) {
+            int base = t * k;
+            for (int j = 0; j < k; j++) {
+                double value = in[base + j];
+                if (!Double.isFinite(value)) {
+                    state[j] = -1;
+                } else if (state[j] == 1 && !(ex[j]
+                        ? value == in[j] : Predictor.fuzzyEq(value, in[j]))) {
+                    state[j] = 0;
+                }
+            }
+        }
+        for (int j = 0; j < k; j++) {
+            if (state[j] == 1) {
+                resolve(slot[j], depth);
+                state[j] = -1;
+            } else if (state[j] == 0 && depth > 0 && !ex[j] && integral[slot[j]]
+                    && DoubleDouble.nearMiss(in, j, k, len)) {
+                // Init escalates to double-double precision here, which needs
+                // the input of the column.
+                done[slot[j]] = true;
+                delegated[slot[j]] = true;
+                state[j] = -1;
+            }
+        }
+        retain(depth);
+    }
+
+    /**
+     * Drops the columns of a level that have been decided below it.
+     * @param depth The depth.
+     */
+    private void compact(int depth) {
+        int k = widths[depth];
+        int[] slot = slots[depth];
+        for (int j = 0; j < k; j++) {
+            state[j] = done[slot[j]] ? -1 : 0;
+        }
+        retain(depth);
+    }
+
+    /**
+     * Keeps only the slots of a level whose state is not -1, preserving their
+     * order.
+     * @param depth The depth.
+     */
+    private void retain(int depth) {
+        int len = lengths[depth];
+        int k = widths[depth];
+        double[] in = levels[depth];
+        int[] slot = slots[depth];
+        boolean[] ex = exact[depth];
+        int kept = 0;
+        for (int j = 0; j < k; j++) {
+            if (state[j] != -1) {
+                slot[kept] = slot[j];
+                ex[kept] = ex[j];
+                kept++;
+            }
+        }
+        if (kept == k) {
+            return;
+        }
+        // Moving values to lower indices in ascending order never overwrites
+        // a value that has not been moved yet.
+        int out = 0;
+        for (int t = 0; t < len; t++) {
+            int base = t * k;
+            for (int j = 0; j < k; j++) {
+                if (state[j] != -1) {
+                    in[out++] = in[base + j];
+                }
+            }
+        }
+        widths[depth] = kept;
+    }
+
+    /**
+     * Writes the values derived by the operation from a level into the level
+     * below, for all of its columns.
+     *
+     * A column stays exact below a difference if all differences are at most
+     * 2^53, and below a division if all quotients are integers. Columns whose
+     * exact differences exceed 2^53 are delegated to their own Predictor.
+     *
+     * @param operation The operation.
+     * @param depth     The depth of the level.
+     */
+    private void apply(PredictOperation operation, int depth) {
+        int len = lengths[depth];
+        int k = widths[depth];
+        double[] in = levels[depth];
+        boolean[] ex = exact[depth];
+        int outLen = operation instanceof BinaryPredictOperation ? len - 1 : len;
+        double[] out = level(depth + 1, outLen * k);
+        int[] outSlot = slots(depth + 1, k);
+        boolean[] outEx = exact[depth + 1];
+        System.arraycopy(slots[depth], 0, outSlot, 0, k);
+        lengths[depth + 1] = outLen;
+        widths[depth + 1] = k;
+
+        if (operation == Operations.diff()) {
+            for (int t = 0; t < outLen; t++) {
+                int base = t * k;
+                for (int j = 0; j < k; j++) {
+                    out[base + j] = in[base + k + j] - in[base + j];
+                }
+            }
+        } else if (operation == Operations.divide()) {
+            for (int t = 0; t < outLen; t++) {
+                int base = t * k;
+                for (int j = 0; j < k; j++) {
+                    out[base + j] = in[base + k + j] / in[base + j];
+                }
+            }
+        } else if (operation == Operations.invert()) {
+            for (int i = 0; i < outLen * k; i++) {
+                out[i] = 1 / in[i];
+            }
+        } else if (operation instanceof BinaryPredictOperation) {
+            BinaryPredictOperation binary = (BinaryPredictOperation) operation;
+            for (int t = 0; t < outLen; t++) {
+                int base = t * k;
+                for (int j = 0; j < k; j++) {
+                    out[base + j] = binary.applyAsDouble(in[base + j], in[base + k + j]);
+                }
+            }
+        } else {
+            UnaryPredictOperation unary = (UnaryPredictOperation) operation;
+            for (int i = 0; i < outLen * k; i++) {
+                out[i] = unary.applyAsDouble(in[i]);
+            }
+        }
+
+        for (int j = 0; j < k; j++) {
+            outEx[j] = ex[j] && exact(operation, depth, out, outLen, k, j);
+        }
+    }
+
+    /**
+     * Returns whether the exact column in the given slot stays exact below
+     * the operation, and delegates it if its values become too large.
+     * @param operation The operation.
+     * @param depth     The depth of the level.
+     * @param out       The values derived by the operation.
+     * @param outLen    The amount of derived values per column.
+     * @param k         The amount of slots.
+     * @param j         The slot.
+     * @return          True if the derived values are exact.
+     */
+    private boolean exact(PredictOperation operation, int depth, double[] out,
+            int outLen, int k, int j) {
+        double[] in = levels[depth];
+        if (operation == Operations.diff()) {
+            for (int t = 0; t < outLen; t++) {
+                if (Math.abs(out[t * k + j]) > MAX_EXACT_DOUBLE) {
+                    int column = slots[depth][j];
+                    done[column] = true;
+                    delegated[column] = true;
+                    return false;
+                }
+            }
+            return true;
+        } else if (operation == Operations.divide()) {
+            for (int t = 0; t < outLen; t++) {
+                double q = out[t * k + j];
+                if (!Double.isFinite(q) || q != Math.rint(q)
+                        || q * in[t * k + j] != in[(t + 1) * k + j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the Predictor of a column that is constant at the given depth.
+     * @param column The column.
+     * @param depth  The depth of its constant level.
+     */
+    private void resolve(int column, int depth) {
+        Predictor below = null;
+        for (int level = depth; level > 0; level--) {
+            int k = widths[level];
+            int j = Arrays.binarySearch(slots[level], 0, k, column);
+            double[] values = new double[lengths[level]];
+            double[] in = levels[level];
+            for (int t = 0; t < values.length; t++) {
+                values[t] = in[t * k + j];
+            }
+            below = new Predictor(values, level < depth ? ops[level] : null, below);
+        }
+        results[column] = new Predictor(columns[column],
+                depth > 0 ? ops[0] : null, below);
+        done[column] = true;
+    }
+
+    /**
+     * Returns the value array of a level, growing it if necessary.
+     * @param depth The depth.
+     * @param size  The amount of values.
+     * @return      The array.
+     */
+    private double[] level(int depth, int size) {
+        if (depth >= levels.length) {
+            int capacity = 2 * levels.length;
+            levels = Arrays.copyOf(levels, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            exact = Arrays.copyOf(exact, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            ops = Arrays.copyOf(ops, capacity);
+        }
+        if (levels[depth] == null || levels[depth].length < size) {
+            levels[depth] = new double[size];
+        }
+        return levels[depth];
+    }
+
+    /**
+     * Returns the slot array of a level, growing it if necessary.
+     * @param depth The depth.
+     * @param size  The amount of slots.
+     * @return      The array.
+     */
+    private int[] slots(int depth, int size) {
+        if (slots[depth] == null || slots[depth].length < size) {
+            slots[depth] = new int[size];
+            exact[depth] = new boolean[size];
+        }
+        return slots[depth];
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generator of the predictions of a detected pattern, specialized at runtime.
+ *
+ * The chain of operations of the pattern is turned into a single
+ * MethodHandle, in which every level is a step that updates the last value of
+ * that level from the level below, and the constant level is bound as a
+ * constant. Generation therefore only reads and writes an array of doubles,
+ * without the levels and Lists of {@code Predictor.getNext()}. The handle is
+ * kept in an instance field, which the JIT does not treat as a constant, so
+ * every value is computed by invoking the handle rather than by code inlined
+ * into the caller.
+ * Built-in operations are bound to their arithmetic directly, and
+ * user-supplied operations to their {@code applyInverse} method. The
+ * difference of periodic patterns ({@code Operations.diff(int)}) is bound to
+ * a ring of the last period of its level.
+ *
+ * A CompiledPattern starts after the last value of the Predictor it is
+ * compiled from, and generates the same values as {@code getNext()} on that
+ * Predictor. It is independent of the Predictor, but not thread-safe.
+ *
+ * @author Patrick Kramer
+ */
+public final class CompiledPattern {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType BINARY = MethodType.methodType(
+            double.class, double.class, double.class);
+    private static final MethodType UNARY = MethodType.methodType(
+            double.class, double.class);
+
+    private final MethodHandle next;
+    private final double[] last;
+    private final int depth;
+
+    /**
+     * Compiles the pattern of the given Predictor.
+     * @param predictor The initialized Predictor.
+     * @throws IllegalArgumentException - If an operation of the pattern is not
+     *         a BinaryPredictOperation or UnaryPredictOperation that only
+     *         reads the last values, see {@code PredictOperation.historySize()},
+     *         or the difference of a periodic pattern.
+     */
+    CompiledPattern(Predictor predictor) {
+        List<MethodHandle> ops = new ArrayList<>();
+        List<Boolean> binary = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (Predictor level = predictor; level != null; level = level.getDiffs()) {
+            List<Double> computed = level.getComputed();
+            values.add(computed.get(computed.size() - 1));
+            if (!level.isConstant()) {
+                PredictOperation op = level.getOperation();
+                if (op instanceof Operations.LagDifference) {
+                    ops.add(Ring.handle(computed, ((Operations.LagDifference) op).getLag()));
+                    binary.add(false);
+                } else if ((op instanceof BinaryPredictOperation
+                        || op instanceof UnaryPredictOperation)
+                        && op.historySize() == 1) {
+                    ops.add(inverse(op));
+                    binary.add(op instanceof BinaryPredictOperation);
+                } else {
+                    throw new IllegalArgumentException(
+                            "Operation cannot be compiled: " + op.description());
+                }
+            }
+        }
+        this.depth = ops.size();
+        this.last = new double[depth];
+        for (int i = 0; i < depth; i++) {
+            last[i] = values.get(i);
+        }
+        this.next = depth == 0 ? constant(values.get(0))
+                : chain(ops, binary, values.get(depth));
+    }
+
+    /**
+     * Returns the amount of operations of the pattern.
+     * @return The depth of the constant level.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Computes the next value of the pattern.
+     * @return The next value.
+     */
+    public double nextDouble() {
+        try {
+            return (double) next.invokeExact(last);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Fills the array with the next values of the pattern.
+     * @param values The array.
+     */
+    public void fill(double[] values) {
+        fill(values, 0, values.length);
+    }
+
+    /**
+     * Fills a range of the array with the next values of the pattern.
+     * @param values The array.
+     * @param offset The index of the first value.
+     * @param length The amount of values.
+     * @throws IndexOutOfBoundsException - If the range is outside the array.
+     */
+    public void fill(double[] values, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > values.length - length) {
+            throw new IndexOutOfBoundsException("Range " + offset + " + " + length
+                    + " outside array of length " + values.length);
+        }
+        MethodHandle handle = next;
+        double[] state = last;
+        try {
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = (double) handle.invokeExact(state);
+            }
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns a handle of type {@code (double[])double} that returns the
+     * given constant.
+     * @param value The constant.
+     * @return      The handle.
+     */
+    private static MethodHandle constant(double value) {
+        return MethodHandles.dropArguments(
+                MethodHandles.constant(double.class, value), 0, double[].class);
+    }
+
+    /**
+     * Builds the handle that advances the state of the pattern and returns its
+     * next value.
+     *
+     * Element {@code i} of the state holds the last value of level {@code i}.
+     * The steps run from the deepest level up, as in {@code computeNext()}:
+     * every level adds the next value of the level below to its last value.
+     *
+     * @param ops      The inverse of every operation, see {@code inverse()}.
+     * @param binary   Whether every inverse is binary.
+     * @param constant The value of the constant level.
+     * @return         The handle, of type {@code (double[])double}.
+     */
+    private static MethodHandle chain(List<MethodHandle> ops, List<Boolean> binary,
+            double constant) {
+        MethodHandle getter = MethodHandles.arrayElementGetter(double[].class);
+        MethodHandle setter = MethodHandles.arrayElementSetter(double[].class);
+        MethodHandle result = MethodHandles.insertArguments(getter, 1, 0);
+        for (int i = 0; i < ops.size(); i++) {
+            MethodHandle inverse = ops.get(i);
+            // The next value of level i, as (double[])double.
+            MethodHandle below = i + 1 < ops.size()
+                    ? MethodHandles.insertArguments(getter, 1, i + 1) : null;
+            MethodHandle value;
+            if (binary.get(i)) {
+                MethodHandle current = MethodHandles.insertArguments(getter, 1, i);
+                if (below == null) {
+                    value = MethodHandles.filterArguments(
+                            MethodHandles.insertArguments(inverse, 1, constant), 0, current);
+                } else {
+                    value = MethodHandles.permuteArguments(
+                            MethodHandles.filterArguments(inverse, 0, current, below),
+                            MethodType.methodType(double.class, double[].class), 0, 0);
+                }
+            } else if (below == null) {
+                // Not folded into a constant, the inverse can have state.
+                value = MethodHandles.dropArguments(
+                        MethodHandles.insertArguments(inverse, 0, constant),
+                        0, double[].class);
+            } else {
+                value = MethodHandles.filterArguments(inverse, 0, below);
+            }
+            // Stores the next value of level i, as (double[])void.
+            MethodHandle store = MethodHandles.permuteArguments(
+                    MethodHandles.insertArguments(setter, 1, i),
+                    MethodType.methodType(void.class, double.class, double[].class), 1, 0);
+            MethodHandle step = MethodHandles.foldArguments(store, value);
+            // Steps folded in later run first, so the deepest level runs first.
+            result = MethodHandles.foldArguments(result, step);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a handle of the inverse of the given operation.
+     * @param op The operation.
+     * @return   The handle, of type {@code (double,double)double} for binary
+     *           operations and {@code (double)double} otherwise.
+     */
+    private static MethodHandle inverse(PredictOperation op) {
+        try {
+            Opcode code = Opcode.of(op);
+            if (code == Opcode.DIFF) {
+                return LOOKUP.findStatic(CompiledPattern.class, "add", BINARY);
+            } else if (code == Opcode.DIVIDE) {
+                return LOOKUP.findStatic(CompiledPattern.class, "multiply", BINARY);
+            } else if (code == Opcode.INVERT) {
+                return LOOKUP.findStatic(CompiledPattern.class, "reciprocal", UNARY);
+            } else if (op instanceof BinaryPredictOperation) {
+                return LOOKUP.findVirtual(BinaryPredictOperation.class, "applyInverse",
+                        BINARY).bindTo(op);
+            }
+            return LOOKUP.findVirtual(UnaryPredictOperation.class, "applyInverse",
+                    UNARY).bindTo(op);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * The last period of a level of a periodic pattern, whose next value is
+     * the value one period back plus the next value of the level below.
+     */
+    private static final class Ring {
+        private final double[] values;
+        private int position = 0;
+
+        private Ring(double[] values) {
+            this.values = values;
+        }
+
+        /**
+         * Returns a handle of the next value of the given level.
+         * @param computed The values of the level, at least {@code lag}.
+         * @param lag      The period.
+         * @return         The handle, of type {@code (double)double}.
+         */
+        static MethodHandle handle(List<Double> computed, int lag) {
+            double[] values = new double[lag];
+            int offset = computed.size() - lag;
+            for (int i = 0; i < lag; i++) {
+                values[i] = computed.get(offset + i);
+            }
+            try {
+                return LOOKUP.findVirtual(Ring.class, "next", UNARY)
+                        .bindTo(new Ring(values));
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+
+        double next(double below) {
+            double value = values[position] + below;
+            values[position] = value;
+            position = position + 1 == values.length ? 0 : position + 1;
+            return value;
+        }
+    }
+
+    private static double add(double last, double below) {
+        return last + below;
+    }
+
+    private static double multiply(double last, double below) {
+        return last * below;
+    }
+
+    private static double reciprocal(double below) {
+        return 1 / below;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+/**
+ * Recomputes a level of the search in double-double precision.
+ *
+ * Every level of a chain of operations adds the rounding error of its
+ * operation to the errors of the levels above, and differences of close
+ * values amplify them. Deep chains of {@code divide()} and {@code invert()}
+ * can therefore derive a level that is constant in exact arithmetic, but
+ * whose values miss {@code Predictor.FUZZY_EQ_THRESHOLD}. When a level
+ * narrowly misses (see {@code nearMiss}), the search recomputes it from the
+ * input with {@code replay}, which represents every value as the unevaluated
+ * sum of two doubles, for about 106 bits of precision. The operations are
+ * error-free transformations of doubles (Knuth's two-sum and Dekker's
+ * two-product), which is far cheaper than BigDecimal.
+ *
+ * Only integer inputs up to 2^53 are recomputed. They are exact, so the
+ * recomputed levels are accurate to far below the threshold. Other inputs
+ * are usually rounded already, and the errors of rounding them are amplified
+ * by the operations just like the errors of the operations themselves, so
+ * recomputing their levels would only give different noise.
+ *
+ * @author Patrick Kramer
+ */
+final class DoubleDouble {
+
+    /**
+     * The relative difference up to which a level that is not constant is a
+     * near miss, and is recomputed in double-double precision.
+     */
+    static final double NEAR_MISS_THRESHOLD = 1E-6;
+
+    /**
+     * The least amount of values of a near miss. Two values that happen to
+     * agree after recomputing them are too weak a hint, and deep searches
+     * would accept them as constant levels.
+     */
+    static final int NEAR_MISS_LENGTH = 3;
+
+    /**
+     * 2^27 + 1, which splits a double into two halves of 26 bits.
+     */
+    private static final double SPLITTER = 134217729;
+
+    /**
+     * The largest magnitude up to which integral doubles are exact.
+     */
+    private static final double MAX_EXACT = 0x1p53;
+
+    /**
+     * Magnitude above which splitting a double overflows.
+     */
+    private static final double MAX_SPLIT = 0x1p996;
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private DoubleDouble() {
+    }
+
+    /**
+     * Returns whether the values narrowly miss being constant: there are at
+     * least {@code NEAR_MISS_LENGTH} of them, they are all finite, not all
+     * equal according to {@code Predictor.fuzzyEq}, but within
+     * {@code NEAR_MISS_THRESHOLD} of each other.
+     * @param values The values.
+     * @param length The amount of values.
+     * @return       True for a near miss.
+     */
+    static boolean nearMiss(double[] values, int length) {
+        return nearMiss(values, 0, 1, length);
+    }
+
+    /**
+     * Returns whether the values at the given stride narrowly miss being
+     * constant, see {@code nearMiss(double[], int)}.
+     * @param values The array of values.
+     * @param offset The index of the first value.
+     * @param stride The distance between consecutive values.
+     * @param length The amount of values.
+     * @return       True for a near miss.
+     */
+    static boolean nearMiss(double[] values, int offset, int stride, int length) {
+        if (length < NEAR_MISS_LENGTH) {
+            return false;
+        }
+        double expected = values[offset];
+        boolean equal = true;
+        for (int i = 0; i < length; i++) {
+            double value = values[offset + i * stride];
+            if (!Double.isFinite(value) || Math.abs(value - expected)
+                    > Math.abs(Math.max(value, expected)) * NEAR_MISS_THRESHOLD) {
+                return false;
+            }
+            equal &= Predictor.fuzzyEq(value, expected);
+        }
+        return !equal;
+    }
+
+    /**
+     * Recomputes a level from the input in double-double precision.
+     * @param input  The input values.
+     * @param length The amount of input values.
+     * @param chain  The operations that derive the level from the input.
+     * @param depth  The amount of operations.
+     * @param hi     Scratch space for the high parts, with room for
+     *               {@code length} values. Holds the rounded values of the
+     *               level on return.
+     * @param lo     Scratch space for the low parts, with room for
+     *               {@code length} values.
+     * @return       The amount of values of the level, or -1 if an input
+     *               value is not an exact integer, an operation is not
+     *               built-in or a value is not finite.
+     */
+    static int replay(double[] input, int length, PredictOperation[] chain,
+            int depth, double[] hi, double[] lo) {
+        for (int i = 0; i < length; i++) {
+            if (input[i] != Math.rint(input[i]) || Math.abs(input[i]) > MAX_EXACT) {
+                return -1;
+            }
+            hi[i] = input[i];
+            lo[i] = 0;
+        }
+        for (int level = 0; level < depth; level++) {
+            Opcode code = Opcode.of(chain[level]);
+            if (code == null) {
+                return -1;
+            }
+            switch (code) {
+                case DIFF:
+                    length--;
+                    for (int i = 0; i < length; i++) {
+                        add(hi[i + 1], lo[i + 1], -hi[i], -lo[i], hi, lo, i);
+                    }
+                    break;
+                case DIVIDE:
+                    length--;
+                    for (int i = 0; i < length; i++) {
+                        divide(hi[i + 1], lo[i + 1], hi[i], lo[i], hi, lo, i);
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < length; i++) {
+                        divide(1, 0, hi[i], lo[i], hi, lo, i);
+                    }
+                    break;
+            }
+            for (int i = 0; i < length; i++) {
+                if (!Double.isFinite(hi[i]) || Math.abs(hi[i]) > MAX_SPLIT) {
+                    return -1;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Stores the sum of two double-doubles.
+     * @param ah  The high part of the first term.
+     * @param al  The low part of the first term.
+     * @param bh  The high part of the second term.
+     * @param bl  The low part of the second term.
+     * @param hi  The high parts of the results.
+     * @param lo  The low parts of the results.
+     * @param i   The index of the result.
+     */
+    private static void add(double ah, double al, double bh, double bl,
+            double[] hi, double[] lo, int i) {
+        // Two-sum of the high and the low parts.
+        double s = ah + bh;
+        double v = s - ah;
+        double e = (ah - (s - v)) + (bh - v);
+        double t = al + bl;
+        double w = t - al;
+        double f = (al - (t - w)) + (bl - w);
+        e += t;
+        double h = s + e;
+        e = e - (h - s);
+        e += f;
+        hi[i] = h + e;
+        lo[i] = e - (hi[i] - h);
+    }
+
+    /**
+     * Stores the quotient of two double-doubles.
+     * @param ah  The high part of the dividend.
+     * @param al  The low part of the dividend.
+     * @param bh  The high part of the divisor.
+     * @param bl  The low part of the divisor.
+     * @param hi  The high parts of the results.
+     * @param lo  The low parts of the results.
+     * @param i   The index of the result.
+     */
+    private static void divide(double ah, double al, double bh, double bl,
+            double[] hi, double[] lo, int i) {
+        double q1 = ah / bh;
+        // The remainder a - q1 * b, with the product q1 * bh split exactly.
+        double p = q1 * bh;
+        double qs = SPLITTER * q1;
+        double qh = qs - (qs - q1);
+        double ql = q1 - qh;
+        double bs = SPLITTER * bh;
+        double bhh = bs - (bs - bh);
+        double bhl = bh - bhh;
+        double pe = ((qh * bhh - p) + qh * bhl + ql * bhh) + ql * bhl;
+        double r = ((ah - p) - pe) + al - q1 * bl;
+        double q2 = r / bh;
+        hi[i] = q1 + q2;
+        lo[i] = q2 - (hi[i] - q1);
+    }
+}
@@ -0,0 +1,113 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+/**
+ * Hooks for profiling events of the pattern search and of generation.
+ * 
+ * This implementation does nothing, so the JIT compiler removes the calls 
+ * completely. On Java 11 and later, the multi-release JAR replaces this class 
+ * with an implementation that emits Java Flight Recorder events (see 
+ * {@code src/main/java11}).
+ * 
+ * Every {@code begin} method returns an event handle that must be passed to 
+ * the matching {@code end} method. The handle may be null.
+ * 
+ * @author Patrick Kramer
+ */
+final class Events {
+    
+    /**
+     * Outcome of a search that found a pattern.
+     */
+    static final String FOUND = "found";
+    
+    /**
+     * Outcome of a search that did not find a pattern.
+     */
+    static final String NO_PATTERN = "no pattern";
+    
+    /**
+     * Outcome of a search that was cancelled.
+     */
+    static final String CANCELLED = "cancelled";
+    
+    /**
+     * Outcome of a search that exceeded its deadline.
+     */
+    static final String TIMEOUT = "timeout";
+    
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private Events() {
+    }
+    
+    /**
+     * Marks the start of a pattern search.
+     * @return The event handle.
+     */
+    static Object beginSearch() {
+        return null;
+    }
+    
+    /**
+     * Marks the end of a pattern search.
+     * @param event       The event handle.
+     * @param inputLength The amount of input values.
+     * @param search      The SearchContext of the search.
+     * @param outcome     The outcome, one of the constants of this class.
+     */
+    static void endSearch(Object event, int inputLength, SearchContext search, 
+            String outcome) {
+    }
+    
+    /**
+     * Marks the start of an attempt to apply an operation during the search.
+     * @return The event handle.
+     */
+    static Object beginBranch() {
+        return null;
+    }
+    
+    /**
+     * Marks the end of an attempt to apply an operation during the search.
+     * @param event     The event handle.
+     * @param operation The operation applied.
+     * @param depth     The depth of the level the operation produced.
+     * @param success   True if a pattern was found below the operation.
+     */
+    static void endBranch(Object event, PredictOperation operation, int depth, 
+            boolean success) {
+    }
+    
+    /**
+     * Marks the start of the bulk generation of predictions.
+     * @return The event handle.
+     */
+    static Object beginGeneration() {
+        return null;
+    }
+    
+    /**
+     * Marks the end of the bulk generation of predictions.
+     * @param event The event handle.
+     * @param count The amount of predictions generated.
+     */
+    static void endGeneration(Object event, long count) {
+    }
+}
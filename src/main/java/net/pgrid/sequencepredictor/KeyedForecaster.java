@@ -0,0 +1,492 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Forecasts many independent live sequences, identified by a key.
+ *
+ * Observations of a key are passed to {@code observe(key, value)}, and
+ * {@code predict(key, count)} returns the predictions following the last
+ * observation. Instead of a Predictor, every key keeps a compact state: the
+ * last observations in a ring of {@code window} doubles, and once a pattern
+ * is found, its chain of operations and the last value of every level.
+ * Periodic patterns, whose operation reads a whole period, keep a state copy
+ * of their Predictor instead.
+ *
+ * An observation that matches the prediction (according to
+ * {@code Predictor.fuzzyEq}) only advances the state of the key. Detection
+ * on the window of recent observations is only run for keys without a
+ * pattern, or whose observation contradicts the prediction. Keys for which
+ * detection fails are retried with exponential backoff, up to once per
+ * {@code window} observations, so keys without a pattern do not search on
+ * every observation.
+ *
+ * The keys are spread over stripes, each guarded by its own lock, so threads
+ * working on different keys rarely contend. Detection runs without holding
+ * the lock of the stripe. Every stripe holds at most its share of
+ * {@code maxKeys} keys and evicts the least recently used key when full. Keys
+ * that are neither observed nor predicted for longer than the time to live
+ * are evicted on later accesses to their stripe, or by {@code evictIdle()}.
+ *
+ * All methods are thread-safe.
+ *
+ * @param <K> The type of the keys.
+ * @author Patrick Kramer
+ */
+public class KeyedForecaster<K> {
+
+    /**
+     * The default amount of recent observations detection runs on.
+     */
+    public static final int DEFAULT_WINDOW = 12;
+
+    /**
+     * The default maximum time a single detection may take, in milliseconds.
+     */
+    public static final long DEFAULT_DETECTION_TIMEOUT = 50;
+
+    /**
+     * The default amount of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * The minimum amount of observations before detection is attempted.
+     */
+    public static final int MIN_OBSERVATIONS = 3;
+
+    private final Stripe[] stripes;
+    private final int window;
+    private final long detectionTimeout;
+    private final LongSupplier clock;
+
+    /**
+     * Initializes a new KeyedForecaster with the default window, detection
+     * timeout and amount of stripes.
+     * @param maxKeys The maximum amount of keys, at least 1.
+     * @param ttl     The time after which idle keys are evicted.
+     * @param unit    The unit of the time to live, not null.
+     */
+    public KeyedForecaster(int maxKeys, long ttl, TimeUnit unit) {
+        this(maxKeys, ttl, unit, DEFAULT_WINDOW, DEFAULT_DETECTION_TIMEOUT,
+                DEFAULT_STRIPES);
+    }
+
+    /**
+     * Initializes a new KeyedForecaster.
+     * @param maxKeys          The maximum amount of keys, at least 1.
+     * @param ttl              The time after which idle keys are evicted.
+     * @param unit             The unit of the time to live, not null.
+     * @param window           The amount of recent observations kept per key,
+     *                         at least {@code MIN_OBSERVATIONS}.
+     * @param detectionTimeout The maximum time a single detection may take,
+     *                         in milliseconds.
+     * @param stripes          The amount of stripes, at least 1.
+     * @throws IllegalArgumentException - If an argument is out of range.
+     */
+    public KeyedForecaster(int maxKeys, long ttl, TimeUnit unit, int window,
+            long detectionTimeout, int stripes) {
+        this(maxKeys, unit.toNanos(ttl), window, detectionTimeout, stripes,
+                System::nanoTime);
+    }
+
+    /**
+     * Initializes a new KeyedForecaster with the given clock.
+     * @param maxKeys          The maximum amount of keys.
+     * @param ttl              The time to live, in nanoseconds.
+     * @param window           The amount of recent observations kept per key.
+     * @param detectionTimeout The detection timeout, in milliseconds.
+     * @param stripes          The amount of stripes.
+     * @param clock            The clock, in nanoseconds.
+     */
+    KeyedForecaster(int maxKeys, long ttl, int window, long detectionTimeout,
+            int stripes, LongSupplier clock) {
+        if (maxKeys < 1 || stripes < 1 || window < MIN_OBSERVATIONS) {
+            throw new IllegalArgumentException("Invalid forecaster size");
+        }
+        int perStripe = (maxKeys + stripes - 1) / stripes;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(perStripe, ttl);
+        }
+        this.window = window;
+        this.detectionTimeout = detectionTimeout;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds an observation of the given key.
+     *
+     * If the observation contradicts the prediction of the key, or the key has
+     * no pattern yet, detection runs on the recent observations in the calling
+     * thread, for at most the detection timeout.
+     *
+     * @param key   The key, not null.
+     * @param value The observed value.
+     */
+    public void observe(K key, double value) {
+        Stripe stripe = stripe(key);
+        State state;
+        double[] recent;
+        long version;
+        synchronized (stripe) {
+            long now = clock.getAsLong();
+            stripe.expire(now);
+            state = stripe.get(key);
+            if (state == null) {
+                state = new State(window);
+                stripe.put(key, state);
+            }
+            state.lastAccess = now;
+            if (!state.observe(value) || state.detecting) {
+                return;
+            }
+            state.detecting = true;
+            recent = state.recent();
+            version = state.version;
+        }
+
+        State detected = null;
+        try {
+            detected = detect(recent);
+        } finally {
+            synchronized (stripe) {
+                // The key may have expired and been observed again meanwhile,
+                // in which case its new state is not this detection's.
+                if (stripe.get(key) == state) {
+                    state.detecting = false;
+                    state.install(detected, version);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the predictions following the last observation of the given
+     * key.
+     * @param key   The key.
+     * @param count The amount of predictions.
+     * @return      The predictions.
+     * @throws NoPatternFoundException - If the key is unknown or has no
+     *                                   pattern.
+     */
+    public double[] predict(K key, int count) throws NoPatternFoundException {
+        Stripe stripe = stripe(key);
+        double[] last;
+        PredictOperation[] ops;
+        Predictor generator;
+        synchronized (stripe) {
+            long now = clock.getAsLong();
+            stripe.expire(now);
+            State state = stripe.get(key);
+            if (state == null || state.ops == null) {
+                throw new NoPatternFoundException("No pattern for key " + key);
+            }
+            state.lastAccess = now;
+            ops = state.ops;
+            last = state.last.clone();
+            generator = state.generator == null ? null : state.generator.copyState();
+        }
+        double[] result = new double[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = generator != null ? generator.getNext() : advance(ops, last);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the pattern of the given key.
+     * @param key The key.
+     * @return    The pattern, as given by {@code Predictor.getPattern()}.
+     * @throws NoPatternFoundException - If the key is unknown or has no
+     *                                   pattern.
+     */
+    public String getPattern(K key) throws NoPatternFoundException {
+        Stripe stripe = stripe(key);
+        PredictOperation[] ops;
+        synchronized (stripe) {
+            State state = stripe.get(key);
+            if (state == null || state.ops == null) {
+                throw new NoPatternFoundException("No pattern for key " + key);
+            }
+            ops = state.ops;
+        }
+        StringBuilder b = new StringBuilder(Predictor.STRINGBUILDER_CAPACITY);
+        for (PredictOperation op : ops) {
+            b.append('(').append(op.description()).append(')').append(" -> ");
+        }
+        return b.append("()").toString();
+    }
+
+    /**
+     * Removes the given key.
+     * @param key The key.
+     */
+    public void remove(K key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    /**
+     * Evicts all keys that have been idle for longer than the time to live.
+     */
+    public void evictIdle() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.expire(clock.getAsLong());
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of keys.
+     * @return The amount of keys.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the stripe of the given key.
+     * @param key The key.
+     * @return    The stripe.
+     */
+    private Stripe stripe(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+
+    /**
+     * Detects the pattern of the given values.
+     * @param values The values.
+     * @return       The state of the pattern, positioned after the last value,
+     *               or null if no pattern is found.
+     */
+    private State detect(double[] values) {
+        Predictor predictor;
+        try {
+            predictor = new Predictor(values).init(detectionTimeout, TimeUnit.MILLISECONDS);
+        } catch (NoPatternFoundException ex) {
+            return null;
+        }
+        List<PredictOperation> ops = new ArrayList<>();
+        List<Double> last = new ArrayList<>();
+        boolean history = false;
+        for (Predictor level = predictor; level != null; level = level.getDiffs()) {
+            List<Double> computed = level.getComputed();
+            last.add(computed.get(computed.size() - 1));
+            if (!level.isConstant()) {
+                ops.add(level.getOperation());
+                history |= level.getOperation().historySize() > 1;
+            }
+        }
+        State state = new State(0);
+        if (history) {
+            state.generator = predictor.copyState();
+        }
+        state.ops = ops.toArray(new PredictOperation[ops.size()]);
+        state.last = new double[last.size()];
+        for (int i = 0; i < state.last.length; i++) {
+            state.last[i] = last.get(i);
+        }
+        return state;
+    }
+
+    /**
+     * Computes the next value of a pattern, and advances its state.
+     *
+     * Level {@code i} of the state holds the last value of the level derived
+     * by the first {@code i} operations; the last level is constant. All
+     * operations found by the search only read the last value of their level
+     * and the level below; periodic patterns are generated by their
+     * Predictor instead, see {@code State.next()}.
+     *
+     * @param ops  The operations of the pattern.
+     * @param last The last value of every level, updated to the next values.
+     * @return     The next value.
+     */
+    static double advance(PredictOperation[] ops, double[] last) {
+        for (int i = ops.length - 1; i >= 0; i--) {
+            PredictOperation op = ops[i];
+            Opcode code = Opcode.of(op);
+            if (code != null) {
+                last[i] = code.inverse(last[i], last[i + 1]);
+            } else if (op instanceof BinaryPredictOperation) {
+                last[i] = ((BinaryPredictOperation) op).applyInverse(last[i], last[i + 1]);
+            } else {
+                last[i] = ((UnaryPredictOperation) op).applyInverse(last[i + 1]);
+            }
+        }
+        return last[0];
+    }
+
+    /**
+     * The state of a single key.
+     */
+    private static final class State {
+        // Ring of the most recent observations.
+        private final double[] recent;
+        private int size = 0;
+        private int head = 0;
+
+        // The pattern, or null, and the last value of every level.
+        private PredictOperation[] ops = null;
+        private double[] last = null;
+
+        // Generation state of patterns that read more than the last values.
+        private Predictor generator = null;
+
+        private long version = 0;
+        private int backoff = 0;
+        private int retryIn = 0;
+        private boolean detecting = false;
+        private long lastAccess;
+
+        State(int window) {
+            this.recent = new double[window];
+        }
+
+        /**
+         * Adds an observation, and advances the pattern if it matches.
+         * @param value The observation.
+         * @return      True if detection should run.
+         */
+        boolean observe(double value) {
+            recent[head] = value;
+            head = (head + 1) % recent.length;
+            size = Math.min(size + 1, recent.length);
+            version++;
+            if (ops != null) {
+                if (Predictor.fuzzyEq(next(), value)) {
+                    return false;
+                }
+                ops = null;
+                last = null;
+                generator = null;
+                backoff = 0;
+                retryIn = 0;
+            }
+            if (size < MIN_OBSERVATIONS || --retryIn > 0) {
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Computes the next value of the pattern, and advances it.
+         * @return The next value.
+         */
+        double next() {
+            return generator != null ? generator.getNext() : advance(ops, last);
+        }
+
+        /**
+         * Returns the recent observations, oldest first.
+         * @return A copy of the observations.
+         */
+        double[] recent() {
+            double[] result = new double[size];
+            int start = head - size + recent.length;
+            for (int i = 0; i < size; i++) {
+                result[i] = recent[(start + i) % recent.length];
+            }
+            return result;
+        }
+
+        /**
+         * Installs a detected pattern, replaying the observations made since
+         * detection started.
+         * @param detected The detected pattern, or null.
+         * @param since    The version the pattern was detected at.
+         */
+        void install(State detected, long since) {
+            if (ops != null) {
+                // Another detection has already installed a pattern.
+                return;
+            }
+            long missed = version - since;
+            if (detected != null && missed < size) {
+                double[] replay = recent();
+                boolean matches = true;
+                for (int i = (int) (size - missed); i < size && matches; i++) {
+                    matches = Predictor.fuzzyEq(detected.next(), replay[i]);
+                }
+                if (matches) {
+                    ops = detected.ops;
+                    last = detected.last;
+                    generator = detected.generator;
+                    backoff = 0;
+                    retryIn = 0;
+                    return;
+                }
+            }
+            backoff = Math.min(Math.max(1, 2 * backoff), recent.length);
+            retryIn = backoff;
+        }
+    }
+
+    /**
+     * A part of the keys, in order of access, guarded by its own lock.
+     */
+    private static final class Stripe extends LinkedHashMap<Object, State> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final long ttl;
+
+        Stripe(int capacity, long ttl) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.ttl = ttl;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, State> eldest) {
+            return size() > capacity;
+        }
+
+        /**
+         * Evicts the keys that have been idle for longer than the time to
+         * live, which are the least recently used keys.
+         * @param now The current time.
+         */
+        void expire(long now) {
+            Iterator<State> it = values().iterator();
+            while (it.hasNext() && now - it.next().lastAccess > ttl) {
+                it.remove();
+            }
+        }
+    }
+}
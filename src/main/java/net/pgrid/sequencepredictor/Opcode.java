@@ -0,0 +1,135 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+/**
+ * The built-in operations of {@code Operations}, as opcodes.
+ *
+ * The built-in operations wrap lambdas, so a loop that calls them through the
+ * PredictOperation interfaces makes a megamorphic call per value, which the
+ * JIT does not inline. The search and generation loops therefore look up the
+ * opcode of an operation once, and run the arithmetic of the opcode in a
+ * switch outside the loop. Only operations without an opcode (those not in
+ * {@code Operations}) are called through their interface.
+ *
+ * Every opcode computes exactly the same values as its operation.
+ *
+ * @author Patrick Kramer
+ */
+enum Opcode {
+
+    /**
+     * {@code Operations.diff()}
+     */
+    DIFF,
+
+    /**
+     * {@code Operations.divide()}
+     */
+    DIVIDE,
+
+    /**
+     * {@code Operations.invert()}
+     */
+    INVERT;
+
+    /**
+     * Returns the opcode of the given operation.
+     * @param operation The operation, can be null.
+     * @return          The opcode, or null if the operation is not built-in.
+     */
+    static Opcode of(PredictOperation operation) {
+        if (operation == Operations.diff()) {
+            return DIFF;
+        } else if (operation == Operations.divide()) {
+            return DIVIDE;
+        } else if (operation == Operations.invert()) {
+            return INVERT;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the operation of this opcode is binary.
+     * @return True for binary operations, false for unary operations.
+     */
+    boolean isBinary() {
+        return this != INVERT;
+    }
+
+    /**
+     * Applies the operation to a value, as {@code applyAsDouble} does.
+     * @param previous The previous value, ignored by unary operations.
+     * @param value    The value.
+     * @return         The result.
+     */
+    double apply(double previous, double value) {
+        switch (this) {
+            case DIFF:
+                return value - previous;
+            case DIVIDE:
+                return value / previous;
+            default:
+                return 1 / value;
+        }
+    }
+
+    /**
+     * Computes the next value of a level, as {@code applyInverse} does.
+     * @param last  The last value of the level, ignored by unary operations.
+     * @param below The next value of the level below.
+     * @return      The next value.
+     */
+    double inverse(double last, double below) {
+        switch (this) {
+            case DIFF:
+                return last + below;
+            case DIVIDE:
+                return last * below;
+            default:
+                return 1 / below;
+        }
+    }
+
+    /**
+     * Applies the operation to all values.
+     * @param in     The values.
+     * @param length The amount of values.
+     * @param out    The results, with room for {@code length - 1} values for
+     *               binary operations and {@code length} values otherwise.
+     * @return       The amount of results.
+     */
+    int apply(double[] in, int length, double[] out) {
+        switch (this) {
+            case DIFF:
+                for (int i = 1; i < length; i++) {
+                    out[i - 1] = in[i] - in[i - 1];
+                }
+                return length - 1;
+            case DIVIDE:
+                for (int i = 1; i < length; i++) {
+                    out[i - 1] = in[i] / in[i - 1];
+                }
+                return length - 1;
+            default:
+                for (int i = 0; i < length; i++) {
+                    out[i] = 1 / in[i];
+                }
+                return length;
+        }
+    }
+}
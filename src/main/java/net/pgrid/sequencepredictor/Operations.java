@@ -16,7 +16,9 @@
  */
 package net.pgrid.sequencepredictor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
@@ -27,6 +29,24 @@ import java.util.function.DoubleUnaryOperator;
  */
 public class Operations {
     
+    private static final BinaryPredictOperation DIFF = 
+            create("r{n} = u{n+1} - u{n}",
+                   (a,b) -> b-a, 
+                   (a,b) -> a+b);
+    
+    private static final BinaryPredictOperation DIVIDE = 
+            create("r{n} = u{n+1} / u{n}",
+                   (a,b) -> b/a, 
+                   (a,b) -> a*b);
+    
+    private static final UnaryPredictOperation INVERT = 
+            create("r{n} = 1 / u{n}",
+                   d -> 1/d, 
+                   d -> 1/d);
+    
+    private static final List<PredictOperation> ALL = 
+            Collections.unmodifiableList(Arrays.asList(DIFF, DIVIDE, INVERT));
+    
     /**
      * Private constructor prevents instantiation.
      */
@@ -35,46 +55,69 @@ public class Operations {
     
     /**
      * Returns a List of all operations in this utility class.
-     * @return 
+     * @return The unmodifiable List of built-in operations, in search order.
      */
     public static List<PredictOperation> getAll() {
-        return Arrays.asList(diff(), divide(), invert());
+        return ALL;
     }
     
     /**
-     * Constructs a BinaryPredictOperation that takes the difference from all 
+     * Returns the BinaryPredictOperation that takes the difference from all 
      * elements.
+     * 
+     * The same instance is returned on every call, so the result may be 
+     * compared by identity.
      * @return The BinaryPredictOperation
      */
     public static BinaryPredictOperation diff() {
-        return create("r{n} = u{n+1} - u{n}",
-                      (a,b) -> b-a, 
-                      (a,b) -> a+b);
+        return DIFF;
     }
     
     /**
-     * Constructs a BinaryPredictOperation that takes the multiplication factor 
+     * Returns the PredictOperation that takes the difference between all 
+     * elements at the given distance.
+     * 
+     * Periodic sequences with period {@code lag}, possibly increasing by a 
+     * fixed amount every period, have constant differences at that distance.
+     * This operation is not part of the search of {@code getAll()}; the 
+     * Predictor detects periodic sequences in a separate pass.
+     * 
+     * @param lag The distance, at least 1.
+     * @return    The PredictOperation, which reads {@code lag} values of 
+     *            history.
+     * @throws IllegalArgumentException - If the lag is less than 1.
+     */
+    public static PredictOperation diff(int lag) {
+        if (lag < 1) {
+            throw new IllegalArgumentException("Lag less than 1");
+        }
+        return new LagDifference(lag);
+    }
+    
+    /**
+     * Returns the BinaryPredictOperation that takes the multiplication factor 
      * from all elements.
+     * 
+     * The same instance is returned on every call, so the result may be 
+     * compared by identity.
      * @return The BinaryPredictOperation
      */
     public static BinaryPredictOperation divide() {
-        return create("r{n} = u{n+1} / u{n}",
-                      (a,b) -> b/a, 
-                      (a,b) -> a*b);
+        return DIVIDE;
     }
     
     /**
-     * Constructs an UnaryPredictOperation that takes the inverse from all 
+     * Returns the UnaryPredictOperation that takes the inverse from all 
      * elements.
      * 
      * For example, 0.5 becomes 2 and 8 becomes 0.125
      * 
+     * The same instance is returned on every call, so the result may be 
+     * compared by identity.
      * @return The UnaryPredictOperation
      */
     public static UnaryPredictOperation invert() {
-        return create("r{n} = 1 / u{n}",
-                      d -> 1/d, 
-                      d -> 1/d);
+        return INVERT;
     }
     
     public static UnaryPredictOperation alternate() {
@@ -113,6 +156,49 @@ public class Operations {
         };
     }
     
+    /**
+     * Difference between the elements at a fixed distance, see 
+     * {@code diff(int)}.
+     */
+    static final class LagDifference implements PredictOperation {
+        
+        private final int lag;
+        
+        LagDifference(int lag) {
+            this.lag = lag;
+        }
+        
+        int getLag() {
+            return lag;
+        }
+        
+        @Override
+        public List<Double> apply(List<Double> input) {
+            List<Double> values = new ArrayList<>(input);
+            List<Double> result = new ArrayList<>(Math.max(0, values.size() - lag));
+            for (int x = lag; x < values.size(); x++) {
+                result.add(values.get(x) - values.get(x - lag));
+            }
+            return result;
+        }
+        
+        @Override
+        public Double computeNext(List<Double> original, List<Double> computed) {
+            return original.get(original.size() - lag) 
+                    + computed.get(computed.size() - 1);
+        }
+        
+        @Override
+        public int historySize() {
+            return lag;
+        }
+        
+        @Override
+        public String description() {
+            return "r{n} = u{n+" + lag + "} - u{n}";
+        }
+    }
+    
     /**
      * Creates a BinaryPredictOperation from the given BinaryOperators.
      * @param desc    A description of the operator, for identification.
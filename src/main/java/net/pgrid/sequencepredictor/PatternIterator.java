@@ -0,0 +1,242 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over all patterns that explain a sequence, in the order in which 
+ * {@code Predictor.init()} tries them.
+ * 
+ * The first pattern returned is the pattern {@code init()} would find (if it
+ * does not exceed the maximum depth). Every further pattern is only searched
+ * for when it is requested. The search keeps the levels of the current 
+ * operation chain on a stack, so patterns that share a prefix of operations 
+ * share the computation of those levels.
+ * 
+ * A periodic or geometric pattern, which {@code init()} detects before 
+ * searching, comes first, and is not returned again by the search. Levels
+ * that narrowly miss being constant are recomputed in double-double 
+ * precision, as by {@code init()}. Sequences of integers are searched with
+ * exact integer arithmetic for as long as the operations keep the values 
+ * integral, and those levels are only constant when their values are exactly
+ * equal, also as by {@code init()}.
+ * 
+ * Every returned Predictor is initialized and independent of the others.
+ * 
+ * @author Patrick Kramer
+ * @see Predictor#alternatives(int)
+ */
+public class PatternIterator implements Iterator<Predictor> {
+    
+    private final int maxDepth;
+    private final double[] input;
+    private final Deque<Level> stack = new ArrayDeque<>();
+    private Predictor next = null;
+    private boolean prepassDone = false;
+    private String prepassPattern = null;
+    
+    /**
+     * Initializes a new PatternIterator.
+     * @param values   The values of the sequence, not null.
+     * @param maxDepth The maximum amount of operations in a pattern.
+     */
+    public PatternIterator(List<Double> values, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Negative maximum depth");
+        }
+        this.maxDepth = maxDepth;
+        this.input = new double[values.size()];
+        int i = 0;
+        for (double value : values) {
+            this.input[i++] = value;
+        }
+        long[] exact = new long[input.length];
+        for (i = 0; i < input.length && exact != null; i++) {
+            if (SearchTableau.isExact(input[i])) {
+                exact[i] = (long) input[i];
+            } else {
+                exact = null;
+            }
+        }
+        this.stack.push(new Level(new ArrayList<>(values), null, exact));
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = search();
+        }
+        return next != null;
+    }
+    
+    @Override
+    public Predictor next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Predictor result = next;
+        next = null;
+        return result;
+    }
+    
+    /**
+     * Continues the depth-first search up to the next pattern.
+     * @return The next pattern, or null if there are no more patterns.
+     */
+    private Predictor search() {
+        if (!prepassDone) {
+            prepassDone = true;
+            Predictor closed = SearchTableau.prepass(stack.peek().values);
+            int depth = 0;
+            for (Predictor p = closed; p != null && !p.isConstant(); p = p.getDiffs()) {
+                depth++;
+            }
+            if (closed != null && depth <= maxDepth) {
+                prepassPattern = closed.getPattern();
+                return closed;
+            }
+        }
+        while (!stack.isEmpty()) {
+            Level top = stack.peek();
+            if (!top.visited) {
+                top.visited = true;
+                if (top.values.size() < 2) {
+                    stack.pop();
+                    continue;
+                }
+                try {
+                    if (top.exact != null ? isAllEqual(top.exact) 
+                            : Predictor.isAllEqual(top.values) 
+                                    || Predictor.escalate(input, chain(), top.values)) {
+                        Predictor result = createPredictor();
+                        stack.pop();
+                        if (!result.getPattern().equals(prepassPattern)) {
+                            return result;
+                        }
+                        continue;
+                    }
+                } catch (NoPatternFoundException ex) {
+                    // Non-real numbers, no pattern below this level.
+                    stack.pop();
+                    continue;
+                }
+            }
+            
+            List<PredictOperation> operations = Operations.getAll();
+            if (stack.size() > maxDepth || top.nextOperation >= operations.size()) {
+                stack.pop();
+                continue;
+            }
+            PredictOperation operation = operations.get(top.nextOperation++);
+            if (top.prev == null || operation.canApplyAfter(top.prev)) {
+                top.applied = operation;
+                stack.push(derive(top, operation));
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Derives the level below the given level with the given operation, in
+     * integers if the level holds integers and the results are integral.
+     * @param level     The level.
+     * @param operation The operation.
+     * @return          The level below.
+     */
+    private static Level derive(Level level, PredictOperation operation) {
+        if (level.exact != null) {
+            int length = level.exact.length;
+            long[] exact = new long[Math.max(0, length - 1)];
+            if (SearchTableau.applyExact(operation, level.exact, length, exact)) {
+                List<Double> values = new ArrayList<>(exact.length);
+                for (long value : exact) {
+                    values.add((double) value);
+                }
+                return new Level(values, operation, exact);
+            }
+        }
+        return new Level(operation.apply(level.values), operation, null);
+    }
+    
+    /**
+     * Returns whether all integers are equal.
+     * @param values The integers, at least one.
+     * @return       True if they are all equal.
+     */
+    private static boolean isAllEqual(long[] values) {
+        for (long value : values) {
+            if (value != values[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the operations that derived the top level from the input.
+     * @return The operations, from the input down.
+     */
+    private List<PredictOperation> chain() {
+        List<PredictOperation> chain = new ArrayList<>(stack.size());
+        Iterator<Level> levels = stack.descendingIterator();
+        levels.next();
+        while (levels.hasNext()) {
+            chain.add(levels.next().prev);
+        }
+        return chain;
+    }
+    
+    /**
+     * Creates the Predictor for the chain of operations on the stack, whose
+     * top level is constant.
+     * @return The initialized Predictor.
+     */
+    private Predictor createPredictor() {
+        Iterator<Level> levels = stack.iterator();
+        Predictor result = new Predictor(levels.next().values);
+        while (levels.hasNext()) {
+            Level level = levels.next();
+            result = new Predictor(level.values, level.applied, result);
+        }
+        return result;
+    }
+    
+    /**
+     * A level of the operation chain being searched.
+     */
+    private static class Level {
+        final List<Double> values;
+        final PredictOperation prev;
+        // The values as integers, or null if they are not searched exactly.
+        final long[] exact;
+        boolean visited = false;
+        int nextOperation = 0;
+        PredictOperation applied = null;
+
+        Level(List<Double> values, PredictOperation prev, long[] exact) {
+            this.values = values;
+            this.prev = prev;
+            this.exact = exact;
+        }
+    }
+}
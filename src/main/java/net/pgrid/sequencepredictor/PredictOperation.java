@@ -63,6 +63,21 @@ public interface PredictOperation {
      */
     public String description();
     
+    /**
+     * Returns the number of trailing values of the {@code original} and the 
+     * {@code computed} List that {@code computeNext} reads.
+     * 
+     * Predictors may discard older values when generating large amounts of
+     * predictions, as long as at least this many values are kept. The default
+     * implementation returns {@code Integer.MAX_VALUE}, indicating the complete
+     * history must be kept.
+     * 
+     * @return The number of trailing values needed, at least 1.
+     */
+    public default int historySize() {
+        return Integer.MAX_VALUE;
+    }
+    
     public default boolean canApplyAfter(PredictOperation op) {
         return true;
     }
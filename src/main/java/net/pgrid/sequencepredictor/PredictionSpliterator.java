@@ -0,0 +1,192 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Splittable Spliterator over a range of predictions of a Predictor.
+ * 
+ * The Spliterator covers the predictions with index {@code from} (inclusive) 
+ * up to {@code to} (exclusive), where index 0 is the value the next call to 
+ * {@code getNext()} on the Predictor would return at construction time. The 
+ * Predictor itself is never advanced.
+ * 
+ * When split, each half seeks to its own start index the first time it is 
+ * advanced. Patterns with a closed form (polynomial and geometric sequences) 
+ * seek in constant time. For other patterns the values are generated from the
+ * nearest checkpoint before the start index, recording new checkpoints on the 
+ * way, so each range of values is only generated once for seeking.
+ * 
+ * @author Patrick Kramer
+ */
+public class PredictionSpliterator implements Spliterator.OfDouble {
+    
+    /**
+     * The minimum amount of predictions in a Spliterator to allow splitting.
+     */
+    public static final long MIN_SPLIT_SIZE = 1 << 10;
+    
+    /**
+     * The maximum amount of checkpoints recorded for the complete range.
+     */
+    public static final long MAX_CHECKPOINTS = 1 << 10;
+    
+    private final Checkpoints checkpoints;
+    private Predictor state = null;
+    private long index;
+    private final long fence;
+    
+    /**
+     * Initializes a new PredictionSpliterator over a range of predictions.
+     * @param predictor The initialized Predictor, not null.
+     * @param from      The index of the first prediction, inclusive.
+     * @param to        The index of the last prediction, exclusive.
+     * @throws IllegalArgumentException - If the range is invalid.
+     */
+    public PredictionSpliterator(Predictor predictor, long from, long to) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("Invalid range [" + from + ", " + to + ")");
+        }
+        this.checkpoints = new Checkpoints(predictor.copyState(), 
+                Math.max(MIN_SPLIT_SIZE, to / MAX_CHECKPOINTS));
+        this.index = from;
+        this.fence = to;
+    }
+    
+    /**
+     * Initializes a PredictionSpliterator for a part of a split range.
+     * @param checkpoints The checkpoints shared with the other parts.
+     * @param state       The state positioned at {@code from}, or null.
+     * @param from        The index of the first prediction, inclusive.
+     * @param to          The index of the last prediction, exclusive.
+     */
+    private PredictionSpliterator(Checkpoints checkpoints, Predictor state, 
+            long from, long to) {
+        this.checkpoints = checkpoints;
+        this.state = state;
+        this.index = from;
+        this.fence = to;
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+        if (index >= fence) {
+            return false;
+        }
+        double value = current().getNext();
+        index++;
+        action.accept(value);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+        if (index < fence) {
+            Predictor current = current();
+            Object event = Events.beginGeneration();
+            long end = fence;
+            for (long i = index; i < end; i++) {
+                action.accept(current.getNext());
+            }
+            Events.endGeneration(event, end - index);
+            index = end;
+        }
+    }
+
+    @Override
+    public OfDouble trySplit() {
+        long size = fence - index;
+        if (size < MIN_SPLIT_SIZE) {
+            return null;
+        }
+        long mid = index + (size >>> 1);
+        // The prefix takes over the current state (if any), this Spliterator 
+        // seeks to the middle once it is advanced.
+        PredictionSpliterator prefix = 
+                new PredictionSpliterator(checkpoints, state, index, mid);
+        state = null;
+        index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+    
+    /**
+     * Returns the state positioned at the current index, seeking to it if 
+     * necessary.
+     * @return The state.
+     */
+    private Predictor current() {
+        if (state == null) {
+            state = checkpoints.seek(index);
+        }
+        return state;
+    }
+    
+    /**
+     * Checkpoints of generation states, shared by all parts of a split range.
+     */
+    private static class Checkpoints {
+        private final NavigableMap<Long, Predictor> states = 
+                new ConcurrentSkipListMap<>();
+        private final boolean closedForm;
+        private final long interval;
+
+        Checkpoints(Predictor initial, long interval) {
+            this.states.put(0L, initial);
+            this.closedForm = initial.copyState().skipClosedForm(1);
+            this.interval = interval;
+        }
+        
+        /**
+         * Returns a new state positioned at the given index.
+         * @param target The index.
+         * @return       The state, which may be advanced by the caller.
+         */
+        Predictor seek(long target) {
+            Map.Entry<Long, Predictor> nearest = states.floorEntry(target);
+            Predictor result = nearest.getValue().copyState();
+            long position = nearest.getKey();
+            if (closedForm) {
+                result.skip(target - position);
+                return result;
+            }
+            while (position < target) {
+                long next = Math.min(target, (position / interval + 1) * interval);
+                result.skip(next - position);
+                position = next;
+                if (position % interval == 0) {
+                    states.putIfAbsent(position, result.copyState());
+                }
+            }
+            return result;
+        }
+    }
+}
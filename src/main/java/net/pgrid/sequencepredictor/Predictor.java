@@ -16,13 +16,19 @@
  */
 package net.pgrid.sequencepredictor;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -59,11 +65,31 @@ public class Predictor {
      */
     public static final double FUZZY_EQ_THRESHOLD  = 1E-10;
     
+    /**
+     * The default length of the prefix {@code initPrefix()} starts searching 
+     * on.
+     */
+    public static final int INITIAL_PREFIX = 32;
+    
     // Explicitly defined as LinkedList to allow O(1) tail access.
     private final LinkedList<Double> values;
     private PredictOperation op;
     private Predictor diffs = null;
     
+    // The amount of values kept when generating. Only state copies used for 
+    // bulk generation, compacted Predictors and the levels adopted by 
+    // initPrefix() discard old values.
+    private int retained = Integer.MAX_VALUE;
+    
+    // The trailing values of a level with a bounded history. Generation 
+    // keeps them in this ring buffer instead of the values List, so it does 
+    // not box a value per level and term; the List is only brought up to 
+    // date when it is read. Null while the values are kept in the List.
+    private double[] recent = null;
+    private int head;
+    private int filled;
+    private boolean stale = false;
+    
     /**
      * Initializes a new Predictor using the given array of doubles.
      * @param values - The values to use for this Predictor, not null.
@@ -80,6 +106,30 @@ public class Predictor {
     public Predictor(List<Double> values) {
         this.values = new LinkedList<>(values);
     }
+    
+    /**
+     * Initializes a new, already initialized Predictor level.
+     * @param values The values of this level, not null.
+     * @param op     The operation that derives the underlying level.
+     * @param diffs  The underlying level.
+     */
+    Predictor(List<Double> values, PredictOperation op, Predictor diffs) {
+        this(values);
+        this.op = op;
+        this.diffs = diffs;
+    }
+
+    /**
+     * Initializes a new, already initialized Predictor level.
+     * @param values The values of this level, not null.
+     * @param op     The operation that derives the underlying level.
+     * @param diffs  The underlying level.
+     */
+    Predictor(double[] values, PredictOperation op, Predictor diffs) {
+        this(values);
+        this.op = op;
+        this.diffs = diffs;
+    }
 
     /**
      * Sets the operation to use for this Predictor. 
@@ -100,7 +150,23 @@ public class Predictor {
      * of the Predictor instance, and before any other method is called on this 
      * Object. 
      * 
-     * This step may take up to O(n^2) steps for complex sequences. 
+     * This step may take up to O(n^2) steps for complex sequences. The search
+     * stops with a {@code SearchCancelledException} when the calling thread is
+     * interrupted.
+     * 
+     * Sequences of integers are searched with exact integer arithmetic for as
+     * long as the operations keep the values integral, so their differences 
+     * and ratios are only considered constant when they are exactly equal.
+     * This changes which pattern wins for integers whose differences are 
+     * nearly but not exactly constant, such as 1e15, 1e15+1, 1e15+3, 1e15+6: 
+     * a comparison within {@code FUZZY_EQ_THRESHOLD} accepts the values 
+     * themselves as constant, while this search continues to a quadratic.
+     * 
+     * Polynomials are detected before the search, which is then skipped. So
+     * are periodic sequences whose differences repeat at least twice, such 
+     * as 1, 2, 3, 1, 2, 3, 1 or 1, 3, 3, 5, 5, which get the pattern 
+     * {@code Operations.diff(period)} over a constant, and geometric 
+     * sequences ({@code a * r^n}, or {@code a * r^n + b}).
      * 
      * @return Itself for fluency
      * @throws NoPatternFoundException - If no pattern can be found in the input.
@@ -117,34 +183,529 @@ public class Predictor {
      *             values of this Predictor.
      */
     public Predictor init(PredictOperation prev) throws NoPatternFoundException {
+        return search(prev, new SearchContext());
+    }
+    
+    /**
+     * Initializes the Predictor, giving up after the given timeout.
+     * 
+     * The search checks the deadline for every operation it tries, so it stops
+     * shortly after the timeout passes.
+     * 
+     * @param timeout The maximum time to search.
+     * @param unit    The unit of the timeout, not null.
+     * @return        Itself for fluency
+     * @throws SearchTimeoutException  - If the timeout passes before a pattern 
+     *                                   is found.
+     * @throws NoPatternFoundException - If no pattern can be found in the input.
+     */
+    public Predictor init(long timeout, TimeUnit unit) throws NoPatternFoundException {
+        return search(null, new SearchContext(System.nanoTime() + unit.toNanos(timeout)));
+    }
+
+    /**
+     * Initializes this Predictor on the given executor.
+     *
+     * The future completes with this Predictor, or exceptionally with the
+     * NoPatternFoundException {@code init()} would throw. Cancelling the
+     * future, or completing it exceptionally, stops the search at its next
+     * check. This Predictor should not be used until the future completes.
+     *
+     * @param executor The executor that runs the search.
+     * @return         The future of this Predictor after determining the
+     *                 pattern.
+     */
+    public CompletableFuture<Predictor> initAsync(Executor executor) {
+        return AsyncSearch.start(this, executor);
+    }
+
+    /**
+     * Initializes this Predictor on the given executor, giving up after the
+     * given timeout.
+     *
+     * As {@code initAsync(executor)}, but the future completes exceptionally
+     * with a {@code SearchTimeoutException} when it is not complete when the
+     * timeout passes, including time spent waiting for the executor. The
+     * search is stopped then.
+     *
+     * @param executor The executor that runs the search.
+     * @param timeout  The maximum time until the future completes.
+     * @param unit     The unit of the timeout, not null.
+     * @return         The future of this Predictor after determining the
+     *                 pattern.
+     */
+    public CompletableFuture<Predictor> initAsync(Executor executor, long timeout,
+            TimeUnit unit) {
+        CompletableFuture<Predictor> future = AsyncSearch.start(this, executor);
+        AsyncSearch.timeout(Collections.singletonList(future), timeout, unit);
+        return future;
+    }
+
+    /**
+     * Initializes all given Predictors on the given executor.
+     * @param predictors The Predictors.
+     * @param executor   The executor that runs the searches.
+     * @return           The futures of the Predictors, in the same order, as
+     *                   returned by {@code initAsync(executor)}.
+     */
+    public static List<CompletableFuture<Predictor>> initAllAsync(
+            List<Predictor> predictors, Executor executor) {
+        List<CompletableFuture<Predictor>> futures = new ArrayList<>(predictors.size());
+        for (Predictor predictor : predictors) {
+            futures.add(AsyncSearch.start(predictor, executor));
+        }
+        return futures;
+    }
+
+    /**
+     * Initializes all given Predictors on the given executor, giving up on
+     * the searches that are not complete after the given timeout.
+     *
+     * The timeout applies to the batch as a whole: the futures that are not
+     * complete when it passes complete exceptionally with a
+     * {@code SearchTimeoutException}. The futures of the other Predictors are
+     * not affected.
+     *
+     * @param predictors The Predictors.
+     * @param executor   The executor that runs the searches.
+     * @param timeout    The maximum time until the futures complete.
+     * @param unit       The unit of the timeout, not null.
+     * @return           The futures of the Predictors, in the same order.
+     */
+    public static List<CompletableFuture<Predictor>> initAllAsync(
+            List<Predictor> predictors, Executor executor, long timeout, TimeUnit unit) {
+        List<CompletableFuture<Predictor>> futures = initAllAsync(predictors, executor);
+        AsyncSearch.timeout(futures, timeout, unit);
+        return futures;
+    }
+
+    /**
+     * Runs a complete search, reporting it in {@code Events}.
+     * @param prev   The previous operation, can be null.
+     * @param search The search.
+     * @return       This Predictor after determining the pattern.
+     * @throws       NoPatternFoundException - If no pattern is found in the 
+     *               values of this Predictor, or the search is aborted.
+     */
+    Predictor search(PredictOperation prev, SearchContext search) 
+            throws NoPatternFoundException {
+        Object event = Events.beginSearch();
+        String outcome = Events.NO_PATTERN;
+        try {
+            init(prev, search);
+            outcome = Events.FOUND;
+            return this;
+        } catch (SearchTimeoutException ex) {
+            outcome = Events.TIMEOUT;
+            throw ex;
+        } catch (SearchCancelledException ex) {
+            outcome = Events.CANCELLED;
+            throw ex;
+        } finally {
+            Events.endSearch(event, values.size(), search, outcome);
+        }
+    }
+    
+    /**
+     * Initializes the Predictor by searching a prefix of the values only.
+     * 
+     * Equivalent to {@code initPrefix(INITIAL_PREFIX)}.
+     * 
+     * @return Itself for fluency
+     * @throws NoPatternFoundException - If no pattern can be found in the input.
+     * @see #initPrefix(int)
+     */
+    public Predictor initPrefix() throws NoPatternFoundException {
+        return initPrefix(INITIAL_PREFIX);
+    }
+    
+    /**
+     * Initializes the Predictor by searching a prefix of the values only.
+     * 
+     * Intended for very long inputs. The pattern is searched on the first 
+     * {@code initialPrefix} values, and then verified against all values in a
+     * single pass that keeps only one value per level. If the verification 
+     * fails, the prefix is widened (at least doubled, and past the first 
+     * mismatch) and the search is repeated, up to a search on all values. 
+     * The cost of detection therefore mostly depends on the complexity of the 
+     * pattern instead of the length of the input.
+     * 
+     * The verification uses the same criterion as {@code init()}, but the 
+     * pattern found can still differ from that of {@code init()} when a 
+     * pattern the search tries earlier needs more values than the prefix 
+     * holds. For example, {@code initPrefix(2)} on 1e15, 1e15+1, 1e15+3, 
+     * 1e15+6 finds an inversion over a constant where {@code init()} finds 
+     * a quadratic. Short prefixes make this more likely.
+     * 
+     * Unlike {@code init()}, the underlying levels of the resulting Predictor
+     * only keep the values needed for generating predictions.
+     * 
+     * @param initialPrefix The length of the first prefix searched.
+     * @return              Itself for fluency
+     * @throws NoPatternFoundException - If no pattern can be found in the input.
+     */
+    public Predictor initPrefix(int initialPrefix) throws NoPatternFoundException {
+        sync();
+        int size = values.size();
+        int prefix = Math.min(size, Math.max(2, initialPrefix));
+        while (prefix < size) {
+            Predictor candidate;
+            try {
+                candidate = new Predictor(values.subList(0, prefix)).init();
+            } catch (SearchCancelledException ex) {
+                throw ex;
+            } catch (NoPatternFoundException ex) {
+                prefix = (int) Math.min(size, 2L * prefix);
+                continue;
+            }
+            long mismatch = verify(candidate);
+            if (mismatch < 0) {
+                return this;
+            }
+            prefix = (int) Math.min(size, Math.max(2L * prefix, mismatch + 1));
+        }
+        return init();
+    }
+    
+    /**
+     * Verifies the pattern of the candidate against the values of this 
+     * Predictor, and adopts it if it matches.
+     * 
+     * The values are passed through the chain of operations one at a time, 
+     * keeping only the last value of every level. The pattern matches if every
+     * value of every level is finite, and all values of the last level are 
+     * equal. This is the same criterion {@code init()} uses: for integer 
+     * input, levels are computed and compared exactly for as long as their
+     * operations keep the values integral, as the {@code SearchTableau} does.
+     * A level that stops being integral part way is compared within the 
+     * tolerance from then on. The search would have compared all of its 
+     * values within the tolerance, so a mismatch found earlier only makes the
+     * prefix widen.
+     * 
+     * @param candidate The initialized Predictor of a prefix of the values.
+     * @return          -1 if the pattern matches, otherwise the index of the
+     *                  first value that does not match.
+     */
+    private long verify(Predictor candidate) {
+        List<PredictOperation> ops = new ArrayList<>();
+        for (Predictor level = candidate; !level.isConstant(); level = level.diffs) {
+            if (!(level.op instanceof BinaryPredictOperation 
+                    || level.op instanceof UnaryPredictOperation)) {
+                // Operations on complete Lists cannot be verified per value.
+                return values.size() - 1;
+            }
+            ops.add(level.op);
+        }
+        int depth = ops.size();
+        Opcode[] codes = new Opcode[depth];
+        for (int level = 0; level < depth; level++) {
+            codes[level] = Opcode.of(ops.get(level));
+        }
+        double[] last = new double[depth + 1];
+        boolean[] seen = new boolean[depth + 1];
+        // Like isAllEqual(), the constant level is compared with its first
+        // value, while generation continues from its last value.
+        double first = 0;
+        
+        // The levels that hold integers so far, and their last values.
+        boolean integral = true;
+        for (double value : values) {
+            integral &= SearchTableau.isExact(value);
+        }
+        boolean[] exact = new boolean[depth + 1];
+        Arrays.fill(exact, integral);
+        long[] lastExact = new long[depth + 1];
+        long firstExact = 0;
+        
+        long index = 0;
+        for (double value : values) {
+            long exactValue = (long) value;
+            int level = 0;
+            boolean reached = true;
+            while (level < depth) {
+                if (!Double.isFinite(value)) {
+                    return index;
+                }
+                PredictOperation operation = ops.get(level);
+                Opcode code = codes[level];
+                double previous = last[level];
+                long previousExact = lastExact[level];
+                boolean hasPrevious = seen[level];
+                last[level] = value;
+                lastExact[level] = exactValue;
+                seen[level] = true;
+                boolean binary = code != null ? code.isBinary() 
+                        : operation instanceof BinaryPredictOperation;
+                if (binary && !hasPrevious) {
+                    reached = false;
+                    break;
+                }
+                if (exact[level + 1]) {
+                    if (exact(code, previousExact, exactValue)) {
+                        exactValue = code == Opcode.DIFF 
+                                ? exactValue - previousExact 
+                                : exactValue / previousExact;
+                        value = exactValue;
+                        level++;
+                        continue;
+                    }
+                    // Continue in doubles, as the search does.
+                    Arrays.fill(exact, level + 1, depth + 1, false);
+                }
+                if (code != null) {
+                    value = code.apply(previous, value);
+                } else if (operation instanceof UnaryPredictOperation) {
+                    value = ((UnaryPredictOperation) operation).applyAsDouble(value);
+                } else {
+                    value = ((BinaryPredictOperation) operation).applyAsDouble(previous, value);
+                }
+                level++;
+            }
+            if (reached) {
+                if (!Double.isFinite(value)) {
+                    return index;
+                }
+                if (seen[depth] && (exact[depth] ? exactValue != firstExact 
+                        : !fuzzyEq(value, first))) {
+                    return index;
+                }
+                if (!seen[depth]) {
+                    first = value;
+                    firstExact = exactValue;
+                    seen[depth] = true;
+                }
+                last[depth] = value;
+            }
+            index++;
+        }
+        
+        // Adopt the pattern, keeping the last value of every underlying level.
+        Predictor below = null;
+        for (int level = depth; level > 0; level--) {
+            below = new Predictor(Collections.singletonList(last[level]), 
+                    level < depth ? ops.get(level) : null, below);
+            below.retain(1);
+        }
+        op = ops.isEmpty() ? null : ops.get(0);
+        diffs = below;
+        return -1;
+    }
+    
+    /**
+     * Returns whether an operation derives an integer from two integers 
+     * exactly, as {@code SearchTableau.applyExact()} requires.
+     * @param code     The opcode of the operation, or null.
+     * @param previous The previous value of the level.
+     * @param value    The value of the level.
+     * @return         True for a difference that does not overflow, or a 
+     *                 quotient without remainder.
+     */
+    private static boolean exact(Opcode code, long previous, long value) {
+        if (code == Opcode.DIFF) {
+            long diff = value - previous;
+            return ((value ^ previous) & (value ^ diff)) >= 0;
+        }
+        return code == Opcode.DIVIDE && previous != 0 && value % previous == 0
+                && !(previous == -1 && value == Long.MIN_VALUE);
+    }
+    
+    /**
+     * Initializes this Predictor as part of the given search.
+     * 
+     * The search runs in the {@code SearchTableau} of the current thread, and
+     * only the levels of the pattern found are created.
+     * 
+     * @param prev   The previous operation, can be null.
+     * @param search The search.
+     * @return       This Predictor after determining the pattern.
+     * @throws       NoPatternFoundException - If no pattern is found in the 
+     *               values of this Predictor, or the search is aborted.
+     */
+    private Predictor init(PredictOperation prev, SearchContext search) 
+            throws NoPatternFoundException {
+        sync();
         if (values.size() < 2) {
             throw new NoPatternFoundException("Not enough values to find pattern");
         }
+        if (values.stream().anyMatch(i -> !Double.isFinite(i))) {
+            throw new NoPatternFoundException("Found non-real number in sequence");
+        }
         
-        if (isAllEqual(values)) {
+        SearchTableau tableau = SearchTableau.acquire();
+        try {
+            int depth = tableau.search(values, prev, search);
+            if (depth < 0) {
+                throw new NoPatternFoundException("No Pattern can be found");
+            }
+            Predictor below = null;
+            for (int level = depth; level > 0; level--) {
+                below = new Predictor(tableau.values(level), 
+                        level < depth ? tableau.operation(level) : null, below);
+            }
+            op = depth > 0 ? tableau.operation(0) : null;
+            diffs = below;
             return this;
+        } finally {
+            SearchTableau.release(tableau);
+        }
+    }
+    
+    /**
+     * Initializes this Predictor as part of the given search, creating a
+     * Predictor for every level the search visits.
+     * 
+     * This is the reference implementation of the search in the 
+     * {@code SearchTableau}, kept for differential testing. It compares all 
+     * values within {@code FUZZY_EQ_THRESHOLD}, so for integer input it can 
+     * find a different pattern than {@code init()}.
+     * 
+     * @param prev   The previous operation, can be null.
+     * @param search The search this level is part of.
+     * @return       This Predictor after determining the pattern.
+     * @throws       NoPatternFoundException - If no pattern is found in the 
+     *               values of this Predictor, or the search is aborted.
+     */
+    Predictor initRecursive(PredictOperation prev, SearchContext search) 
+            throws NoPatternFoundException {
+        sync();
+        double[] input = new double[values.size()];
+        int i = 0;
+        for (double value : values) {
+            input[i++] = value;
+        }
+        return initRecursive(prev, search, input, new ArrayList<>());
+    }
+    
+    /**
+     * Initializes this level as part of the given search.
+     * @param prev   The previous operation, can be null.
+     * @param search The search this level is part of.
+     * @param input  The values of the root level.
+     * @param chain  The operations that derived this level from the root.
+     * @return       This Predictor after determining the pattern.
+     * @throws       NoPatternFoundException - If no pattern is found in the 
+     *               values of this Predictor, or the search is aborted.
+     */
+    private Predictor initRecursive(PredictOperation prev, SearchContext search,
+            double[] input, List<PredictOperation> chain) 
+            throws NoPatternFoundException {
+        search.check();
+        if (values.size() < 2) {
+            throw new NoPatternFoundException("Not enough values to find pattern");
+        }
+        
+        if (isAllEqual(values) || escalate(input, chain, values)) {
+            return this;
+        }
+        if (prev == null) {
+            Predictor closed = SearchTableau.prepass(values);
+            if (closed != null) {
+                op = closed.op;
+                diffs = closed.diffs;
+                return this;
+            }
         }
         
         for (PredictOperation operation : Operations.getAll()) {
             if (prev == null || operation.canApplyAfter(prev)) {
+                Object event = Events.beginBranch();
+                int depth = search.descend();
+                boolean success = false;
+                chain.add(operation);
                 try {
                     List<Double> newValues = operation.apply(values);
-                    diffs = new Predictor(newValues).init(operation);
+                    diffs = new Predictor(newValues).initRecursive(operation, search,
+                            input, chain);
                     op = operation;
+                    success = true;
                     return this;
+                } catch (SearchCancelledException ex) {
+                    throw ex;
                 } catch (NoPatternFoundException ex) {
                     // Ignored on purpose
+                } finally {
+                    chain.remove(chain.size() - 1);
+                    search.ascend();
+                    Events.endBranch(event, operation, depth, success);
                 }
             }
         }
         throw new NoPatternFoundException("No Pattern can be found");
     }
     
+    /**
+     * Recomputes the values of a level in double-double precision if they
+     * narrowly miss being constant, as the {@code SearchTableau} does, and 
+     * replaces them if the recomputed values are constant.
+     * @param input  The values of the root level.
+     * @param chain  The operations that derived the level from the root.
+     * @param values The values of the level.
+     * @return       True if the recomputed values are constant.
+     * @throws NoPatternFoundException - Never, the recomputed values are 
+     *                                   finite.
+     * @see DoubleDouble
+     */
+    static boolean escalate(double[] input, List<PredictOperation> chain, 
+            List<Double> values) throws NoPatternFoundException {
+        int length = values.size();
+        if (chain.isEmpty() || length < DoubleDouble.NEAR_MISS_LENGTH) {
+            return false;
+        }
+        double[] level = new double[length];
+        int i = 0;
+        for (double value : values) {
+            level[i++] = value;
+        }
+        if (!DoubleDouble.nearMiss(level, length)) {
+            return false;
+        }
+        double[] high = new double[input.length];
+        double[] low = new double[input.length];
+        PredictOperation[] ops = chain.toArray(new PredictOperation[chain.size()]);
+        if (DoubleDouble.replay(input, input.length, ops, ops.length, high, low) != length) {
+            return false;
+        }
+        List<Double> recomputed = new ArrayList<>(length);
+        for (i = 0; i < length; i++) {
+            recomputed.add(high[i]);
+        }
+        if (!isAllEqual(recomputed)) {
+            return false;
+        }
+        values.clear();
+        values.addAll(recomputed);
+        return true;
+    }
+    
+    /**
+     * Returns a lazy Stream over all patterns that explain the values of this
+     * Predictor, using at most {@code maxDepth} operations.
+     * 
+     * The patterns are ordered by the priority in which {@code init()} tries 
+     * them, so the first pattern is the one {@code init()} finds. Patterns 
+     * are only searched for when the Stream requests them, so 
+     * {@code alternatives(depth).limit(3)} costs little more than a single 
+     * detection. This Predictor itself is not changed.
+     * 
+     * @param maxDepth The maximum amount of operations in a pattern.
+     * @return         The Stream of initialized, independent Predictors.
+     * @see PatternIterator
+     */
+    public Stream<Predictor> alternatives(int maxDepth) {
+        sync();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                new PatternIterator(values, maxDepth), 
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+    
     /**
      * An unmodifiable view of the values in this Predictor.
      * @return The values in this Predictor as a read-only List.
      */
     public List<Double> getComputed() {
+        if (recent != null) {
+            return new RecentValues();
+        }
         return Collections.unmodifiableList(values);
     }
     
@@ -165,6 +726,15 @@ public class Predictor {
         return diffs;
     }
     
+    /**
+     * Returns the operation that transforms the values of this Predictor into 
+     * the values of the underlying Predictor.
+     * @return The PredictOperation, or null if the sequence is constant.
+     */
+    public PredictOperation getOperation() {
+        return op;
+    }
+    
     /**
      * Computes the next value and returns it.
      * 
@@ -173,10 +743,294 @@ public class Predictor {
      */
     public double getNext() {
         double next = computeNext();
-        values.add(next);
+        if (recent != null) {
+            push(next);
+        } else {
+            values.add(next);
+            if (values.size() > retained) {
+                values.removeFirst();
+            }
+        }
         return next;
     }
     
+    /**
+     * Appends a value to the ring buffer of a level with a bounded history,
+     * discarding the oldest value when it is full.
+     * @param value The value.
+     */
+    private void push(double value) {
+        if (filled < recent.length) {
+            // The ring only wraps around once it is full.
+            recent[filled++] = value;
+        } else {
+            recent[head] = value;
+            head = head + 1 == recent.length ? 0 : head + 1;
+        }
+        stale = true;
+    }
+    
+    /**
+     * Returns a value of the ring buffer.
+     * @param index The index of the value, 0 being the oldest retained value.
+     * @return      The value.
+     */
+    private double recent(int index) {
+        int i = head + index;
+        return recent[i < recent.length ? i : i - recent.length];
+    }
+    
+    /**
+     * Returns the last value of this level.
+     * @return The last value.
+     */
+    private double last() {
+        return recent != null ? recent(filled - 1) : values.getLast();
+    }
+    
+    /**
+     * Brings the values List up to date with the ring buffer.
+     */
+    private void sync() {
+        if (stale) {
+            values.clear();
+            for (int i = 0; i < filled; i++) {
+                values.add(recent(i));
+            }
+            stale = false;
+        }
+    }
+    
+    /**
+     * Bounds the history of this level to the given amount of trailing 
+     * values, and moves them into the ring buffer.
+     * 
+     * The ring buffer is only used when this level already holds that many
+     * values. Otherwise, such as for operations that keep the default 
+     * {@code historySize()} of {@code Integer.MAX_VALUE}, the values stay in
+     * the List, which discards old values once it holds more than that.
+     * @param keep The amount of values, at least 1.
+     */
+    private void retain(int keep) {
+        sync();
+        int size = values.size();
+        if (size > keep) {
+            values.subList(0, size - keep).clear();
+        }
+        retained = keep;
+        if (keep > size) {
+            recent = null;
+            return;
+        }
+        recent = new double[keep];
+        head = 0;
+        filled = 0;
+        for (double value : values) {
+            recent[filled++] = value;
+        }
+    }
+
+    /**
+     * Compiles the pattern of this Predictor into a specialized generator.
+     *
+     * The generator continues after the last value of this Predictor, and is
+     * worth its compilation cost when a pattern generates many values, see
+     * {@code CompiledPattern}.
+     *
+     * @return The CompiledPattern.
+     * @throws IllegalArgumentException - If the pattern uses operations that
+     *         cannot be compiled.
+     */
+    public CompiledPattern compile() {
+        return new CompiledPattern(this);
+    }
+
+    /**
+     * Creates an independent copy of the generation state of this Predictor.
+     *
+     * Every level of the copy only keeps the trailing values its operations 
+     * need (as given by {@code PredictOperation.historySize()}), and keeps 
+     * discarding older values while generating. Generating values from the 
+     * copy does not affect this Predictor.
+     * 
+     * @return The copy.
+     */
+    Predictor copyState() {
+        return copyState(null);
+    }
+    
+    /**
+     * Creates an independent copy of the generation state of this Predictor.
+     * @param parent The operation of the parent level, or null for the root.
+     * @return       The copy.
+     */
+    private Predictor copyState(PredictOperation parent) {
+        sync();
+        int keep = history(parent);
+        int size = values.size();
+        Predictor copy = new Predictor(keep >= size 
+                ? values : values.subList(size - keep, size));
+        copy.op = op;
+        copy.retain(keep);
+        if (diffs != null) {
+            copy.diffs = diffs.copyState(op);
+        }
+        return copy;
+    }
+    
+    /**
+     * Discards all values of this Predictor that generation does not need.
+     * 
+     * After initialization, every level keeps all of its values, so a 
+     * Predictor of a long input holds about depth times its length in 
+     * values. Compaction keeps only the trailing values the operations need 
+     * (as given by {@code PredictOperation.historySize()}, which is only the 
+     * last value for the built-in operations), and keeps discarding older 
+     * values while generating, as {@code copyState()} does. The pattern and 
+     * predictions do not change.
+     * 
+     * Afterwards {@code getComputed()} only returns the retained values, and 
+     * {@code alternatives()} only searches those. Callers that need the input
+     * later have to keep their own reference to it.
+     * 
+     * @return Itself for fluency
+     */
+    public Predictor compact() {
+        compact(null);
+        return this;
+    }
+    
+    /**
+     * Discards the values of this level and the levels below that generation
+     * does not need.
+     * @param parent The operation of the parent level, or null for the root.
+     */
+    private void compact(PredictOperation parent) {
+        retain(history(parent));
+        if (diffs != null) {
+            diffs.compact(op);
+        }
+    }
+    
+    /**
+     * Returns the amount of trailing values of this level that generation 
+     * needs.
+     * @param parent The operation of the parent level, or null for the root.
+     * @return       The amount of values, at least 1.
+     */
+    private int history(PredictOperation parent) {
+        int keep = 1;
+        if (op != null) {
+            keep = Math.max(keep, op.historySize());
+        }
+        if (parent != null) {
+            keep = Math.max(keep, parent.historySize());
+        }
+        return keep;
+    }
+    
+    /**
+     * Skips the given amount of predictions.
+     * 
+     * When this Predictor is a state copy (see {@code copyState()}) or is 
+     * compacted, and its pattern has a known closed form, such as polynomial
+     * and geometric sequences, this takes O(depth^2) steps. Otherwise the values are 
+     * generated one by one.
+     * 
+     * @param count The amount of values to skip.
+     */
+    void skip(long count) {
+        if (count > 0 && !skipClosedForm(count)) {
+            Object event = Events.beginGeneration();
+            for (long i = 0; i < count; i++) {
+                getNext();
+            }
+            Events.endGeneration(event, count);
+        }
+    }
+    
+    /**
+     * Skips the given amount of predictions using a closed form of the 
+     * pattern, if one is available.
+     * @param count The amount of values to skip, positive.
+     * @return      True if the values were skipped, false if no closed form 
+     *              is available and nothing was changed.
+     */
+    boolean skipClosedForm(long count) {
+        if (retained != 1) {
+            return false;
+        }
+        if (isConstant()) {
+            return true;
+        }
+        if (op instanceof UnaryPredictOperation) {
+            // The value of this level only depends on the underlying level.
+            if (!diffs.skipClosedForm(count)) {
+                return false;
+            }
+            setLast(((UnaryPredictOperation) op).applyInverse(diffs.last()));
+            return true;
+        }
+        if (op == Operations.divide() && diffs.isConstant() 
+                && diffs.retained == 1) {
+            // Geometric sequence: u{n+k} = u{n} * r^k
+            setLast(last() * Math.pow(diffs.last(), count));
+            return true;
+        }
+        
+        // Polynomial sequence: a chain of differences ending in a constant.
+        List<Predictor> levels = new ArrayList<>();
+        Predictor level = this;
+        while (!level.isConstant()) {
+            if (level.op != Operations.diff() || level.retained != 1) {
+                return false;
+            }
+            levels.add(level);
+            level = level.diffs;
+        }
+        if (level.retained != 1) {
+            return false;
+        }
+        levels.add(level);
+        
+        // Newton's backward difference formula: every level i advances to 
+        // the sum over j >= i of C(count-1 + j-i, j-i) * last{j}.
+        int depth = levels.size();
+        double[] last = new double[depth];
+        for (int i = 0; i < depth; i++) {
+            last[i] = levels.get(i).last();
+        }
+        double[] binomial = new double[depth];
+        binomial[0] = 1;
+        for (int m = 1; m < depth; m++) {
+            binomial[m] = binomial[m-1] * (count - 1 + m) / m;
+        }
+        for (int i = 0; i < depth - 1; i++) {
+            double sum = 0;
+            for (int j = i; j < depth; j++) {
+                sum += binomial[j-i] * last[j];
+            }
+            levels.get(i).setLast(sum);
+        }
+        return true;
+    }
+    
+    /**
+     * Replaces the value of a single-valued state copy.
+     * @param value The new value.
+     */
+    private void setLast(double value) {
+        if (recent == null) {
+            values.clear();
+            values.add(value);
+            return;
+        }
+        recent[0] = value;
+        head = 0;
+        filled = 1;
+        stale = true;
+    }
+    
     /**
      * Computes the next value and returns it.
      * 
@@ -185,11 +1039,21 @@ public class Predictor {
      */
     protected double computeNext() {
         if (isConstant()) {
-            return values.getLast();
-        } else {
-            diffs.getNext();
-            return op.computeNext(values, diffs.getComputed());
+            return last();
         }
+        double below = diffs.getNext();
+        Opcode code = Opcode.of(op);
+        if (code != null) {
+            return code.inverse(last(), below);
+        }
+        if (recent != null && op instanceof Operations.LagDifference) {
+            int lag = ((Operations.LagDifference) op).getLag();
+            if (filled >= lag) {
+                return recent(filled - lag) + below;
+            }
+        }
+        sync();
+        return op.computeNext(values, diffs.getComputed());
     }
     
     /**
@@ -235,6 +1099,25 @@ public class Predictor {
         return stream.mapToDouble(Double::doubleValue);
     }
     
+    /**
+     * Returns a finite Stream over the predictions with index {@code from} 
+     * (inclusive) up to {@code to} (exclusive). 
+     * 
+     * Index 0 refers to the value the next call to {@code getNext()} would 
+     * return. Unlike {@code stream()}, the returned Stream does not advance 
+     * this Predictor and splits efficiently, so it can be processed in 
+     * parallel by calling {@code parallel()} on it.
+     * 
+     * @param from The index of the first prediction, inclusive.
+     * @param to   The index of the last prediction, exclusive.
+     * @return     The Stream
+     * @see PredictionSpliterator
+     */
+    public DoubleStream stream(long from, long to) {
+        return StreamSupport.doubleStream(
+                new PredictionSpliterator(this, from, to), false);
+    }
+    
     /**
      * Returns whether all doubles in the List are equal.
      * @param input A List of doubles.
@@ -272,6 +1155,26 @@ public class Predictor {
         return Math.abs(a - b) <= Math.abs(Math.max(a, b)) * FUZZY_EQ_THRESHOLD;
     }
     
+    /**
+     * A read-only view of the values in the ring buffer of this Predictor.
+     */
+    private final class RecentValues extends AbstractList<Double> 
+            implements RandomAccess {
+
+        @Override
+        public Double get(int index) {
+            if (index < 0 || index >= filled) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + filled);
+            }
+            return recent(index);
+        }
+
+        @Override
+        public int size() {
+            return filled;
+        }
+    }
+    
     /**
      * Infinite Iterator class used to construct an infinite Stream.
      * 
@@ -0,0 +1,38 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+/**
+ * Exception type indicating the search for a pattern was aborted before it 
+ * completed, because the searching thread was interrupted.
+ * 
+ * This is a NoPatternFoundException, since no pattern was found, but it does 
+ * not imply that the input has no pattern. The interrupt status of the 
+ * searching thread is left set.
+ * 
+ * @author Patrick Kramer
+ * @see SearchTimeoutException
+ */
+public class SearchCancelledException extends NoPatternFoundException {
+
+    public SearchCancelledException() {
+    }
+
+    public SearchCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,117 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+/**
+ * State shared by all levels of a single pattern search.
+ * 
+ * The Predictor calls {@code check()} for every node of the search tree, 
+ * which aborts the search once the searching thread is interrupted, the 
+ * search is cancelled from another thread, or the search exceeds its 
+ * deadline. It also counts the nodes expanded and tracks 
+ * the depth reached, for reporting in {@code Events}.
+ * 
+ * @author Patrick Kramer
+ */
+final class SearchContext {
+    
+    private final boolean timed;
+    private final long deadline;
+    
+    private volatile boolean cancelled = false;
+    
+    private long nodes = 0;
+    private int depth = 0;
+    private int maxDepth = 0;
+    
+    /**
+     * Initializes a SearchContext without deadline.
+     */
+    SearchContext() {
+        this.timed = false;
+        this.deadline = 0;
+    }
+    
+    /**
+     * Initializes a SearchContext with the given deadline.
+     * @param deadline The deadline, in terms of {@code System.nanoTime()}.
+     */
+    SearchContext(long deadline) {
+        this.timed = true;
+        this.deadline = deadline;
+    }
+    
+    /**
+     * Checks whether the search may continue.
+     * @throws SearchCancelledException - If the thread is interrupted, or the
+     *                                    search is cancelled.
+     * @throws SearchTimeoutException   - If the deadline has passed.
+     */
+    void check() throws SearchCancelledException {
+        nodes++;
+        if (Thread.currentThread().isInterrupted()) {
+            throw new SearchCancelledException("Search interrupted");
+        }
+        if (cancelled) {
+            throw new SearchCancelledException("Search cancelled");
+        }
+        if (timed && System.nanoTime() - deadline > 0) {
+            throw new SearchTimeoutException("Search deadline exceeded");
+        }
+    }
+    
+    /**
+     * Cancels the search, so that it stops at its next check. May be called
+     * from any thread.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+    
+    /**
+     * Marks that the search descends into the level below the current one.
+     * @return The depth of the new level, where the input has depth 0.
+     */
+    int descend() {
+        depth++;
+        maxDepth = Math.max(maxDepth, depth);
+        return depth;
+    }
+    
+    /**
+     * Marks that the search returns to the level above the current one.
+     */
+    void ascend() {
+        depth--;
+    }
+    
+    /**
+     * Returns the amount of nodes of the search tree expanded so far.
+     * @return The amount of nodes.
+     */
+    long getNodes() {
+        return nodes;
+    }
+    
+    /**
+     * Returns the maximum depth reached so far.
+     * @return The depth, where the input has depth 0.
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+}
@@ -0,0 +1,758 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Primitive scratch space for the pattern search.
+ *
+ * The search keeps the values of every level of the current chain of
+ * operations in a row of the tableau: row 0 holds the input, and row d holds
+ * the values derived by the operation at depth d. Since binary operations
+ * shorten the sequence by one, the used part of the tableau is triangular.
+ * When the search backtracks, the next operation overwrites the same row, so
+ * a search allocates nothing once the tableau is large enough. Only the
+ * winning chain is turned into Predictor levels by the caller.
+ *
+ * The search tries the operations in the same order as the recursive search
+ * on Predictor levels, and uses the same criteria for doubles. Sequences of
+ * integers are searched in rows of longs instead, with exact arithmetic and
+ * exact constant detection, as long as the operations keep the values
+ * integral. An operation that overflows or produces a fraction continues
+ * that branch of the search in the rows of doubles. Integer levels are
+ * therefore only constant when all values are exactly equal, where the
+ * double search accepts values within {@code Predictor.FUZZY_EQ_THRESHOLD},
+ * which is wrong for large counters. A level the double search would accept
+ * as constant is then searched further, so for integer input this search can
+ * visit more nodes than the recursive search and find a different pattern.
+ *
+ * A level of doubles that narrowly misses being constant is recomputed from
+ * the input in double-double precision if the input holds integers, and is
+ * constant if the recomputed values are; see {@code escalate()}.
+ *
+ * A search from the input first runs pre-passes for the most common closed
+ * forms, which skip the tree search on a hit; see {@code prepass()}. 
+ * Polynomials up to {@code MAX_DEGREE} are found by the forward-difference
+ * table (which is the first branch of the search), periodic sequences in a
+ * linear pass, and geometric sequences by a pass over their ratios.
+ * The patterns of periodic and geometric sequences are shorter than those the
+ * search would find: it expresses periodic sequences only several levels deep
+ * or not at all, and geometric sequences after differences down to the last
+ * three values.
+ *
+ * Tableaus are pooled per thread, see {@code acquire()} and
+ * {@code release()}.
+ *
+ * @author Patrick Kramer
+ */
+final class SearchTableau {
+
+    /**
+     * The maximum amount of doubles a pooled tableau may hold. Larger
+     * tableaus are discarded after their search, so a single long input does
+     * not pin its memory to the thread.
+     */
+    static final long MAX_POOLED_SIZE = 1 << 20;
+
+    private static final ThreadLocal<SearchTableau> POOL = new ThreadLocal<>();
+
+    /**
+     * The largest magnitude of an integral double that is searched in the 
+     * rows of longs.
+     */
+    static final double MAX_EXACT = 0x1p62;
+
+    /**
+     * The highest degree of the polynomials found by the pre-pass.
+     */
+    static final int MAX_DEGREE = 8;
+
+    private double[][] rows = new double[8][];
+    private long[][] longRows = new long[8][];
+    private boolean[] exact = new boolean[8];
+    private int[] lengths = new int[8];
+    private PredictOperation[] ops = new PredictOperation[8];
+    private int[] prefix = new int[0];
+    private double[] high = new double[0];
+    private double[] low = new double[0];
+    private long size = 0;
+    private boolean inUse = false;
+
+    /**
+     * Returns the tableau of the current thread, or a new tableau if it is
+     * already in use by an enclosing search.
+     * @return The tableau, to be passed to {@code release()} after use.
+     */
+    static SearchTableau acquire() {
+        SearchTableau tableau = POOL.get();
+        if (tableau == null || tableau.inUse) {
+            tableau = new SearchTableau();
+            if (POOL.get() == null) {
+                POOL.set(tableau);
+            }
+        }
+        tableau.inUse = true;
+        return tableau;
+    }
+
+    /**
+     * Returns the tableau to the pool of the current thread.
+     * @param tableau The tableau returned by {@code acquire()}.
+     */
+    static void release(SearchTableau tableau) {
+        tableau.inUse = false;
+        if (POOL.get() == tableau && tableau.size > MAX_POOLED_SIZE) {
+            POOL.remove();
+        }
+    }
+
+    /**
+     * Searches the pattern of the given values.
+     * @param values The input values.
+     * @param prev   The operation applied before the input, can be null.
+     * @param search The search.
+     * @return       The depth of the constant level of the pattern, or -1 if
+     *               no pattern is found.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    int search(List<Double> values, PredictOperation prev, SearchContext search)
+            throws SearchCancelledException {
+        boolean integral = load(values);
+        if (prev == null) {
+            int depth = prepass(search);
+            if (depth >= 0) {
+                return depth;
+            }
+        }
+        return integral ? searchExact(0, prev, search) : search(0, prev, search);
+    }
+
+    /**
+     * Returns the pattern of the given values found by the pre-passes of 
+     * {@code search}, if the search would not find it first by itself.
+     * 
+     * Polynomials are left out, since the first branch of the search finds
+     * the same pattern.
+     * 
+     * @param values The values, all finite.
+     * @return       The initialized Predictor, or null if the values are not
+     *               periodic or geometric.
+     */
+    static Predictor prepass(List<Double> values) {
+        SearchTableau tableau = acquire();
+        try {
+            tableau.load(values);
+            int depth;
+            try {
+                depth = tableau.prepass(new SearchContext());
+            } catch (SearchCancelledException ex) {
+                // Interrupted, which the search of the caller reports.
+                return null;
+            }
+            boolean polynomial = true;
+            for (int level = 0; level < depth; level++) {
+                polynomial &= tableau.ops[level] == Operations.diff();
+            }
+            if (depth < 0 || polynomial) {
+                return null;
+            }
+            Predictor below = null;
+            for (int level = depth; level > 0; level--) {
+                below = new Predictor(tableau.values(level), 
+                        level < depth ? tableau.operation(level) : null, below);
+            }
+            return new Predictor(values, tableau.operation(0), below);
+        } finally {
+            release(tableau);
+        }
+    }
+
+    /**
+     * Runs the pre-passes on the values in row 0: polynomials, then periodic
+     * sequences, then geometric sequences. Polynomials come first, so a
+     * polynomial is never mistaken for a period. Only a polynomial whose
+     * constant level has just two values, which any sequence reaches by 
+     * chance one level above its last, is left to a period that the 
+     * differences confirm.
+     * 
+     * Every level visited counts as a node of the search.
+     * 
+     * @param search The search.
+     * @return       The depth of the constant level of the pattern found, or
+     *               -1 to continue with the tree search.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    private int prepass(SearchContext search) throws SearchCancelledException {
+        search.check();
+        int depth = polynomial(search);
+        if (depth >= 0 && lengths[depth] > 2) {
+            return depth;
+        }
+        if (periodic()) {
+            search.check();
+            return 1;
+        }
+        // The periodic pass overwrote row 1.
+        return depth >= 0 ? polynomial(search) : geometric(search);
+    }
+
+    /**
+     * Finds the degree of a polynomial in row 0, by computing the rows of
+     * differences until one is constant.
+     * 
+     * These are the levels of the first branch of the search, computed with
+     * the same arithmetic, so the pattern is the one the search would find.
+     * 
+     * @param search The search.
+     * @return       The degree, or -1 if the values are not a polynomial of
+     *               at most {@code MAX_DEGREE}.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    private int polynomial(SearchContext search) throws SearchCancelledException {
+        for (int depth = 0; lengths[depth] >= 2; depth++) {
+            int constant = constant(depth);
+            if (constant > 0 || (constant == 0 && escalate(depth))) {
+                return depth;
+            } else if (constant < 0 || depth == MAX_DEGREE) {
+                return -1;
+            }
+            search.check();
+            ops[depth] = Operations.diff();
+            derive(depth);
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether the values in row 0 are geometric, {@code a * r^n}, or
+     * affine-geometric, {@code a * r^n + b}, by checking that their ratios 
+     * (or the ratios of their differences) are constant.
+     * @param search The search.
+     * @return       The depth of the constant level of the pattern found, or
+     *               -1.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    private int geometric(SearchContext search) throws SearchCancelledException {
+        if (lengths[0] >= 3) {
+            search.check();
+            ops[0] = Operations.divide();
+            derive(0);
+            if (constant(1) > 0 || escalate(1)) {
+                return 1;
+            }
+        }
+        if (lengths[0] >= 4) {
+            search.check();
+            ops[0] = Operations.diff();
+            derive(0);
+            ops[1] = Operations.divide();
+            derive(1);
+            if (constant(2) > 0 || escalate(2)) {
+                return 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Recomputes a row of doubles that narrowly misses being constant in 
+     * double-double precision, from the input and the operations of the rows
+     * above, and replaces its values if they are constant.
+     * 
+     * Rows of integers are exact, and are never recomputed. Neither are rows
+     * derived from an input of doubles, see {@code DoubleDouble}.
+     * 
+     * @param depth The row, which is not constant.
+     * @return      True if the recomputed row is constant.
+     * @see DoubleDouble
+     */
+    private boolean escalate(int depth) {
+        int length = lengths[depth];
+        if (depth == 0 || !exact[0] || exact[depth] || !DoubleDouble.nearMiss(rows[depth], length)) {
+            return false;
+        }
+        int inputLength = lengths[0];
+        if (high.length < inputLength) {
+            size += 2L * (inputLength - high.length);
+            high = new double[inputLength];
+            low = new double[inputLength];
+        }
+        if (DoubleDouble.replay(rows[0], inputLength, ops, depth, high, low) != length
+                || constant(high, length) <= 0) {
+            return false;
+        }
+        System.arraycopy(high, 0, rows[depth], 0, length);
+        return true;
+    }
+
+    /**
+     * Derives the row below the given row with its operation, exactly if the 
+     * row holds integers and the results are integral, as the search does.
+     * @param depth The row.
+     */
+    private void derive(int depth) {
+        PredictOperation operation = ops[depth];
+        if (exact[depth]) {
+            if (applyExact(operation, depth)) {
+                exact[depth + 1] = true;
+                return;
+            }
+            long[] values = longRows[depth];
+            int length = lengths[depth];
+            double[] row = row(depth, length);
+            for (int i = 0; i < length; i++) {
+                row[i] = values[i];
+            }
+        }
+        apply(operation, depth);
+        exact[depth + 1] = false;
+    }
+
+    /**
+     * Returns whether the values in the given row are constant, exactly if
+     * the row holds integers.
+     * @param depth The row.
+     * @return      1 if constant, 0 if not, and -1 if a value is not finite.
+     */
+    private int constant(int depth) {
+        int length = lengths[depth];
+        if (!exact[depth]) {
+            return constant(rows[depth], length);
+        }
+        long[] values = longRows[depth];
+        for (int i = 1; i < length; i++) {
+            if (values[i] != values[0]) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Loads the values into row 0, and into the row 0 of longs if they are
+     * all integers.
+     * @param values The values.
+     * @return       True if the values are integers.
+     */
+    private boolean load(List<Double> values) {
+        int length = values.size();
+        double[] row = row(0, length);
+        boolean integral = true;
+        int i = 0;
+        for (double value : values) {
+            row[i++] = value;
+            integral &= isExact(value);
+        }
+        exact[0] = integral;
+        if (integral) {
+            long[] longRow = longRow(0, length);
+            for (i = 0; i < length; i++) {
+                longRow[i] = (long) row[i];
+            }
+        }
+        return integral;
+    }
+
+    /**
+     * Checks whether the values in row 0 repeat with a fixed period p of at
+     * least 2, possibly with a constant offset per period, which is when
+     * their differences are periodic.
+     *
+     * The period is found in linear time: the prefix function of the
+     * differences (as in Knuth-Morris-Pratt) gives their shortest period,
+     * which is then verified by taking the differences at distance p. If
+     * these are constant, row 1 holds them and the operation of row 0 is
+     * {@code Operations.diff(p)}, forming a complete pattern of depth 1.
+     * Integers are compared exactly, other values with
+     * {@code Predictor.fuzzyEq}, as in the search.
+     *
+     * The differences must cover at least two full periods. With less, any
+     * differences whose last values repeat their first ones would have a
+     * period, and the differences at distance p would be constant by
+     * construction, without confirming anything.
+     *
+     * Constant and arithmetic sequences have differences of period 1, and
+     * are left to the search.
+     *
+     * @return True if the values are periodic.
+     */
+    private boolean periodic() {
+        int length = lengths[0];
+        if (length < 4) {
+            return false;
+        }
+        boolean integral = exact[0];
+        double[] in = rows[0];
+        int m = length - 1;
+        double[] diffs = row(1, m);
+        for (int i = 0; i < m; i++) {
+            diffs[i] = in[i + 1] - in[i];
+        }
+        if (prefix.length < m) {
+            size += m - prefix.length;
+            prefix = new int[Math.max(m, 2 * prefix.length)];
+        }
+        int[] pi = prefix;
+        pi[0] = 0;
+        for (int i = 1; i < m; i++) {
+            int k = pi[i - 1];
+            while (k > 0 && !equal(diffs[i], diffs[k], integral)) {
+                k = pi[k - 1];
+            }
+            pi[i] = equal(diffs[i], diffs[k], integral) ? k + 1 : k;
+        }
+        int period = m - pi[m - 1];
+        if (period < 2 || m < 2 * period) {
+            return false;
+        }
+
+        int outLength = length - period;
+        if (integral) {
+            long[] values = longRows[0];
+            long[] out = longRow(1, outLength);
+            try {
+                for (int i = 0; i < outLength; i++) {
+                    out[i] = Math.subtractExact(values[i + period], values[i]);
+                    if (out[i] != out[0]) {
+                        return false;
+                    }
+                }
+            } catch (ArithmeticException ex) {
+                return false;
+            }
+        } else {
+            double[] out = row(1, outLength);
+            for (int i = 0; i < outLength; i++) {
+                out[i] = in[i + period] - in[i];
+            }
+            if (constant(out, outLength) <= 0) {
+                return false;
+            }
+        }
+        exact[1] = integral;
+        ops[0] = Operations.diff(period);
+        return true;
+    }
+
+    /**
+     * Compares two values for the period search.
+     * @param a        The first value.
+     * @param b        The second value.
+     * @param integral True to compare exactly.
+     * @return         True if equal.
+     */
+    private static boolean equal(double a, double b, boolean integral) {
+        return integral ? a == b : Predictor.fuzzyEq(a, b);
+    }
+
+    /**
+     * Returns the values of a level of the last pattern found.
+     * @param depth The depth of the level.
+     * @return      A copy of the values.
+     */
+    double[] values(int depth) {
+        if (!exact[depth]) {
+            return Arrays.copyOf(rows[depth], lengths[depth]);
+        }
+        double[] result = new double[lengths[depth]];
+        long[] row = longRows[depth];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = row[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the operation of a level of the last pattern found.
+     * @param depth The depth of the level, less than the depth of the
+     *              constant level.
+     * @return      The operation that derives the level below.
+     */
+    PredictOperation operation(int depth) {
+        return ops[depth];
+    }
+
+    /**
+     * Searches the pattern of the values in the given row.
+     * @param depth  The row.
+     * @param prev   The operation that derived the row, can be null.
+     * @param search The search.
+     * @return       The depth of the constant level, or -1.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    private int search(int depth, PredictOperation prev, SearchContext search)
+            throws SearchCancelledException {
+        search.check();
+        exact[depth] = false;
+        int length = lengths[depth];
+        if (length < 2) {
+            return -1;
+        }
+        double[] values = rows[depth];
+        int constant = constant(values, length);
+        if (constant > 0 || (constant == 0 && escalate(depth))) {
+            return depth;
+        } else if (constant < 0) {
+            return -1;
+        }
+
+        for (PredictOperation operation : Operations.getAll()) {
+            if (prev == null || operation.canApplyAfter(prev)) {
+                Object event = Events.beginBranch();
+                int level = search.descend();
+                int result = -1;
+                try {
+                    apply(operation, depth);
+                    ops[depth] = operation;
+                    result = search(depth + 1, operation, search);
+                    if (result >= 0) {
+                        return result;
+                    }
+                } finally {
+                    search.ascend();
+                    Events.endBranch(event, operation, level, result >= 0);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Searches the pattern of the integers in the given row of longs.
+     * @param depth  The row.
+     * @param prev   The operation that derived the row, can be null.
+     * @param search The search.
+     * @return       The depth of the constant level, or -1.
+     * @throws SearchCancelledException - If the search is aborted.
+     */
+    private int searchExact(int depth, PredictOperation prev, SearchContext search)
+            throws SearchCancelledException {
+        search.check();
+        exact[depth] = true;
+        int length = lengths[depth];
+        if (length < 2) {
+            return -1;
+        }
+        long[] values = longRows[depth];
+        boolean constant = true;
+        for (int i = 1; i < length && constant; i++) {
+            constant = values[i] == values[0];
+        }
+        if (constant) {
+            return depth;
+        }
+
+        boolean converted = false;
+        for (PredictOperation operation : Operations.getAll()) {
+            if (prev == null || operation.canApplyAfter(prev)) {
+                Object event = Events.beginBranch();
+                int level = search.descend();
+                int result = -1;
+                try {
+                    ops[depth] = operation;
+                    if (applyExact(operation, depth)) {
+                        result = searchExact(depth + 1, operation, search);
+                    } else {
+                        if (!converted) {
+                            double[] row = row(depth, length);
+                            for (int i = 0; i < length; i++) {
+                                row[i] = values[i];
+                            }
+                            converted = true;
+                        }
+                        apply(operation, depth);
+                        result = search(depth + 1, operation, search);
+                    }
+                    if (result >= 0) {
+                        return result;
+                    }
+                } finally {
+                    search.ascend();
+                    Events.endBranch(event, operation, level, result >= 0);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the integers derived by the operation from the given row of 
+     * longs into the row below, if they are exact.
+     * @param operation The operation.
+     * @param depth     The row.
+     * @return          True if the row below holds the exact results, false
+     *                  if the operation has to be applied to doubles.
+     * @see #applyExact(PredictOperation, long[], int, long[])
+     */
+    private boolean applyExact(PredictOperation operation, int depth) {
+        if (operation != Operations.diff() && operation != Operations.divide()) {
+            return false;
+        }
+        int length = lengths[depth];
+        return applyExact(operation, longRows[depth], length, 
+                longRow(depth + 1, length - 1));
+    }
+
+    /**
+     * Writes the integers derived by the operation from the given integers,
+     * if they are exact.
+     * 
+     * Differences are exact unless they overflow. Quotients are exact if 
+     * every value is divisible by its predecessor. Inverses are never 
+     * computed exactly.
+     * 
+     * @param operation The operation.
+     * @param in        The integers.
+     * @param length    The amount of integers.
+     * @param out       The results, at least {@code length - 1} long.
+     * @return          True if {@code out} holds the exact results, false if
+     *                  the operation has to be applied to doubles.
+     */
+    static boolean applyExact(PredictOperation operation, long[] in, int length, 
+            long[] out) {
+        if (operation == Operations.diff()) {
+            try {
+                for (int i = 1; i < length; i++) {
+                    out[i - 1] = Math.subtractExact(in[i], in[i - 1]);
+                }
+            } catch (ArithmeticException ex) {
+                return false;
+            }
+            return true;
+        } else if (operation == Operations.divide()) {
+            for (int i = 1; i < length; i++) {
+                long divisor = in[i - 1];
+                if (divisor == 0 || in[i] % divisor != 0 
+                        || (divisor == -1 && in[i] == Long.MIN_VALUE)) {
+                    return false;
+                }
+                out[i - 1] = in[i] / divisor;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a value is searched as an integer.
+     * @param value The value.
+     * @return      True if the value is integral, and at most 
+     *              {@code MAX_EXACT} in magnitude.
+     */
+    static boolean isExact(double value) {
+        return value == Math.rint(value) && Math.abs(value) <= MAX_EXACT;
+    }
+
+    /**
+     * Writes the values derived by the operation from the given row into the
+     * row below.
+     * 
+     * Built-in operations run in the loops of their {@code Opcode}.
+     * 
+     * @param operation The operation.
+     * @param depth     The row.
+     */
+    private void apply(PredictOperation operation, int depth) {
+        double[] in = rows[depth];
+        int length = lengths[depth];
+        Opcode code = Opcode.of(operation);
+        if (code != null) {
+            code.apply(in, length, row(depth + 1, code.isBinary() ? length - 1 : length));
+        } else if (operation instanceof BinaryPredictOperation) {
+            BinaryPredictOperation binary = (BinaryPredictOperation) operation;
+            double[] out = row(depth + 1, length - 1);
+            for (int i = 1; i < length; i++) {
+                out[i - 1] = binary.applyAsDouble(in[i - 1], in[i]);
+            }
+        } else {
+            UnaryPredictOperation unary = (UnaryPredictOperation) operation;
+            double[] out = row(depth + 1, length);
+            for (int i = 0; i < length; i++) {
+                out[i] = unary.applyAsDouble(in[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the values are constant, as {@code Predictor.isAllEqual}
+     * does.
+     * @param values The values.
+     * @param length The amount of values, at least 1.
+     * @return       1 if constant, 0 if not, and -1 if a value is not finite.
+     */
+    private static int constant(double[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!Double.isFinite(values[i])) {
+                return -1;
+            }
+        }
+        double expected = values[0];
+        for (int i = 1; i < length; i++) {
+            if (!Predictor.fuzzyEq(values[i], expected)) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the given row of longs with room for the given amount of 
+     * values, growing the tableau if necessary.
+     * @param depth  The row.
+     * @param length The amount of values.
+     * @return       The row.
+     */
+    private long[] longRow(int depth, int length) {
+        row(depth, 0);
+        long[] row = longRows[depth];
+        if (row == null || row.length < length) {
+            size += length - (row == null ? 0 : row.length);
+            row = new long[length];
+            longRows[depth] = row;
+        }
+        lengths[depth] = length;
+        return row;
+    }
+
+    /**
+     * Returns the given row with room for the given amount of values, growing
+     * the tableau if necessary.
+     * @param depth  The row.
+     * @param length The amount of values.
+     * @return       The row.
+     */
+    private double[] row(int depth, int length) {
+        if (depth >= rows.length) {
+            int capacity = Math.max(depth + 1, 2 * rows.length);
+            rows = Arrays.copyOf(rows, capacity);
+            longRows = Arrays.copyOf(longRows, capacity);
+            exact = Arrays.copyOf(exact, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            ops = Arrays.copyOf(ops, capacity);
+        }
+        double[] row = rows[depth];
+        if (length > 0 && (row == null || row.length < length)) {
+            size += length - (row == null ? 0 : row.length);
+            row = new double[length];
+            rows[depth] = row;
+        }
+        lengths[depth] = length;
+        return row;
+    }
+}
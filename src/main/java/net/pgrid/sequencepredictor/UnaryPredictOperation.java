@@ -57,6 +57,19 @@ public interface UnaryPredictOperation extends
         return applyInverse(computed.get(computed.size()-1));
     }
     
+    /**
+     * Returns 1, since {@code computeNext} only reads the last value of both 
+     * Lists.
+     * 
+     * Implementations that override {@code computeNext} to read further back
+     * must override this method as well.
+     * @return 1
+     */
+    @Override
+    public default int historySize() {
+        return 1;
+    }
+    
     /**
      * Applies the unary transformation to the given Double.
      * @param d The input double
@@ -0,0 +1,318 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import net.pgrid.sequencepredictor.InputParser;
+import net.pgrid.sequencepredictor.InvalidTokenException;
+import net.pgrid.sequencepredictor.NoPatternFoundException;
+import net.pgrid.sequencepredictor.Predictor;
+
+/**
+ * Predicts many sequences, one per line, in a bounded pipeline.
+ * 
+ * A parser thread reads and parses the input lines and hands them to a pool 
+ * of worker threads that detect the patterns. The calling thread writes the 
+ * results in input order. At most {@code QUEUE_FACTOR} lines per worker are 
+ * in flight at any time, so memory use does not depend on the input size.
+ * 
+ * Every input line produces exactly one output line, either 
+ * {@code OK <tab> pattern <tab> predictions} or {@code ERROR <tab> message}.
+ * A line whose pattern is not found within {@code timeout} milliseconds is 
+ * reported as an error as well, so a single hard line cannot stall the run.
+ * 
+ * @author Patrick Kramer
+ */
+public class BatchPredictor {
+    
+    /**
+     * The maximum amount of lines in flight per worker thread.
+     */
+    public static final int QUEUE_FACTOR = 4;
+    
+    /**
+     * The default maximum time the detection of a single line may take, in 
+     * milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 10000;
+    
+    /**
+     * Prefix of output lines for which a pattern was found.
+     */
+    public static final String OK = "OK";
+    
+    /**
+     * Prefix of output lines for which no pattern was found, or the input 
+     * could not be parsed.
+     */
+    public static final String ERROR = "ERROR";
+    
+    /**
+     * Marks the end of the input in the queue of pending results.
+     */
+    private static final Future<String> END = CompletableFuture.completedFuture(null);
+    
+    private final int workers;
+    private final int predictions;
+    private final long timeout;
+    
+    /**
+     * Initializes a new BatchPredictor with the default timeout.
+     * @param workers     The amount of worker threads, at least 1.
+     * @param predictions The amount of predictions per sequence, at least 0.
+     * @throws IllegalArgumentException - If an argument is out of range.
+     */
+    public BatchPredictor(int workers, int predictions) {
+        this(workers, predictions, DEFAULT_TIMEOUT);
+    }
+    
+    /**
+     * Initializes a new BatchPredictor.
+     * @param workers     The amount of worker threads, at least 1.
+     * @param predictions The amount of predictions per sequence, at least 0.
+     * @param timeout     The maximum time the detection of a single line may
+     *                    take, in milliseconds, at least 1.
+     * @throws IllegalArgumentException - If an argument is out of range.
+     */
+    public BatchPredictor(int workers, int predictions, long timeout) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        if (predictions < 0) {
+            throw new IllegalArgumentException("Negative amount of predictions");
+        }
+        if (timeout < 1) {
+            throw new IllegalArgumentException("The timeout must be positive");
+        }
+        this.workers = workers;
+        this.predictions = predictions;
+        this.timeout = timeout;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getPredictions() {
+        return predictions;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * Predicts all sequences in the input and writes the results to the output.
+     * 
+     * The output is not flushed or closed by this method.
+     * 
+     * @param in  The input, one sequence per line.
+     * @param out The output, one result per line.
+     * @return    The amount of lines processed.
+     * @throws IOException          - If reading or writing fails.
+     * @throws InterruptedException - If the calling thread is interrupted.
+     */
+    public long run(BufferedReader in, Writer out) 
+            throws IOException, InterruptedException {
+        return run(in::readLine, out, null);
+    }
+    
+    /**
+     * Predicts all sequences in the input file that are not completed in the 
+     * given journal, and writes the results to the output.
+     * 
+     * The results of the completed lines are first replayed from the journal, 
+     * and the input is read from the offset after the last completed line. 
+     * Every result written is appended to the journal, so that the output 
+     * equals that of an uninterrupted run, however often the run is resumed.
+     * The output should therefore be empty when this method is called. It is 
+     * not flushed or closed by this method, and neither is the journal.
+     * 
+     * @param input   The input file, one sequence per line.
+     * @param out     The output, one result per line.
+     * @param journal The journal of completed lines.
+     * @return        The amount of lines processed, excluding replayed lines.
+     * @throws IOException          - If reading or writing fails.
+     * @throws InterruptedException - If the calling thread is interrupted.
+     */
+    public long run(Path input, Writer out, CheckpointJournal journal) 
+            throws IOException, InterruptedException {
+        journal.replay(out);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+                OffsetLineReader in = new OffsetLineReader(
+                        Channels.newInputStream(channel.position(journal.getInputOffset())),
+                        journal.getInputOffset())) {
+            return run(in, out, (result) -> journal.append(in.nextOffset(), result));
+        }
+    }
+    
+    /**
+     * Runs the pipeline.
+     * @param in       The input.
+     * @param out      The output.
+     * @param complete Called with every result after it is written, or null.
+     * @return         The amount of lines processed.
+     * @throws IOException          - If reading or writing fails.
+     * @throws InterruptedException - If the calling thread is interrupted.
+     */
+    private long run(LineSource in, Writer out, ResultHandler complete) 
+            throws IOException, InterruptedException {
+        BlockingQueue<Future<String>> pending = 
+                new ArrayBlockingQueue<>(workers * QUEUE_FACTOR);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "predictor-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread parser = new Thread(() -> parse(in, pending, pool), "predictor-parser");
+        parser.setDaemon(true);
+        parser.start();
+        
+        long lines = 0;
+        try {
+            Future<String> result;
+            while ((result = pending.take()) != END) {
+                String line = result.get();
+                out.write(line);
+                out.write(System.lineSeparator());
+                if (complete != null) {
+                    complete.handle(line);
+                }
+                lines++;
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IllegalStateException("Prediction failed", cause);
+        } finally {
+            parser.interrupt();
+            pool.shutdownNow();
+        }
+        return lines;
+    }
+    
+    /**
+     * Handles a result after it is written.
+     */
+    private interface ResultHandler {
+        void handle(String result) throws IOException;
+    }
+    
+    /**
+     * Reads and parses all lines, submitting them to the worker pool.
+     * 
+     * This method runs on the parser thread. Reading failures are passed on
+     * to the writer as a failed result.
+     * 
+     * @param in      The input.
+     * @param pending The queue of pending results, in input order.
+     * @param pool    The worker pool.
+     */
+    private void parse(LineSource in, BlockingQueue<Future<String>> pending, 
+            ExecutorService pool) {
+        try {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    pending.put(submit(line, pool));
+                }
+            } catch (IOException ex) {
+                CompletableFuture<String> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new UncheckedIOException(ex));
+                pending.put(failed);
+            }
+            pending.put(END);
+        } catch (InterruptedException ex) {
+            // The writer stopped, so nobody is waiting for the results.
+        }
+    }
+    
+    /**
+     * Parses a single line and submits it for prediction.
+     * @param line The line.
+     * @param pool The worker pool.
+     * @return     The pending result.
+     */
+    private Future<String> submit(String line, ExecutorService pool) {
+        double[] values;
+        try {
+            values = new InputParser(line).parse()
+                    .mapToDouble(Double::doubleValue)
+                    .toArray();
+        } catch (InvalidTokenException ex) {
+            return CompletableFuture.completedFuture(ERROR + '\t' + ex.getMessage());
+        }
+        return pool.submit(() -> predict(values, predictions, timeout));
+    }
+    
+    /**
+     * Detects the pattern in the given values with the default timeout and 
+     * formats the result line.
+     * @param values      The input values.
+     * @param predictions The amount of predictions.
+     * @return            The result line, without line separator.
+     */
+    public static String predict(double[] values, int predictions) {
+        return predict(values, predictions, DEFAULT_TIMEOUT);
+    }
+    
+    /**
+     * Detects the pattern in the given values and formats the result line.
+     * 
+     * When the pattern is not found in time, the result is an error line, 
+     * as when the values have no pattern.
+     * 
+     * @param values      The input values.
+     * @param predictions The amount of predictions.
+     * @param timeout     The maximum time of the detection, in milliseconds.
+     * @return            The result line, without line separator.
+     */
+    public static String predict(double[] values, int predictions, long timeout) {
+        try {
+            Predictor predictor = new Predictor(values).init(timeout, TimeUnit.MILLISECONDS);
+            StringBuilder b = new StringBuilder(OK).append('\t');
+            predictor.getPattern(b).append('\t');
+            for (int i = 0; i < predictions; i++) {
+                if (i > 0) {
+                    b.append(", ");
+                }
+                b.append(predictor.getNext());
+            }
+            return b.toString();
+        } catch (NoPatternFoundException ex) {
+            // Includes the SearchTimeoutException of a search out of time.
+            return ERROR + '\t' + ex.getMessage();
+        }
+    }
+}
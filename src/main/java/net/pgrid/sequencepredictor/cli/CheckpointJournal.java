@@ -0,0 +1,284 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the completed lines of a batch run.
+ *
+ * Every record holds the index of a completed input line, the byte offset in
+ * the input directly after that line, and its result line, protected by a
+ * checksum:
+ * {@code <index> <offset> <crc32> <tab> <result>}. Records are buffered and
+ * written to disk with an fsync once every {@code syncInterval} records, and
+ * when the journal is closed. A crash therefore loses at most the last
+ * {@code syncInterval} records, which are predicted again on resume.
+ *
+ * When opened, the journal reads the existing records up to the first record
+ * that is incomplete or corrupt, and truncates the file after the last valid
+ * record. {@code getCompleted()} and {@code getInputOffset()} then tell where
+ * to resume the input, and {@code replay(Writer)} writes the results of the
+ * completed lines again.
+ *
+ * The time spent on appending and syncing is measured, see
+ * {@code getOverheadNanos()}.
+ *
+ * @author Patrick Kramer
+ */
+public class CheckpointJournal implements Closeable {
+
+    /**
+     * The default amount of records per fsync.
+     */
+    public static final int DEFAULT_SYNC_INTERVAL = 1024;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int syncInterval;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private long completed = 0;
+    private long inputOffset = 0;
+    private int unsynced = 0;
+    private long syncs = 0;
+    private long overhead = 0;
+
+    /**
+     * Opens a journal, creating it if it does not exist.
+     * @param path         The path of the journal file.
+     * @param syncInterval The amount of records per fsync, at least 1.
+     * @throws IOException - If the journal cannot be read or opened.
+     * @throws IllegalArgumentException - If the sync interval is less than 1.
+     */
+    public CheckpointJournal(Path path, int syncInterval) throws IOException {
+        if (syncInterval < 1) {
+            throw new IllegalArgumentException("Sync interval less than 1");
+        }
+        this.path = path;
+        this.syncInterval = syncInterval;
+        long valid = 0;
+        if (Files.exists(path)) {
+            valid = recover();
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        channel.truncate(valid);
+        channel.position(valid);
+    }
+
+    /**
+     * Returns the amount of input lines completed in earlier runs and
+     * appended since.
+     * @return The amount of lines.
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the byte offset in the input directly after the last completed
+     * line.
+     * @return The offset.
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * Returns the amount of fsyncs performed since the journal was opened.
+     * @return The amount of fsyncs.
+     */
+    public long getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * Returns the time spent appending records and syncing since the journal
+     * was opened.
+     * @return The time, in nanoseconds.
+     */
+    public long getOverheadNanos() {
+        return overhead;
+    }
+
+    /**
+     * Writes the results of all completed lines in the journal to the output.
+     * @param out The output.
+     * @return    The amount of results written.
+     * @throws IOException - If reading the journal or writing fails.
+     */
+    public long replay(Writer out) throws IOException {
+        flush();
+        long lines = 0;
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while (lines < completed && (line = in.readLine()) != null) {
+                out.write(line, line.indexOf('\t') + 1, line.length() - line.indexOf('\t') - 1);
+                out.write(System.lineSeparator());
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Appends the record of the next completed line.
+     * @param offset The byte offset in the input directly after the line.
+     * @param result The result line, without line separator.
+     * @throws IOException - If writing the journal fails.
+     */
+    public void append(long offset, String result) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = result.getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        byte[] header = (completed + " " + offset + " "
+                + Long.toHexString(crc.getValue()) + "\t").getBytes(StandardCharsets.US_ASCII);
+        int size = header.length + bytes.length + 1;
+        if (buffer.remaining() < size) {
+            flush();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(size);
+            }
+        }
+        buffer.put(header).put(bytes).put((byte) '\n');
+        completed++;
+        inputOffset = offset;
+        overhead += System.nanoTime() - start;
+        if (++unsynced >= syncInterval) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes all buffered records and forces them to disk.
+     * @throws IOException - If writing the journal fails.
+     */
+    public void sync() throws IOException {
+        long start = System.nanoTime();
+        flush();
+        channel.force(false);
+        syncs++;
+        unsynced = 0;
+        overhead += System.nanoTime() - start;
+    }
+
+    /**
+     * Syncs and closes the journal.
+     * @throws IOException - If writing the journal fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (unsynced > 0) {
+                sync();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     * @throws IOException - If writing fails.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads the valid records of an existing journal.
+     * @return The length of the valid part of the file, in bytes.
+     * @throws IOException - If reading fails.
+     */
+    private long recover() throws IOException {
+        long valid = 0;
+        byte[] record = new byte[256];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+            while (true) {
+                int length = 0;
+                int b;
+                while ((b = in.read()) != -1 && b != '\n') {
+                    if (length == record.length) {
+                        record = Arrays.copyOf(record, 2 * length);
+                    }
+                    record[length++] = (byte) b;
+                }
+                if (b == -1 || !parse(record, 0, length)) {
+                    return valid;
+                }
+                valid += length + 1;
+            }
+        }
+    }
+
+    /**
+     * Parses and validates a single record.
+     * @param data  The contents of the journal.
+     * @param start The index of the first byte of the record.
+     * @param end   The index of its line terminator.
+     * @return      True if the record is valid and the next in order.
+     */
+    private boolean parse(byte[] data, int start, int end) {
+        int tab = start;
+        while (tab < end && data[tab] != '\t') {
+            tab++;
+        }
+        if (tab == end) {
+            return false;
+        }
+        String[] header = new String(data, start, tab - start,
+                StandardCharsets.US_ASCII).split(" ");
+        try {
+            if (header.length != 3 || Long.parseLong(header[0]) != completed) {
+                return false;
+            }
+            long offset = Long.parseLong(header[1]);
+            crc.reset();
+            crc.update(data, tab + 1, end - tab - 1);
+            if (crc.getValue() != Long.parseLong(header[2], 16) || offset < inputOffset) {
+                return false;
+            }
+            completed++;
+            inputOffset = offset;
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless command-line mode of the Sequence Predictor application.
+ * 
+ * Reads sequences (one per line, in the syntax accepted by 
+ * {@code InputParser}) from the given files or standard input, and writes the 
+ * detected patterns and predictions using a {@code BatchPredictor}.
+ * 
+ * @author Patrick Kramer
+ */
+public class CommandLine {
+    
+    /**
+     * The default amount of predictions per sequence.
+     */
+    public static final int DEFAULT_PREDICTIONS = 5;
+    
+    /**
+     * Exit code indicating invalid command-line arguments.
+     */
+    public static final int EXIT_USAGE = 2;
+    
+    /**
+     * Exit code indicating an I/O failure.
+     */
+    public static final int EXIT_IO = 1;
+    
+    private static final String USAGE = 
+            "Usage: SequencePredictor [options] [file...]\n"
+          + "Predicts the sequences in the given files (or standard input when no\n"
+          + "file or '-' is given), one comma-separated sequence per line.\n"
+          + "\n"
+          + "Options:\n"
+          + "  -n, --predictions <n>  Amount of predictions per sequence (default " 
+                    + DEFAULT_PREDICTIONS + ")\n"
+          + "  -w, --workers <n>      Amount of worker threads (default: amount of cores)\n"
+          + "  -t, --timeout <ms>     Maximum time to detect the pattern of one sequence,\n"
+          + "                         in milliseconds (default " 
+                    + BatchPredictor.DEFAULT_TIMEOUT + ")\n"
+          + "  -p, --processes <n>    Amount of worker processes, each with the given amount\n"
+          + "                         of worker threads (default 0: predict in this process)\n"
+          + "  -o, --output <file>    Write the results to a file instead of standard output\n"
+          + "  -c, --checkpoint <file>\n"
+          + "                         Journal completed lines to a file, and resume from it\n"
+          + "                         when it exists (requires a single input file)\n"
+          + "  --sync-interval <n>    Amount of journal records per fsync (default "
+                    + CheckpointJournal.DEFAULT_SYNC_INTERVAL + ")\n"
+          + "  -h, --help             Show this message\n";
+    
+    private int predictions = DEFAULT_PREDICTIONS;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private long timeout = BatchPredictor.DEFAULT_TIMEOUT;
+    private int processes = 0;
+    private String output = null;
+    private String checkpoint = null;
+    private int syncInterval = CheckpointJournal.DEFAULT_SYNC_INTERVAL;
+    private final List<String> inputs = new ArrayList<>();
+    
+    /**
+     * Entry point of the command-line mode.
+     * @param args The command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+    
+    /**
+     * Runs the command-line mode.
+     * @param args The command-line arguments.
+     * @return     The exit code.
+     */
+    public static int run(String[] args) {
+        CommandLine cli = new CommandLine();
+        try {
+            if (!cli.parseArguments(args)) {
+                System.out.print(USAGE);
+                return 0;
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        }
+        
+        try {
+            cli.execute();
+            return 0;
+        } catch (IOException ex) {
+            System.err.println("I/O error: " + ex.getMessage());
+            return EXIT_IO;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return EXIT_IO;
+        }
+    }
+    
+    /**
+     * Parses the command-line arguments into the fields of this instance.
+     * @param args The command-line arguments.
+     * @return     False if only the usage should be shown, true otherwise.
+     * @throws IllegalArgumentException - If the arguments are invalid.
+     */
+    boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-n":
+                case "--predictions":
+                    predictions = parseCount(args, ++i, 0);
+                    break;
+                case "-w":
+                case "--workers":
+                    workers = parseCount(args, ++i, 1);
+                    break;
+                case "-t":
+                case "--timeout":
+                    timeout = parseCount(args, ++i, 1);
+                    break;
+                case "-p":
+                case "--processes":
+                    processes = parseCount(args, ++i, 0);
+                    break;
+                case "-o":
+                case "--output":
+                    output = value(args, i++);
+                    break;
+                case "-c":
+                case "--checkpoint":
+                    checkpoint = value(args, i++);
+                    break;
+                case "--sync-interval":
+                    syncInterval = parseCount(args, ++i, 1);
+                    break;
+                default:
+                    if (args[i].startsWith("-") && !args[i].equals("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    }
+                    inputs.add(args[i]);
+            }
+        }
+        if (checkpoint != null && (inputs.size() != 1 || inputs.get(0).equals("-"))) {
+            throw new IllegalArgumentException("A checkpoint requires a single input file");
+        }
+        if (checkpoint != null && processes > 0) {
+            throw new IllegalArgumentException("A checkpoint cannot be used with processes");
+        }
+        return true;
+    }
+    
+    /**
+     * Runs the batch prediction over all inputs, in this process or in local
+     * worker processes.
+     * @throws IOException          - If reading or writing fails.
+     * @throws InterruptedException - If the thread is interrupted.
+     */
+    void execute() throws IOException, InterruptedException {
+        BatchPredictor batch = new BatchPredictor(workers, predictions, timeout);
+        if (checkpoint != null) {
+            resume(batch);
+            return;
+        }
+        ShardCoordinator coordinator = processes == 0 ? null 
+                : new ShardCoordinator(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 
+                        ShardCoordinator.DEFAULT_SHARD_SIZE, processes, workers, predictions,
+                        timeout, ShardCoordinator.DEFAULT_RESULT_TIMEOUT);
+        try (Writer out = openOutput()) {
+            if (inputs.isEmpty()) {
+                inputs.add("-");
+            }
+            for (String input : inputs) {
+                try (BufferedReader in = openInput(input)) {
+                    if (coordinator == null) {
+                        batch.run(in, out);
+                    } else {
+                        coordinator.run(in, out);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Runs the batch prediction over the single input, resuming from the
+     * checkpoint journal, and reports the journal overhead.
+     * @param batch The BatchPredictor.
+     * @throws IOException          - If reading or writing fails.
+     * @throws InterruptedException - If the thread is interrupted.
+     */
+    private void resume(BatchPredictor batch) throws IOException, InterruptedException {
+        try (CheckpointJournal journal = new CheckpointJournal(Paths.get(checkpoint), syncInterval);
+                Writer out = openOutput()) {
+            long resumed = journal.getCompleted();
+            batch.run(Paths.get(inputs.get(0)), out, journal);
+            journal.sync();
+            System.err.printf("Checkpoint: %d lines resumed, %d lines journaled, "
+                    + "%d syncs, %.1f ms overhead%n", resumed, journal.getCompleted() - resumed,
+                    journal.getSyncs(), journal.getOverheadNanos() / 1e6);
+        }
+    }
+    
+    private BufferedReader openInput(String input) throws IOException {
+        if (input.equals("-")) {
+            return new BufferedReader(
+                    new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+    }
+    
+    private Writer openOutput() throws IOException {
+        if (output == null) {
+            // Do not close System.out when the Writer is closed.
+            return new BufferedWriter(new OutputStreamWriter(System.out, 
+                    StandardCharsets.UTF_8)) {
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+        return Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Returns the value of the option at the given index.
+     * @param args  The command-line arguments.
+     * @param index The index of the option.
+     * @return      The value following the option.
+     * @throws IllegalArgumentException - If the option has no value.
+     */
+    private static String value(String[] args, int index) {
+        if (index + 1 >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index]);
+        }
+        return args[index + 1];
+    }
+    
+    /**
+     * Parses the value of the option preceding the given index as a count.
+     * @param args  The command-line arguments.
+     * @param index The index of the value.
+     * @param min   The minimum allowed value.
+     * @return      The count.
+     * @throws IllegalArgumentException - If the value is missing or invalid.
+     */
+    private static int parseCount(String[] args, int index, int min) {
+        String value = value(args, index - 1);
+        try {
+            int count = Integer.parseInt(value);
+            if (count >= min) {
+                return count;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value for " + args[index - 1] 
+                + ": " + value + " (expected an integer >= " + min + ")");
+    }
+}
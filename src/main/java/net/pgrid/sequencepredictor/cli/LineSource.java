@@ -0,0 +1,35 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.IOException;
+
+/**
+ * A source of input lines for {@code BatchPredictor}, such as
+ * {@code BufferedReader::readLine}.
+ *
+ * @author Patrick Kramer
+ */
+interface LineSource {
+
+    /**
+     * Reads the next line, without its line terminator.
+     * @return The line, or null at the end of the input.
+     * @throws IOException - If reading fails.
+     */
+    String readLine() throws IOException;
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reads UTF-8 lines from a stream, and records the byte offset after every
+ * line.
+ *
+ * Lines end at {@code \n}, {@code \r} or {@code \r\n}, as in
+ * {@code BufferedReader}. The offsets
+ * are queued in the order the lines are read, and may be taken by another
+ * thread with {@code nextOffset()}.
+ *
+ * @author Patrick Kramer
+ */
+class OffsetLineReader implements LineSource, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private byte[] line = new byte[256];
+    private long offset;
+    private final Queue<Long> offsets = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Initializes a new OffsetLineReader.
+     * @param in     The input, positioned at the given offset.
+     * @param offset The offset of the input.
+     */
+    OffsetLineReader(InputStream in, long offset) {
+        this.in = in;
+        this.offset = offset;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (!fill()) {
+                if (length == 0) {
+                    return null;
+                }
+                break;
+            }
+            byte b = buffer[position++];
+            offset++;
+            if (b == '\n') {
+                break;
+            }
+            if (b == '\r') {
+                // Reads ahead, so that the offset is after a complete "\r\n".
+                if (fill() && buffer[position] == '\n') {
+                    position++;
+                    offset++;
+                }
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, 2 * length);
+            }
+            line[length++] = b;
+        }
+        offsets.add(offset);
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes sure the buffer holds at least one byte, if the input has any
+     * left.
+     * @return True if the buffer holds a byte, false at the end of the input.
+     * @throws IOException - If reading fails.
+     */
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            int read = in.read(buffer);
+            if (read < 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the byte offset after the oldest line whose offset has not been
+     * taken yet.
+     * @return The offset, or -1 if no line is left.
+     */
+    long nextOffset() {
+        Long next = offsets.poll();
+        return next == null ? -1 : next;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
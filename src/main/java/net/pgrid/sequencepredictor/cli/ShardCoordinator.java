@@ -0,0 +1,533 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Predicts many sequences, one per line, in several worker processes.
+ *
+ * The coordinator splits the input into shards of {@code shardSize} lines
+ * and serves them over a socket to worker processes running
+ * {@code ShardWorker}. Workers pull the next shard as soon as they have
+ * returned the previous one, so faster workers process more shards. The
+ * results are written in input order, exactly as a {@code BatchPredictor}
+ * would write them. When a worker disconnects before returning its shard,
+ * the shard is handed to the next worker that asks for one. The same happens
+ * when a worker sends nothing for {@code resultTimeout} milliseconds, after
+ * which its connection is closed.
+ *
+ * The coordinator starts {@code processes} local worker JVMs itself, and
+ * restarts them when they exit early. Local workers connect to the address
+ * the coordinator listens on, or to the loopback address if it listens on
+ * all addresses. Workers on other machines can connect as well when the 
+ * coordinator listens on a public address:
+ *
+ * <pre>
+ * java -cp SequencePredictor.jar net.pgrid.sequencepredictor.cli.ShardWorker host port
+ * </pre>
+ *
+ * At most {@code QUEUE_FACTOR} shards per local process (and at least
+ * {@code QUEUE_FACTOR} shards) are read ahead of the output, so memory use
+ * does not depend on the input size.
+ *
+ * The protocol consists of UTF-8 lines. The worker sends {@code NEXT}, and
+ * the coordinator answers {@code SHARD <id> <count>} followed by the lines
+ * of the shard, or {@code DONE} when the input is exhausted. The worker
+ * answers a shard with {@code RESULT <id> <count>} followed by the result
+ * lines, and then sends {@code NEXT} again.
+ *
+ * @author Patrick Kramer
+ */
+public class ShardCoordinator {
+
+    /**
+     * The default amount of lines per shard.
+     */
+    public static final int DEFAULT_SHARD_SIZE = 256;
+
+    /**
+     * The maximum amount of shards read ahead of the output per process.
+     */
+    public static final int QUEUE_FACTOR = 4;
+
+    /**
+     * The maximum amount of times local workers are restarted in total.
+     */
+    public static final int MAX_RESTARTS = 8;
+
+    /**
+     * The default time a worker may send nothing while it holds a shard, in
+     * milliseconds.
+     */
+    public static final int DEFAULT_RESULT_TIMEOUT = 5 * 60 * 1000;
+
+    /**
+     * Request of a worker for the next shard.
+     */
+    static final String NEXT = "NEXT";
+
+    /**
+     * Header of a shard sent to a worker.
+     */
+    static final String SHARD = "SHARD";
+
+    /**
+     * Header of the results of a shard sent by a worker.
+     */
+    static final String RESULT = "RESULT";
+
+    /**
+     * Answer to a worker when all shards are done.
+     */
+    static final String DONE = "DONE";
+
+    private final InetSocketAddress address;
+    private final int shardSize;
+    private final int processes;
+    private final int threads;
+    private final int predictions;
+    private final long timeout;
+    private final int resultTimeout;
+
+    // The state of a run, guarded by this.
+    private final Deque<Shard> queue = new ArrayDeque<>();
+    private final Map<Long, String[]> results = new HashMap<>();
+    private long nextId;
+    private long written;
+    private boolean inputDone;
+    private boolean finished;
+    private IOException failure;
+    private int restarts;
+
+    /**
+     * Initializes a new ShardCoordinator with the default timeouts.
+     * @param address     The address to listen on for workers. Port 0 picks a
+     *                    free port.
+     * @param shardSize   The amount of lines per shard, at least 1.
+     * @param processes   The amount of local worker processes to start, at
+     *                    least 0.
+     * @param threads     The amount of worker threads per local process, at
+     *                    least 1.
+     * @param predictions The amount of predictions per sequence, at least 0.
+     * @throws IllegalArgumentException - If an argument is out of range.
+     */
+    public ShardCoordinator(InetSocketAddress address, int shardSize,
+            int processes, int threads, int predictions) {
+        this(address, shardSize, processes, threads, predictions, 
+                BatchPredictor.DEFAULT_TIMEOUT, DEFAULT_RESULT_TIMEOUT);
+    }
+
+    /**
+     * Initializes a new ShardCoordinator.
+     * @param address       The address to listen on for workers. Port 0 picks
+     *                      a free port.
+     * @param shardSize     The amount of lines per shard, at least 1.
+     * @param processes     The amount of local worker processes to start, at
+     *                      least 0.
+     * @param threads       The amount of worker threads per local process, at
+     *                      least 1.
+     * @param predictions   The amount of predictions per sequence, at least 0.
+     * @param timeout       The maximum time the detection of a single line 
+     *                      may take in local processes, in milliseconds, at
+     *                      least 1.
+     * @param resultTimeout The time a worker may send nothing before its 
+     *                      shard is handed to another worker, in milliseconds,
+     *                      at least 1.
+     * @throws IllegalArgumentException - If an argument is out of range.
+     */
+    public ShardCoordinator(InetSocketAddress address, int shardSize,
+            int processes, int threads, int predictions, long timeout,
+            int resultTimeout) {
+        if (shardSize < 1 || processes < 0 || threads < 1 || predictions < 0
+                || timeout < 1 || resultTimeout < 1) {
+            throw new IllegalArgumentException("Invalid coordinator settings");
+        }
+        this.address = address;
+        this.shardSize = shardSize;
+        this.processes = processes;
+        this.threads = threads;
+        this.predictions = predictions;
+        this.timeout = timeout;
+        this.resultTimeout = resultTimeout;
+    }
+
+    /**
+     * Predicts all sequences in the input and writes the results to the output.
+     *
+     * The output is not flushed or closed by this method.
+     *
+     * @param in  The input, one sequence per line.
+     * @param out The output, one result per line.
+     * @return    The amount of lines processed.
+     * @throws IOException          - If reading or writing fails, or the
+     *                                local workers keep failing.
+     * @throws InterruptedException - If the calling thread is interrupted.
+     */
+    public long run(BufferedReader in, Writer out)
+            throws IOException, InterruptedException {
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(address);
+            List<Process> workers = new ArrayList<>();
+            try {
+                for (int i = 0; i < processes; i++) {
+                    workers.add(start(host(server), server.getLocalPort()));
+                }
+                return run(server, in, out, workers);
+            } finally {
+                for (Process worker : workers) {
+                    worker.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Serves the shards of the input to the workers connecting to the given
+     * server socket, and writes the results.
+     * @param server  The bound server socket, closed by the caller.
+     * @param in      The input.
+     * @param out     The output.
+     * @param workers The local worker processes, restarted when they exit.
+     * @return        The amount of lines processed.
+     * @throws IOException          - If reading or writing fails.
+     * @throws InterruptedException - If the calling thread is interrupted.
+     */
+    long run(ServerSocket server, BufferedReader in, Writer out,
+            List<Process> workers) throws IOException, InterruptedException {
+        synchronized (this) {
+            queue.clear();
+            results.clear();
+            nextId = written = 0;
+            inputDone = false;
+            finished = false;
+            failure = null;
+            restarts = 0;
+        }
+        Thread acceptor = new Thread(() -> accept(server), "shard-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Thread monitor = new Thread(() -> monitor(server, workers), "shard-monitor");
+        monitor.setDaemon(true);
+        monitor.start();
+
+        long lines = 0;
+        try {
+            String[] result;
+            while ((result = nextResult(in)) != null) {
+                for (String line : result) {
+                    out.write(line);
+                    out.write(System.lineSeparator());
+                }
+                lines += result.length;
+            }
+        } finally {
+            acceptor.interrupt();
+            monitor.interrupt();
+            synchronized (this) {
+                inputDone = true;
+                finished = true;
+                notifyAll();
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Waits for the results of the next shard in input order, reading shards
+     * ahead of the output while waiting.
+     *
+     * The input is read without holding the lock, so a slow input does not
+     * keep workers from taking and completing shards.
+     * @param in The input, only read by the calling thread.
+     * @return   The result lines, or null if all shards are written.
+     * @throws IOException          - If reading the input failed, or the
+     *                                local workers keep failing.
+     * @throws InterruptedException - If the thread is interrupted.
+     */
+    private String[] nextResult(BufferedReader in)
+            throws IOException, InterruptedException {
+        int readAhead = QUEUE_FACTOR * Math.max(1, processes);
+        while (true) {
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                String[] result = results.remove(written);
+                if (result != null) {
+                    written++;
+                    return result;
+                }
+                if (inputDone && written == nextId) {
+                    notifyAll();
+                    return null;
+                }
+                if (inputDone || nextId - written >= readAhead) {
+                    wait();
+                    continue;
+                }
+            }
+            read(in);
+        }
+    }
+
+    /**
+     * Returns the next shard for a worker, waiting until one is available.
+     * @return The shard, or null if all shards are done.
+     * @throws InterruptedException - If the thread is interrupted.
+     */
+    private synchronized Shard take() throws InterruptedException {
+        while (true) {
+            if (!queue.isEmpty()) {
+                return queue.removeFirst();
+            }
+            if (finished || failure != null || (inputDone && written == nextId)) {
+                return null;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Reads the next shard from the input and queues it for the workers.
+     * @param in The input.
+     */
+    private void read(BufferedReader in) {
+        List<String> lines = new ArrayList<>(shardSize);
+        IOException error = null;
+        try {
+            String line;
+            while (lines.size() < shardSize && (line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException ex) {
+            error = ex;
+        }
+        synchronized (this) {
+            if (error != null) {
+                failure = error;
+                inputDone = true;
+            } else {
+                if (lines.size() < shardSize) {
+                    inputDone = true;
+                }
+                if (!lines.isEmpty()) {
+                    queue.addLast(new Shard(nextId++,
+                            lines.toArray(new String[lines.size()])));
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Records the results of a shard.
+     * @param shard  The shard.
+     * @param result The result lines.
+     */
+    private synchronized void complete(Shard shard, String[] result) {
+        if (shard.id >= written) {
+            results.put(shard.id, result);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Hands a shard to the next worker that asks for one.
+     * @param shard The shard.
+     */
+    private synchronized void requeue(Shard shard) {
+        queue.addFirst(shard);
+        notifyAll();
+    }
+
+    /**
+     * Accepts worker connections until the server socket is closed or the
+     * thread is interrupted.
+     * @param server The server socket.
+     */
+    private void accept(ServerSocket server) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException ex) {
+                return;
+            }
+            Thread handler = new Thread(() -> serve(socket), "shard-connection");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    /**
+     * Serves shards to a single worker until all shards are done or the
+     * worker disconnects.
+     * @param socket The connection to the worker.
+     */
+    private void serve(Socket socket) {
+        Shard shard = null;
+        try (Socket s = socket;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        s.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        s.getOutputStream(), StandardCharsets.UTF_8))) {
+            // A worker that stops answering throws SocketTimeoutException.
+            s.setSoTimeout(resultTimeout);
+            while (NEXT.equals(reader.readLine())) {
+                shard = take();
+                if (shard == null) {
+                    writer.write(DONE + '\n');
+                    writer.flush();
+                    return;
+                }
+                writer.write(SHARD + ' ' + shard.id + ' ' + shard.lines.length + '\n');
+                for (String line : shard.lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                writer.flush();
+
+                String[] header = String.valueOf(reader.readLine()).split(" ");
+                if (header.length != 3 || !header[0].equals(RESULT)
+                        || Long.parseLong(header[1]) != shard.id
+                        || Integer.parseInt(header[2]) != shard.lines.length) {
+                    throw new IOException("Invalid result header: " + Arrays.toString(header));
+                }
+                String[] result = new String[shard.lines.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = reader.readLine();
+                    if (result[i] == null) {
+                        throw new IOException("Worker disconnected");
+                    }
+                }
+                complete(shard, result);
+                shard = null;
+            }
+        } catch (IOException | NumberFormatException ex) {
+            // The worker died, misbehaved or timed out, its shard is requeued
+            // below.
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (shard != null) {
+                requeue(shard);
+            }
+        }
+    }
+
+    /**
+     * Restarts local workers that exit while shards are left.
+     * @param server  The server socket.
+     * @param workers The local worker processes.
+     */
+    private void monitor(ServerSocket server, List<Process> workers) {
+        try {
+            while (!workers.isEmpty()) {
+                Thread.sleep(100);
+                for (int i = 0; i < workers.size(); i++) {
+                    if (workers.get(i).isAlive()) {
+                        continue;
+                    }
+                    synchronized (this) {
+                        if (inputDone && (written == nextId || failure != null)) {
+                            return;
+                        }
+                        if (++restarts > MAX_RESTARTS) {
+                            failure = new IOException("Worker processes keep failing");
+                            notifyAll();
+                            return;
+                        }
+                    }
+                    workers.set(i, start(host(server), server.getLocalPort()));
+                }
+            }
+        } catch (IOException ex) {
+            synchronized (this) {
+                failure = ex;
+                notifyAll();
+            }
+        } catch (InterruptedException ex) {
+            // The run is finished.
+        }
+    }
+
+    /**
+     * Returns the address local workers connect to for the given server
+     * socket.
+     * @param server The bound server socket.
+     * @return       The address the socket is bound to, or the loopback 
+     *               address if it is bound to all addresses.
+     */
+    static InetAddress host(ServerSocket server) {
+        InetAddress host = server.getInetAddress();
+        return host.isAnyLocalAddress() ? InetAddress.getLoopbackAddress() : host;
+    }
+
+    /**
+     * Starts a local worker JVM with the class path of this JVM.
+     * @param host The address of the coordinator.
+     * @param port The port of the coordinator.
+     * @return     The process.
+     * @throws IOException - If the process cannot be started.
+     */
+    Process start(InetAddress host, int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                ShardWorker.class.getName(),
+                host.getHostAddress(), String.valueOf(port),
+                String.valueOf(threads), String.valueOf(predictions),
+                String.valueOf(timeout));
+        // Workers only write diagnostics, to standard error.
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    /**
+     * A range of consecutive input lines.
+     */
+    private static final class Shard {
+        private final long id;
+        private final String[] lines;
+
+        Shard(long id, String[] lines) {
+            this.id = id;
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worker process of a {@code ShardCoordinator}.
+ *
+ * Connects to the coordinator, and predicts the shards it receives with a
+ * {@code BatchPredictor} until the coordinator has no shards left.
+ *
+ * @author Patrick Kramer
+ */
+public class ShardWorker {
+
+    /**
+     * Exit code indicating a lost connection to the coordinator.
+     */
+    public static final int EXIT_IO = 1;
+
+    private static final String USAGE =
+            "Usage: ShardWorker <host> <port> [threads] [predictions] [timeout]";
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private ShardWorker() {
+    }
+
+    /**
+     * Entry point of a worker process.
+     * @param args The host and port of the coordinator, and optionally the
+     *             amount of worker threads (default 1) and predictions per
+     *             sequence (default {@code CommandLine.DEFAULT_PREDICTIONS})
+     *             and detection timeout per sequence in milliseconds 
+     *             (default {@code BatchPredictor.DEFAULT_TIMEOUT}).
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 5) {
+            System.err.println(USAGE);
+            System.exit(CommandLine.EXIT_USAGE);
+        }
+        try {
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+            int predictions = args.length > 3
+                    ? Integer.parseInt(args[3]) : CommandLine.DEFAULT_PREDICTIONS;
+            long timeout = args.length > 4
+                    ? Long.parseLong(args[4]) : BatchPredictor.DEFAULT_TIMEOUT;
+            BatchPredictor batch = new BatchPredictor(threads, predictions, timeout);
+            try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+                run(socket, batch);
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(CommandLine.EXIT_USAGE);
+        } catch (IOException ex) {
+            System.err.println("I/O error: " + ex.getMessage());
+            System.exit(EXIT_IO);
+        } catch (InterruptedException ex) {
+            System.exit(EXIT_IO);
+        }
+    }
+
+    /**
+     * Predicts shards received over the given connection until the
+     * coordinator has no shards left.
+     * @param socket The connection to the coordinator, not closed.
+     * @param batch  The BatchPredictor that predicts the shards.
+     * @return       The amount of shards predicted.
+     * @throws IOException          - If the connection fails.
+     * @throws InterruptedException - If the thread is interrupted.
+     */
+    public static long run(Socket socket, BatchPredictor batch)
+            throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                socket.getOutputStream(), StandardCharsets.UTF_8));
+        long shards = 0;
+        while (true) {
+            writer.write(ShardCoordinator.NEXT + '\n');
+            writer.flush();
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Coordinator disconnected");
+            }
+            if (header.equals(ShardCoordinator.DONE)) {
+                return shards;
+            }
+            String[] fields = header.split(" ");
+            if (fields.length != 3 || !fields[0].equals(ShardCoordinator.SHARD)) {
+                throw new IOException("Invalid shard header: " + header);
+            }
+            int count = Integer.parseInt(fields[2]);
+            StringBuilder input = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                String line = reader.readLine();
+                if (line == null) {
+                    throw new IOException("Coordinator disconnected");
+                }
+                input.append(line).append('\n');
+            }
+
+            StringWriter output = new StringWriter();
+            batch.run(new BufferedReader(new StringReader(input.toString())), output);
+            writer.write(ShardCoordinator.RESULT + ' ' + fields[1] + ' ' + count + '\n');
+            try (BufferedReader result = new BufferedReader(
+                    new StringReader(output.toString()))) {
+                String line;
+                while ((line = result.readLine()) != null) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+            shards++;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.io;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation-free formatter for doubles.
+ * 
+ * Produces the shortest decimal that rounds to the same double (so that 
+ * {@code Double.parseDouble} returns the original value), choosing the one 
+ * closest to the exact value when there are several. The layout follows
+ * {@code Double.toString}: plain notation for magnitudes in [10^-3, 10^7) and
+ * computerized scientific notation otherwise, e.g. {@code 1.5E-7}.
+ * 
+ * The digits are computed with the Schubfach algorithm by Raffaello Giulietti,
+ * which only needs a few 64-bit multiplications per value.
+ * 
+ * Instances are not thread-safe, as they use an internal scratch buffer.
+ * 
+ * @author Patrick Kramer
+ */
+public class DoubleFormatter {
+    
+    /**
+     * The maximum amount of characters written for a single double.
+     */
+    public static final int MAX_LENGTH = 24;
+    
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long C_TINY = 3;
+    private static final long T_MASK = (1L << (P - 1)) - 1;
+    private static final long MASK_63 = (1L << 63) - 1;
+    
+    // Powers of ten g = floor(10^-k 2^-r) + 1 with 2^125 <= g < 2^126, split 
+    // into two 63-bit halves.
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long[] G = createTable();
+    
+    private final byte[] digits = new byte[20];
+    
+    /**
+     * Writes the shortest decimal representation of the double into the 
+     * buffer.
+     * @param v      The double.
+     * @param buffer The buffer, with at least {@code MAX_LENGTH} remaining.
+     */
+    public void format(double v, ByteBuffer buffer) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & T_MASK;
+        int bq = (int) (bits >>> (P - 1)) & 0x7ff;
+        if (bq == 0x7ff) {
+            putAscii(t != 0 ? "NaN" : bits < 0 ? "-Infinity" : "Infinity", buffer);
+            return;
+        }
+        if (bits < 0) {
+            buffer.put((byte) '-');
+        }
+        if (bq != 0) {
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    // Integers are written exactly.
+                    toChars(f, 0, buffer);
+                    return;
+                }
+            }
+            toDecimal(-mq, c, 0, buffer);
+        } else if (t != 0) {
+            // Subnormal values
+            if (t < C_TINY) {
+                toDecimal(Q_MIN, 10 * t, -1, buffer);
+            } else {
+                toDecimal(Q_MIN, t, 0, buffer);
+            }
+        } else {
+            putAscii("0.0", buffer);
+        }
+    }
+    
+    /**
+     * Computes the shortest decimal of c 2^q and writes it.
+     */
+    private void toDecimal(int q, long c, int dk, ByteBuffer buffer) {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN | q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+        
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        
+        long s = vb >> 2;
+        if (s >= 100) {
+            // Try a representation with one digit less first.
+            long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                toChars(upin ? sp10 : tp10, k, buffer);
+                return;
+            }
+        }
+        
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            toChars(uin ? s : t, k + dk, buffer);
+            return;
+        }
+        long cmp = vb - (s + t << 1);
+        toChars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buffer);
+    }
+    
+    /**
+     * Writes the decimal f 10^e, with f > 0.
+     */
+    private void toChars(long f, int e, ByteBuffer buffer) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int len = 0;
+        for (long r = f; r != 0; r /= 10) {
+            digits[len++] = (byte) ('0' + r % 10);
+        }
+        // The digits are in reverse order; the value is 0.d1d2... 10^point.
+        int point = len + e;
+        if (0 < point && point <= 7) {
+            for (int i = 0; i < point; i++) {
+                buffer.put(i < len ? digits[len - 1 - i] : (byte) '0');
+            }
+            buffer.put((byte) '.');
+            if (len <= point) {
+                buffer.put((byte) '0');
+            }
+            for (int i = point; i < len; i++) {
+                buffer.put(digits[len - 1 - i]);
+            }
+        } else if (-3 < point && point <= 0) {
+            buffer.put((byte) '0').put((byte) '.');
+            for (int i = point; i < 0; i++) {
+                buffer.put((byte) '0');
+            }
+            for (int i = len - 1; i >= 0; i--) {
+                buffer.put(digits[i]);
+            }
+        } else {
+            buffer.put(digits[len - 1]).put((byte) '.');
+            if (len == 1) {
+                buffer.put((byte) '0');
+            }
+            for (int i = len - 2; i >= 0; i--) {
+                buffer.put(digits[i]);
+            }
+            buffer.put((byte) 'E');
+            int exp = point - 1;
+            if (exp < 0) {
+                buffer.put((byte) '-');
+                exp = -exp;
+            }
+            if (exp >= 100) {
+                buffer.put((byte) ('0' + exp / 100));
+            }
+            if (exp >= 10) {
+                buffer.put((byte) ('0' + exp / 10 % 10));
+            }
+            buffer.put((byte) ('0' + exp % 10));
+        }
+    }
+    
+    private static void putAscii(String s, ByteBuffer buffer) {
+        for (int i = 0; i < s.length(); i++) {
+            buffer.put((byte) s.charAt(i));
+        }
+    }
+    
+    /**
+     * Computes the rounded-to-odd product of g and cp, divided by 2^127.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+    
+    /**
+     * Returns the high 64 bits of the 128-bit product of x and y.
+     * 
+     * Equivalent to {@code Math.multiplyHigh}, which is not available in 
+     * Java 8.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+    
+    /** Returns floor(log10(2^e)). */
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+    
+    /** Returns floor(log10(3/4 2^e)). */
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+    
+    /** Returns floor(log2(10^e)). */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+    
+    /**
+     * Computes the table of powers of ten used by {@code toDecimal}.
+     * @return The table, two entries per power.
+     */
+    private static long[] createTable() {
+        long[] table = new long[2 * (K_MAX - K_MIN + 1)];
+        BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger pow = BigInteger.TEN.pow(-k);
+                g = r >= 0 ? pow.shiftRight(r) : pow.shiftLeft(-r);
+            } else {
+                g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(k));
+            }
+            g = g.add(BigInteger.ONE);
+            table[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            table[2 * (k - K_MIN) + 1] = g.and(mask).longValue();
+        }
+        return table;
+    }
+}
@@ -0,0 +1,221 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Spliterators;
+import net.pgrid.sequencepredictor.PredictionSpliterator;
+import net.pgrid.sequencepredictor.Predictor;
+
+/**
+ * Writes large amounts of predictions into a WritableByteChannel.
+ * 
+ * Predictions are written in batches through a reused direct ByteBuffer, 
+ * either as raw little-endian IEEE 754 doubles ({@code Format.BINARY}) or as
+ * text with one shortest round-trip decimal per line ({@code Format.TEXT}).
+ * 
+ * The amount of bytes written and the time spent writing are accumulated over
+ * all calls to {@code write}, so that the throughput can be measured.
+ * 
+ * Instances are not thread-safe.
+ * 
+ * @author Patrick Kramer
+ */
+public class PredictionWriter {
+    
+    /**
+     * The output formats supported by the PredictionWriter.
+     */
+    public enum Format {
+        /**
+         * Raw 8-byte little-endian IEEE 754 doubles, without header.
+         */
+        BINARY(Double.BYTES),
+        
+        /**
+         * One decimal per line, as formatted by {@code DoubleFormatter}.
+         */
+        TEXT(DoubleFormatter.MAX_LENGTH + 1);
+        
+        private final int maxBytes;
+
+        private Format(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+        
+        /**
+         * Returns the maximum amount of bytes written per prediction.
+         * @return The amount of bytes.
+         */
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+    }
+    
+    /**
+     * The default amount of predictions per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 8192;
+    
+    private final Format format;
+    private final ByteBuffer buffer;
+    private final DoubleFormatter formatter = new DoubleFormatter();
+    
+    private long bytesWritten = 0;
+    private long elapsedNanos = 0;
+    
+    /**
+     * Initializes a new PredictionWriter with the default batch size.
+     * @param format The output format, not null.
+     */
+    public PredictionWriter(Format format) {
+        this(format, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * Initializes a new PredictionWriter.
+     * @param format    The output format, not null.
+     * @param batchSize The amount of predictions per write, at least 1.
+     * @throws IllegalArgumentException - If the batch size is less than 1.
+     */
+    public PredictionWriter(Format format, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(batchSize * format.getMaxBytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+    
+    /**
+     * Returns the amount of predictions per batch.
+     * @return The batch size.
+     */
+    public int getBatchSize() {
+        return buffer.capacity() / format.getMaxBytes();
+    }
+    
+    /**
+     * Writes the next {@code count} predictions of the Predictor.
+     * 
+     * The predictions are generated from a copy of the Predictor's state, so
+     * the Predictor itself is not advanced.
+     * 
+     * @param predictor The initialized Predictor, not null.
+     * @param count     The amount of predictions to write.
+     * @param channel   The channel to write to, not null.
+     * @return          The amount of bytes written.
+     * @throws IOException - If writing to the channel fails.
+     */
+    public long write(Predictor predictor, long count, WritableByteChannel channel) 
+            throws IOException {
+        return write(Spliterators.iterator(
+                new PredictionSpliterator(predictor, 0, count)), channel);
+    }
+    
+    /**
+     * Writes the values in the given range of the array.
+     * @param values  The values, not null.
+     * @param from    The index of the first value, inclusive.
+     * @param to      The index of the last value, exclusive.
+     * @param channel The channel to write to, not null.
+     * @return        The amount of bytes written.
+     * @throws IOException - If writing to the channel fails.
+     */
+    public long write(double[] values, int from, int to, WritableByteChannel channel) 
+            throws IOException {
+        return write(Spliterators.iterator(
+                Arrays.spliterator(values, from, to)), channel);
+    }
+    
+    /**
+     * Writes all values of the iterator.
+     * @param values  The values.
+     * @param channel The channel to write to.
+     * @return        The amount of bytes written.
+     * @throws IOException - If writing to the channel fails.
+     */
+    private long write(PrimitiveIterator.OfDouble values, WritableByteChannel channel) 
+            throws IOException {
+        long start = System.nanoTime();
+        long before = bytesWritten;
+        int maxBytes = format.getMaxBytes();
+        buffer.clear();
+        while (values.hasNext()) {
+            if (buffer.remaining() < maxBytes) {
+                flush(channel);
+            }
+            double value = values.nextDouble();
+            if (format == Format.BINARY) {
+                buffer.putDouble(value);
+            } else {
+                formatter.format(value, buffer);
+                buffer.put((byte) '\n');
+            }
+        }
+        flush(channel);
+        elapsedNanos += System.nanoTime() - start;
+        return bytesWritten - before;
+    }
+    
+    /**
+     * Writes the contents of the buffer to the channel and clears it.
+     * @param channel The channel.
+     * @throws IOException - If writing fails.
+     */
+    private void flush(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Returns the total amount of bytes written by this PredictionWriter.
+     * @return The amount of bytes.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    /**
+     * Returns the total time spent in {@code write}, in nanoseconds.
+     * @return The elapsed time.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Returns the average throughput of all writes so far, in megabytes 
+     * (10^6 bytes) per second.
+     * @return The throughput, or 0 if nothing was written.
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : bytesWritten * 1E3 / elapsedNanos;
+    }
+}
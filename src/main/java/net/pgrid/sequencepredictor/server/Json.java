@@ -0,0 +1,220 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the PredictionServer.
+ * 
+ * Only flat objects with string, number, boolean and null members are 
+ * supported, which is all the prediction protocol needs.
+ * 
+ * @author Patrick Kramer
+ */
+final class Json {
+    
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private Json() {
+    }
+    
+    /**
+     * Parses a flat JSON object.
+     * @param text The JSON text.
+     * @return     The members of the object, in order. Strings are returned as
+     *             String, numbers as Double, booleans as Boolean.
+     * @throws IllegalArgumentException - If the text is not a flat JSON object.
+     */
+    static Map<String, Object> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, Object> result = parser.parseObject();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("Unexpected trailing characters");
+        }
+        return result;
+    }
+    
+    /**
+     * Appends the given String as a quoted JSON string.
+     * @param b The StringBuilder to append to.
+     * @param s The String, not null.
+     * @return  The argument StringBuilder.
+     */
+    static StringBuilder appendString(StringBuilder b, String s) {
+        b.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  b.append("\\\""); break;
+                case '\\': b.append("\\\\"); break;
+                case '\n': b.append("\\n"); break;
+                case '\r': b.append("\\r"); break;
+                case '\t': b.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        b.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        b.append(c);
+                    }
+            }
+        }
+        return b.append('"');
+    }
+    
+    /**
+     * Appends the given double as a JSON number.
+     * 
+     * JSON has no representation for non-finite numbers, so these are 
+     * appended as null.
+     * @param b The StringBuilder to append to.
+     * @param d The double.
+     * @return  The argument StringBuilder.
+     */
+    static StringBuilder appendNumber(StringBuilder b, double d) {
+        return Double.isFinite(d) ? b.append(d) : b.append("null");
+    }
+    
+    /**
+     * Recursive-descent parser over a single JSON text.
+     */
+    private static class Parser {
+        private final String text;
+        private int pos = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+        
+        Map<String, Object> parseObject() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return result;
+            }
+            do {
+                skipWhitespace();
+                String key = parseString();
+                expect(':');
+                result.put(key, parseValue());
+            } while (consume(','));
+            expect('}');
+            return result;
+        }
+        
+        Object parseValue() {
+            skipWhitespace();
+            char c = peek();
+            if (c == '"') {
+                return parseString();
+            } else if (text.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                int start = pos;
+                while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                    pos++;
+                }
+                try {
+                    return Double.valueOf(text.substring(start, pos));
+                } catch (NumberFormatException ex) {
+                    throw error("Invalid number");
+                }
+            }
+            throw error("Unsupported value");
+        }
+        
+        String parseString() {
+            expect('"');
+            StringBuilder b = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return b.toString();
+                } else if (c != '\\') {
+                    b.append(c);
+                } else if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                } else {
+                    char e = text.charAt(pos++);
+                    switch (e) {
+                        case 'n': b.append('\n'); break;
+                        case 'r': b.append('\r'); break;
+                        case 't': b.append('\t'); break;
+                        case 'b': b.append('\b'); break;
+                        case 'f': b.append('\f'); break;
+                        case 'u':
+                            if (pos + 4 > text.length()) {
+                                throw error("Invalid escape");
+                            }
+                            try {
+                                b.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            } catch (NumberFormatException ex) {
+                                throw error("Invalid escape");
+                            }
+                            pos += 4;
+                            break;
+                        default: b.append(e);
+                    }
+                }
+            }
+        }
+        
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        
+        char peek() {
+            return pos < text.length() ? text.charAt(pos) : '\0';
+        }
+        
+        boolean consume(char c) {
+            skipWhitespace();
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+        
+        void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+        
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import net.pgrid.sequencepredictor.InputParser;
+import net.pgrid.sequencepredictor.InvalidTokenException;
+import net.pgrid.sequencepredictor.NoPatternFoundException;
+import net.pgrid.sequencepredictor.Predictor;
+import net.pgrid.sequencepredictor.SearchTimeoutException;
+
+/**
+ * Embeddable HTTP/JSON prediction server.
+ * 
+ * The server accepts {@code POST} requests on {@code /predict} with a JSON 
+ * object body:
+ * <pre>
+ * {"sequence": "1, 4, 9, 16", "predictions": 3, "timeoutMillis": 100}
+ * </pre>
+ * The {@code sequence} is parsed by {@code InputParser}, the other members are
+ * optional. A successful response has status 200 and the body
+ * <pre>
+ * {"pattern": "...", "predictions": [25.0, 36.0, 49.0]}
+ * </pre>
+ * Failures are reported as {@code {"error": "..."}} with status 400 (invalid
+ * request), 422 (no pattern found), 429 (server overloaded), 503 (server 
+ * stopped) or 504 (deadline exceeded).
+ * 
+ * Accepted requests wait in a bounded queue. Whenever a worker becomes 
+ * available, it takes its share of the queued requests: the queued requests
+ * divided over the idle workers, up to {@code MAX_BATCH_SIZE}. A burst is
+ * spread over all idle workers, while concurrent requests are coalesced into
+ * batches when every worker is busy. When the queue is full, requests are 
+ * rejected immediately with status 429. The deadline of a request starts when
+ * it is received and includes the time spent in the queue.
+ * 
+ * The JDK HttpServer does not disable Nagle's algorithm by default, which 
+ * delays small responses by up to 40 ms on most systems. Applications that
+ * embed the server should run with {@code -Dsun.net.httpserver.nodelay=true};
+ * {@code main} sets it unless it is given.
+ * 
+ * @author Patrick Kramer
+ */
+public class PredictionServer {
+    
+    /**
+     * The path of the prediction endpoint.
+     */
+    public static final String PATH = "/predict";
+    
+    /**
+     * The maximum amount of requests a worker processes in one batch.
+     */
+    public static final int MAX_BATCH_SIZE = 32;
+    
+    /**
+     * The deadline for requests that do not specify one, in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+    
+    /**
+     * The maximum deadline a request may specify, in milliseconds.
+     */
+    public static final long MAX_TIMEOUT_MILLIS = 60000;
+    
+    /**
+     * The amount of predictions for requests that do not specify it.
+     */
+    public static final int DEFAULT_PREDICTIONS = 5;
+    
+    /**
+     * The maximum amount of predictions per request.
+     */
+    public static final int MAX_PREDICTIONS = 10000;
+    
+    /**
+     * The maximum size of a request body, in bytes.
+     */
+    public static final int MAX_REQUEST_SIZE = 1 << 20;
+    
+    /**
+     * Status code for requests for which no pattern was found.
+     */
+    public static final int STATUS_NO_PATTERN = 422;
+    
+    /**
+     * Status code for requests rejected because the server is overloaded.
+     */
+    public static final int STATUS_OVERLOADED = 429;
+    
+    /**
+     * Status code for requests that exceeded their deadline.
+     */
+    public static final int STATUS_TIMEOUT = 504;
+    
+    /**
+     * Status code for requests that were queued when the server stopped.
+     */
+    public static final int STATUS_UNAVAILABLE = 503;
+    
+    private final HttpServer server;
+    private final int workers;
+    private final BlockingQueue<Request> queue;
+    private final Semaphore idleWorkers;
+    private final ExecutorService workerPool;
+    private final ExecutorService ioPool;
+    private final Thread batcher;
+    private volatile boolean stopped = false;
+    
+    /**
+     * Initializes a new PredictionServer on the loopback interface.
+     * 
+     * The server does not accept connections until {@code start()} is called.
+     * 
+     * @param port          The port, or 0 for any free port.
+     * @param workers       The amount of worker threads, at least 1.
+     * @param queueCapacity The maximum amount of queued requests, at least 1.
+     * @throws IOException - If the server cannot be bound to the port.
+     */
+    public PredictionServer(int port, int workers, int queueCapacity) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 
+                workers, queueCapacity);
+    }
+    
+    /**
+     * Initializes a new PredictionServer.
+     * 
+     * The server does not accept connections until {@code start()} is called.
+     * 
+     * @param address       The address to bind to, not null.
+     * @param workers       The amount of worker threads, at least 1.
+     * @param queueCapacity The maximum amount of queued requests, at least 1.
+     * @throws IOException - If the server cannot be bound to the address.
+     */
+    public PredictionServer(InetSocketAddress address, int workers, 
+            int queueCapacity) throws IOException {
+        if (workers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Workers and queue capacity must be at least 1");
+        }
+        this.workers = workers;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.idleWorkers = new Semaphore(workers);
+        this.workerPool = Executors.newFixedThreadPool(workers, daemon("prediction-worker"));
+        this.ioPool = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), daemon("prediction-io"));
+        this.batcher = daemon("prediction-batcher").newThread(this::dispatch);
+        
+        this.server = HttpServer.create(address, queueCapacity);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(ioPool);
+    }
+    
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        batcher.start();
+        server.start();
+    }
+    
+    /**
+     * Stops the server, waiting at most the given delay for running exchanges
+     * to finish. Requests that are still queued are answered with status 503.
+     * @param delay The maximum delay, in seconds.
+     */
+    public void stop(int delay) {
+        stopped = true;
+        batcher.interrupt();
+        try {
+            batcher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        rejectQueued();
+        server.stop(delay);
+        // Requests queued by handlers that were running while stopping.
+        rejectQueued();
+        workerPool.shutdownNow();
+        ioPool.shutdownNow();
+    }
+    
+    /**
+     * Answers all queued requests with status 503.
+     */
+    private void rejectQueued() {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            try {
+                respondError(request.exchange, STATUS_UNAVAILABLE, "Server stopped");
+            } catch (IOException ex) {
+                request.exchange.close();
+            }
+        }
+    }
+    
+    /**
+     * Returns the address the server is bound to.
+     * @return The address.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+    
+    /**
+     * Returns the port the server is bound to.
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    public int getWorkers() {
+        return workers;
+    }
+    
+    /**
+     * Handles an exchange on the prediction endpoint.
+     * 
+     * Runs on the I/O pool, and only reads and validates the request before
+     * queueing it.
+     * @param exchange The exchange.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long received = System.nanoTime();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            respondError(exchange, 405, "Method not allowed");
+            return;
+        }
+        
+        Request request;
+        try {
+            Map<String, Object> body = Json.parseObject(readBody(exchange));
+            request = new Request(exchange, received, body);
+        } catch (IllegalArgumentException | InvalidTokenException ex) {
+            respondError(exchange, 400, ex.getMessage());
+            return;
+        }
+        
+        if (stopped) {
+            respondError(exchange, STATUS_UNAVAILABLE, "Server stopped");
+        } else if (!queue.offer(request)) {
+            respondError(exchange, STATUS_OVERLOADED, "Server overloaded");
+        }
+    }
+    
+    /**
+     * Takes batches of requests from the queue and hands them to idle workers.
+     * 
+     * Every batch is the share of one idle worker of the queued requests, so
+     * a burst is spread over all idle workers instead of waiting for a single
+     * one.
+     * 
+     * Runs on the batcher thread until the server is stopped.
+     */
+    private void dispatch() {
+        try {
+            while (true) {
+                idleWorkers.acquire();
+                List<Request> batch = new ArrayList<>();
+                batch.add(queue.take());
+                int idle = idleWorkers.availablePermits() + 1;
+                int share = (queue.size() + idle) / idle;
+                queue.drainTo(batch, Math.min(share, MAX_BATCH_SIZE) - 1);
+                workerPool.execute(() -> {
+                    try {
+                        batch.forEach(this::process);
+                    } finally {
+                        idleWorkers.release();
+                    }
+                });
+            }
+        } catch (InterruptedException ex) {
+            // The server is stopped.
+        }
+    }
+    
+    /**
+     * Processes a single request and sends the response.
+     * 
+     * Runs on a worker thread.
+     * @param request The request.
+     */
+    private void process(Request request) {
+        HttpExchange exchange = request.exchange;
+        try {
+            long remaining = request.deadline - System.nanoTime();
+            if (remaining <= 0) {
+                respondError(exchange, STATUS_TIMEOUT, "Deadline exceeded while queued");
+                return;
+            }
+            
+            Predictor predictor;
+            try {
+                predictor = new Predictor(request.values)
+                        .init(remaining, TimeUnit.NANOSECONDS);
+            } catch (SearchTimeoutException ex) {
+                respondError(exchange, STATUS_TIMEOUT, ex.getMessage());
+                return;
+            } catch (NoPatternFoundException ex) {
+                respondError(exchange, STATUS_NO_PATTERN, ex.getMessage());
+                return;
+            }
+            
+            StringBuilder b = new StringBuilder("{\"pattern\":");
+            Json.appendString(b, predictor.getPattern()).append(",\"predictions\":[");
+            for (int i = 0; i < request.predictions; i++) {
+                if (i > 0) {
+                    b.append(',');
+                }
+                Json.appendNumber(b, predictor.getNext());
+            }
+            respond(exchange, 200, b.append("]}").toString());
+        } catch (IOException | RuntimeException ex) {
+            // The client cannot be informed anymore; drop the exchange.
+            exchange.close();
+        }
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, read);
+                if (body.size() > MAX_REQUEST_SIZE) {
+                    throw new IllegalArgumentException("Request too large");
+                }
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static void respondError(HttpExchange exchange, int status, 
+            String message) throws IOException {
+        StringBuilder b = new StringBuilder("{\"error\":");
+        respond(exchange, status, Json.appendString(b, String.valueOf(message))
+                .append('}').toString());
+    }
+    
+    private static void respond(HttpExchange exchange, int status, String json) 
+            throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Entry point for running a stand-alone PredictionServer on localhost.
+     * @param args The port (default 8080) and the amount of workers (default
+     *             the amount of cores).
+     * @throws IOException - If the server cannot be started.
+     */
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) 
+                : Runtime.getRuntime().availableProcessors();
+        PredictionServer server = new PredictionServer(port, workers, workers * MAX_BATCH_SIZE);
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort() + PATH);
+    }
+    
+    /**
+     * A validated prediction request.
+     */
+    private static class Request {
+        final HttpExchange exchange;
+        final long deadline;
+        final double[] values;
+        final int predictions;
+        
+        Request(HttpExchange exchange, long received, Map<String, Object> body) 
+                throws InvalidTokenException {
+            this.exchange = exchange;
+            Object sequence = body.get("sequence");
+            if (!(sequence instanceof String)) {
+                throw new IllegalArgumentException("Missing \"sequence\" string");
+            }
+            this.values = new InputParser((String) sequence).parse()
+                    .mapToDouble(Double::doubleValue)
+                    .toArray();
+            this.predictions = (int) number(body, "predictions", 
+                    DEFAULT_PREDICTIONS, 0, MAX_PREDICTIONS);
+            this.deadline = received + TimeUnit.MILLISECONDS.toNanos(
+                    number(body, "timeoutMillis", DEFAULT_TIMEOUT_MILLIS, 1, MAX_TIMEOUT_MILLIS));
+        }
+        
+        private static long number(Map<String, Object> body, String key, 
+                long defaultValue, long min, long max) {
+            Object value = body.get(key);
+            if (value == null) {
+                return defaultValue;
+            }
+            if (!(value instanceof Double)) {
+                throw new IllegalArgumentException("\"" + key + "\" must be a number");
+            }
+            double d = (Double) value;
+            if (d != Math.rint(d) || d < min || d > max) {
+                throw new IllegalArgumentException("\"" + key + "\" must be an integer in [" 
+                        + min + ", " + max + "]");
+            }
+            return (long) d;
+        }
+    }
+}
@@ -5,22 +5,51 @@ import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+import javax.swing.TransferHandler;
 import net.pgrid.sequencepredictor.InputParser;
 import net.pgrid.sequencepredictor.InvalidTokenException;
 import net.pgrid.sequencepredictor.NoPatternFoundException;
 import net.pgrid.sequencepredictor.Predictor;
+import net.pgrid.sequencepredictor.io.PredictionWriter;
 
 /**
  * Creates and controls the main window for the application.
+ * 
+ * Detecting the pattern and generating predictions runs on a single 
+ * background thread, so the window stays responsive while searching. The 
+ * predictions are shown in a list backed by a {@code PredictionListModel}, 
+ * which only renders the visible rows. More rows are added by "Show More" or
+ * by scrolling to the end of the list, and predictions are generated ahead of
+ * the shown rows, so that new rows can show immediately.
+ * 
  * @author Patrick Kramer
  */
 public class MainWindow {
@@ -49,12 +78,48 @@ public class MainWindow {
      */
     public static final int RESULT_STEP_SIZE = 5;
     
+    /**
+     * The amount of rows added when scrolling to the end of the result list.
+     */
+    public static final int PAGE_SIZE = 100;
+    
+    /**
+     * The amount of predictions generated ahead of the rows shown, and the 
+     * maximum amount of predictions generated by a single background task.
+     */
+    public static final int PREFETCH_SIZE = 1000;
+    
+    /**
+     * The maximum amount of rows copied to the clipboard at once. Larger 
+     * ranges should be exported to a file instead.
+     */
+    public static final int MAX_COPY_SIZE = 100000;
+    
     private final JFrame window;
     
     private final JTextField input = new JTextField();
-    private final JTextArea output = new JTextArea();
+    private final JLabel status = new JLabel(" ");
+    private final PredictionListModel model = new PredictionListModel();
+    private final JList<String> output = new JList<>(model);
+    private final JButton computeButton = new JButton("Compute");
+    private final JButton showMoreButton = new JButton("Show More");
+    private final JButton exportButton = new JButton("Export...");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JProgressBar progress = new JProgressBar();
+    
+    // All access to the Predictor happens on this thread, one task at a time.
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "predictor-background");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     private Predictor predictor = null;
+    // Generates the predictions from a copy of the Predictor's state, which 
+    // does not keep the generated values in memory.
+    private PrimitiveIterator.OfDouble predictions = null;
+    private DetectTask detectTask = null;
+    private GenerateTask generateTask = null;
     
     public MainWindow() {
         this.window = new JFrame("Sequence Predictor");
@@ -75,24 +140,46 @@ public class MainWindow {
         this.window.add(inputLabel, gbc);
         this.window.add(this.input, gbc);
         
-        JButton computeButton = new JButton("Compute");
         computeButton.addActionListener(e -> compute());
+        cancelButton.addActionListener(e -> cancel());
+        progress.setIndeterminate(true);
+        JPanel computePanel = new JPanel();
+        computePanel.add(progress);
+        computePanel.add(cancelButton);
+        computePanel.add(computeButton);
         gbc.fill = GridBagConstraints.NONE;
-        this.window.add(computeButton, gbc);
+        this.window.add(computePanel, gbc);
+        
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        this.window.add(status, gbc);
         
-        output.setEditable(false);
+        // A fixed cell size prevents the JList from measuring every row.
+        output.setPrototypeCellValue("0000000000: -0.0000000000000000E-000");
+        output.setSelectionMode(ListSelectionModel.SINGLE_INTERVAL_SELECTION);
+        output.setTransferHandler(new RangeTransferHandler());
         JScrollPane scrollPane = new JScrollPane(output);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollPane.setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            JScrollBar bar = (JScrollBar) e.getAdjustable();
+            if (predictor != null && bar.getMaximum() > bar.getVisibleAmount()
+                    && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum()) {
+                addRows(PAGE_SIZE);
+            }
+        });
         gbc.fill = GridBagConstraints.BOTH;
         gbc.weighty = 1;
         this.window.add(scrollPane, gbc);
         
-        JButton showMoreButton = new JButton("Show More");
         showMoreButton.addActionListener(e -> showMore());
+        exportButton.addActionListener(e -> export());
+        JPanel resultPanel = new JPanel();
+        resultPanel.add(exportButton);
+        resultPanel.add(showMoreButton);
         gbc.fill = GridBagConstraints.NONE;
         gbc.weighty = 0;
-        this.window.add(showMoreButton, gbc);
+        this.window.add(resultPanel, gbc);
+        setBusy(false);
         
         this.window.setMinimumSize(new Dimension(300, 200));
         this.window.pack();
@@ -100,65 +187,305 @@ public class MainWindow {
         this.window.setVisible(true);
     }
     
+    /**
+     * Parses the values in the input field.
+     * 
+     * Must be called on the event-dispatch thread.
+     * @return The parsed values, or null if the input could not be parsed.
+     */
     public List<Double> getInputValues() {
         try {
-            InputParser parser = new InputParser(input.getText());
-            return parser.parse()
-                .reduce(new LinkedList<>(), 
-                        (l, d) -> {
-                            l.add(d);
-                            return l;
-                        },
-                        (a, b) -> {
-                            a.addAll(b);
-                            return a;
-                        });
+            return parse(input.getText());
         } catch (InvalidTokenException ex) {
             // The message of a NumberFormatException contains the token that could not be parsed.
-            output.setText("Error parsing input:\n" + ex.getMessage());
+            status.setText("Error parsing input: " + ex.getMessage());
             return null;
         }
     }
     
+    /**
+     * Parses the values in the given text.
+     * @param text The text.
+     * @return     The parsed values.
+     * @throws InvalidTokenException - If the text could not be parsed.
+     */
+    private static List<Double> parse(String text) throws InvalidTokenException {
+        InputParser parser = new InputParser(text);
+        return parser.parse()
+            .reduce(new LinkedList<>(), 
+                    (l, d) -> {
+                        l.add(d);
+                        return l;
+                    },
+                    (a, b) -> {
+                        a.addAll(b);
+                        return a;
+                    });
+    }
+    
+    /**
+     * Starts detecting the pattern of the input sequence in the background.
+     * 
+     * Any running computation is cancelled first.
+     */
     public void compute() {
-        List<Double> inputValues = getInputValues();
-        if (inputValues != null) {
-            predictor = new Predictor(getInputValues());
-            try { 
-                predictor.init();
-                output.setText("");
-                showMore();
-            } catch (NoPatternFoundException ex) {
-                output.setText(ex.getMessage());
-                predictor = null;
-            }
+        cancel();
+        predictor = null;
+        predictions = null;
+        generateTask = null;
+        model.clear();
+        status.setText("Computing...");
+        detectTask = new DetectTask(input.getText());
+        setBusy(true);
+        background.execute(detectTask);
+    }
+    
+    /**
+     * Cancels the running detection.
+     * 
+     * The detection is interrupted, which stops the search.
+     */
+    public void cancel() {
+        if (detectTask != null) {
+            detectTask.cancel(true);
+            detectTask = null;
+            status.setText("Computation cancelled.");
         }
+        setBusy(false);
     }
     
     /**
-     * Adds {@code RESULT_STEP_SIZE} elements to the output pane.
+     * Adds {@code RESULT_STEP_SIZE} rows to the result list.
      */
     public void showMore() {
         if (predictor == null) {
-            output.setText("No sequence computed or no pattern found in computed sequence.");
+            if (detectTask == null) {
+                status.setText("No sequence computed or no pattern found in computed sequence.");
+            }
         } else {
-            predictor.stream()
-                    .limit(RESULT_STEP_SIZE)
-                    .forEach(this::addValue);
-            output.setText(output.getText() + "\n");
+            addRows(RESULT_STEP_SIZE);
+            output.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+    
+    /**
+     * Adds rows to the result list, and generates predictions ahead of them.
+     * @param count The amount of rows to add.
+     */
+    private void addRows(int count) {
+        model.setSize((int) Math.min(Integer.MAX_VALUE - PREFETCH_SIZE, 
+                (long) model.getSize() + count));
+        prefetch();
+    }
+    
+    /**
+     * Starts generating predictions in the background, if less than 
+     * {@code PREFETCH_SIZE} predictions are available ahead of the shown rows
+     * and no generation is running yet.
+     */
+    private void prefetch() {
+        int target = model.getSize() + PREFETCH_SIZE;
+        if (generateTask == null && model.getGenerated() < target) {
+            generateTask = new GenerateTask(predictions, 
+                    Math.min(PREFETCH_SIZE, target - model.getGenerated()));
+            background.execute(generateTask);
+        }
+    }
+    
+    /**
+     * Exports the predictions shown in the result list to a file, one value 
+     * per line.
+     */
+    public void export() {
+        int count = Math.min(model.getSize(), model.getGenerated());
+        if (count == 0) {
+            status.setText("Nothing to export.");
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(window) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        double[] values = model.getValues();
+        status.setText("Exporting " + count + " predictions...");
+        background.execute(new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                try (FileChannel channel = FileChannel.open(file.toPath(), 
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    return new PredictionWriter(PredictionWriter.Format.TEXT)
+                            .write(values, 0, count, channel);
+                }
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    status.setText("Exported " + count + " predictions (" 
+                            + get() + " bytes) to " + file.getName());
+                } catch (InterruptedException | ExecutionException ex) {
+                    status.setText("Export failed: " + ex.getCause());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Enables or disables the controls that depend on a running detection.
+     * @param busy True if a detection is running.
+     */
+    private void setBusy(boolean busy) {
+        progress.setVisible(busy);
+        cancelButton.setEnabled(busy);
+        showMoreButton.setEnabled(!busy);
+        exportButton.setEnabled(!busy);
+    }
+    
+    /**
+     * Background task that parses the input and detects its pattern.
+     */
+    private class DetectTask extends SwingWorker<Predictor, Void> {
+        private final String text;
+
+        DetectTask(String text) {
+            this.text = text;
+        }
+        
+        @Override
+        protected Predictor doInBackground() throws Exception {
+            return new Predictor(parse(text)).init();
+        }
+
+        @Override
+        protected void done() {
+            if (detectTask != this) {
+                // Cancelled, or replaced by a newer computation.
+                return;
+            }
+            detectTask = null;
+            setBusy(false);
+            try {
+                predictor = get();
+                predictions = predictor.stream(0, Long.MAX_VALUE).iterator();
+                status.setText("Pattern: " + predictor.getPattern());
+                showMore();
+            } catch (CancellationException | InterruptedException ex) {
+                status.setText("Computation cancelled.");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof InvalidTokenException) {
+                    status.setText("Error parsing input: " + cause.getMessage());
+                } else if (cause instanceof NoPatternFoundException) {
+                    status.setText(cause.getMessage());
+                } else {
+                    status.setText("Computation failed: " + cause);
+                }
+            }
         }
     }
     
     /**
-     * Adds a single value to the output field.
-     * @param value The value to add.
+     * Background task that generates the next block of predictions.
      */
-    public void addValue(double value) {
-        String text = output.getText();
-        if (!text.isEmpty() && !text.endsWith("\n")) {
-            text += ", ";
+    private class GenerateTask extends SwingWorker<double[], Void> {
+        private final PrimitiveIterator.OfDouble source;
+        private final int count;
+
+        GenerateTask(PrimitiveIterator.OfDouble source, int count) {
+            this.source = source;
+            this.count = count;
+        }
+        
+        @Override
+        protected double[] doInBackground() {
+            double[] block = new double[count];
+            for (int i = 0; i < count; i++) {
+                block[i] = source.nextDouble();
+            }
+            return block;
         }
         
-        output.setText(text + value);
+        @Override
+        protected void done() {
+            if (generateTask != this) {
+                // Replaced by a newer computation.
+                return;
+            }
+            generateTask = null;
+            try {
+                model.append(get());
+                prefetch();
+            } catch (InterruptedException | ExecutionException ex) {
+                status.setText("Failed to compute predictions: " + ex.getCause());
+                predictor = null;
+            }
+        }
+    }
+    
+    /**
+     * TransferHandler that copies the selected range of predictions.
+     * 
+     * The text is only built when the clipboard contents are requested, and 
+     * the range is limited to {@code MAX_COPY_SIZE} rows.
+     */
+    private class RangeTransferHandler extends TransferHandler {
+        @Override
+        public int getSourceActions(JComponent c) {
+            return COPY;
+        }
+        
+        @Override
+        protected Transferable createTransferable(JComponent c) {
+            int from = output.getMinSelectionIndex();
+            int to = Math.min(output.getMaxSelectionIndex() + 1, model.getGenerated());
+            if (from < 0 || from >= to) {
+                return null;
+            }
+            if (to - from > MAX_COPY_SIZE) {
+                status.setText("Selection too large to copy, use Export instead.");
+                return null;
+            }
+            return new RangeTransferable(model.getValues(), from, to);
+        }
+    }
+    
+    /**
+     * Transferable of a range of predictions as text, one value per line.
+     */
+    private static class RangeTransferable implements Transferable {
+        private final double[] values;
+        private final int from;
+        private final int to;
+
+        RangeTransferable(double[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public DataFlavor[] getTransferDataFlavors() {
+            return new DataFlavor[] { DataFlavor.stringFlavor };
+        }
+
+        @Override
+        public boolean isDataFlavorSupported(DataFlavor flavor) {
+            return DataFlavor.stringFlavor.equals(flavor);
+        }
+
+        @Override
+        public Object getTransferData(DataFlavor flavor) 
+                throws UnsupportedFlavorException {
+            if (!isDataFlavorSupported(flavor)) {
+                throw new UnsupportedFlavorException(flavor);
+            }
+            StringBuilder b = new StringBuilder((to - from) * 20);
+            for (int i = from; i < to; i++) {
+                b.append(values[i]).append('\n');
+            }
+            return b.toString();
+        }
     }
 }
@@ -0,0 +1,122 @@
+package net.pgrid.sequencepredictor.view;
+
+import java.util.Arrays;
+import javax.swing.AbstractListModel;
+
+/**
+ * Lazy ListModel over the predictions shown in the main window.
+ * 
+ * The model exposes a number of rows that may exceed the amount of 
+ * predictions generated so far. Rows without a generated value show 
+ * {@code PENDING} until their value is appended. The values are stored in a 
+ * primitive array and only formatted when a row is rendered, so a JList with 
+ * a fixed cell size only formats the visible rows.
+ * 
+ * Like all Swing models, this class must only be used on the event-dispatch 
+ * thread.
+ * 
+ * @author Patrick Kramer
+ */
+public class PredictionListModel extends AbstractListModel<String> {
+    
+    /**
+     * The text shown for rows whose value has not been generated yet.
+     */
+    public static final String PENDING = "...";
+    
+    private static final int INITIAL_CAPACITY = 64;
+    
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int generated = 0;
+    private int size = 0;
+    
+    @Override
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * Returns the text of the row at the given index.
+     * @param index The index of the row.
+     * @return      The row number and value, or {@code PENDING}.
+     */
+    @Override
+    public String getElementAt(int index) {
+        if (index >= generated) {
+            return PENDING;
+        }
+        return (index + 1) + ": " + values[index];
+    }
+    
+    /**
+     * Returns the amount of values generated so far.
+     * @return The amount of values.
+     */
+    public int getGenerated() {
+        return generated;
+    }
+    
+    /**
+     * Returns the generated value at the given index.
+     * @param index The index, less than {@code getGenerated()}.
+     * @return      The value.
+     */
+    public double getValue(int index) {
+        if (index >= generated) {
+            throw new IndexOutOfBoundsException("Value " + index + " not generated");
+        }
+        return values[index];
+    }
+    
+    /**
+     * Returns the backing array of the generated values.
+     * 
+     * The first {@code getGenerated()} elements of the array never change, so
+     * they may be read on other threads. Later elements may be written.
+     * @return The backing array.
+     */
+    public double[] getValues() {
+        return values;
+    }
+    
+    /**
+     * Sets the amount of rows of this model.
+     * @param newSize The amount of rows, at least 0.
+     */
+    public void setSize(int newSize) {
+        int oldSize = size;
+        size = newSize;
+        if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        } else if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        }
+    }
+    
+    /**
+     * Appends a block of generated values.
+     * @param block The values, not null.
+     */
+    public void append(double[] block) {
+        if (generated + block.length > values.length) {
+            values = Arrays.copyOf(values, 
+                    Math.max(values.length * 2, generated + block.length));
+        }
+        System.arraycopy(block, 0, values, generated, block.length);
+        int first = generated;
+        generated += block.length;
+        int last = Math.min(generated, size) - 1;
+        if (first <= last) {
+            fireContentsChanged(this, first, last);
+        }
+    }
+    
+    /**
+     * Removes all rows and values.
+     */
+    public void clear() {
+        values = new double[INITIAL_CAPACITY];
+        generated = 0;
+        setSize(0);
+    }
+}
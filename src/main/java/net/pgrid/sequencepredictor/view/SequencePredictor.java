@@ -1,6 +1,8 @@
 package net.pgrid.sequencepredictor.view;
 
+import java.awt.GraphicsEnvironment;
 import javax.swing.SwingUtilities;
+import net.pgrid.sequencepredictor.cli.CommandLine;
 
 /**
  * Main class of the Sequence Predictor application.
@@ -11,10 +13,18 @@ public class SequencePredictor {
 
     /**
      * Entry point of the application.
+     * 
+     * When command-line arguments are given, or no display is available, the
+     * application runs in headless command-line mode (see 
+     * {@code CommandLine}). Otherwise the main window is shown.
      *
-     * @param args The command-line arguments, ignored here.
+     * @param args The command-line arguments.
      */
     public static void main(String[] args) {
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            CommandLine.main(args);
+            return;
+        }
         // By wrapping the call in `SwingUtilities.invokeLater`, we assert that
         // AWT/Swing is properly initialized before we attempt to set up a 
         // window.
@@ -0,0 +1,51 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for an attempt to apply an operation during a search.
+ * 
+ * The duration includes the search of all levels below the operation. Only 
+ * attempts longer than the threshold are recorded.
+ * 
+ * @author Patrick Kramer
+ */
+@Name("net.pgrid.sequencepredictor.Branch")
+@Label("Search Branch")
+@Category("Sequence Predictor")
+@Description("An attempt to apply an operation during a pattern search")
+@Threshold("1 ms")
+class BranchEvent extends Event {
+    
+    @Label("Operation")
+    String operation;
+    
+    @Label("Depth")
+    @Description("The depth of the level the operation produced")
+    int depth;
+    
+    @Label("Success")
+    @Description("Whether a pattern was found below the operation")
+    boolean success;
+}
@@ -0,0 +1,163 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import jdk.jfr.EventType;
+
+/**
+ * Hooks for profiling events of the pattern search and of generation.
+ * 
+ * This is the Java 11 version of this class, which emits Java Flight Recorder
+ * events. Every {@code begin} method first checks whether its event type is 
+ * enabled, and returns a null handle otherwise, so no event is allocated 
+ * while nothing is recording.
+ * 
+ * Every {@code begin} method returns an event handle that must be passed to 
+ * the matching {@code end} method. The handle may be null.
+ * 
+ * @author Patrick Kramer
+ */
+final class Events {
+    
+    /**
+     * Outcome of a search that found a pattern.
+     */
+    static final String FOUND = "found";
+    
+    /**
+     * Outcome of a search that did not find a pattern.
+     */
+    static final String NO_PATTERN = "no pattern";
+    
+    /**
+     * Outcome of a search that was cancelled.
+     */
+    static final String CANCELLED = "cancelled";
+    
+    /**
+     * Outcome of a search that exceeded its deadline.
+     */
+    static final String TIMEOUT = "timeout";
+    
+    private static final EventType SEARCH = EventType.getEventType(SearchEvent.class);
+    private static final EventType BRANCH = EventType.getEventType(BranchEvent.class);
+    private static final EventType GENERATION = EventType.getEventType(GenerationEvent.class);
+    
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private Events() {
+    }
+    
+    /**
+     * Marks the start of a pattern search.
+     * @return The event handle.
+     */
+    static Object beginSearch() {
+        if (!SEARCH.isEnabled()) {
+            return null;
+        }
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        return event;
+    }
+    
+    /**
+     * Marks the end of a pattern search.
+     * @param event       The event handle.
+     * @param inputLength The amount of input values.
+     * @param search      The SearchContext of the search.
+     * @param outcome     The outcome, one of the constants of this class.
+     */
+    static void endSearch(Object event, int inputLength, SearchContext search, 
+            String outcome) {
+        if (event != null) {
+            SearchEvent e = (SearchEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.inputLength = inputLength;
+                e.depthReached = search.getMaxDepth();
+                e.nodesExpanded = search.getNodes();
+                e.outcome = outcome;
+                e.commit();
+            }
+        }
+    }
+    
+    /**
+     * Marks the start of an attempt to apply an operation during the search.
+     * @return The event handle.
+     */
+    static Object beginBranch() {
+        if (!BRANCH.isEnabled()) {
+            return null;
+        }
+        BranchEvent event = new BranchEvent();
+        event.begin();
+        return event;
+    }
+    
+    /**
+     * Marks the end of an attempt to apply an operation during the search.
+     * @param event     The event handle.
+     * @param operation The operation applied.
+     * @param depth     The depth of the level the operation produced.
+     * @param success   True if a pattern was found below the operation.
+     */
+    static void endBranch(Object event, PredictOperation operation, int depth, 
+            boolean success) {
+        if (event != null) {
+            BranchEvent e = (BranchEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.operation = operation.description();
+                e.depth = depth;
+                e.success = success;
+                e.commit();
+            }
+        }
+    }
+    
+    /**
+     * Marks the start of the bulk generation of predictions.
+     * @return The event handle.
+     */
+    static Object beginGeneration() {
+        if (!GENERATION.isEnabled()) {
+            return null;
+        }
+        GenerationEvent event = new GenerationEvent();
+        event.begin();
+        return event;
+    }
+    
+    /**
+     * Marks the end of the bulk generation of predictions.
+     * @param event The event handle.
+     * @param count The amount of predictions generated.
+     */
+    static void endGeneration(Object event, long count) {
+        if (event != null) {
+            GenerationEvent e = (GenerationEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.count = count;
+                e.commit();
+            }
+        }
+    }
+}
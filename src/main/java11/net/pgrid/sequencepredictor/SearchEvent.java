@@ -0,0 +1,50 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a complete pattern search.
+ * @author Patrick Kramer
+ */
+@Name("net.pgrid.sequencepredictor.Search")
+@Label("Pattern Search")
+@Category("Sequence Predictor")
+@Description("A complete search for the pattern of a sequence")
+class SearchEvent extends Event {
+    
+    @Label("Input Length")
+    @Description("The amount of input values")
+    int inputLength;
+    
+    @Label("Depth Reached")
+    @Description("The maximum amount of operations applied")
+    int depthReached;
+    
+    @Label("Nodes Expanded")
+    @Description("The amount of levels searched")
+    long nodesExpanded;
+    
+    @Label("Outcome")
+    @Description("found, no pattern, cancelled or timeout")
+    String outcome;
+}
@@ -0,0 +1,242 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the predictions of a Predictor to reactive subscribers.
+ *
+ * Every subscriber receives the predictions from index 0, the value
+ * {@code getNext()} on the Predictor would return when the publisher is
+ * created, with its own copy of the generation state. The Predictor itself is
+ * never advanced.
+ *
+ * Predictions are only generated on demand: a subscription generates at most
+ * {@code batchSize} values at a time, and never more than requested, on the
+ * executor of the publisher. A slow subscriber therefore only delays its own
+ * generation, and never causes values to be buffered. After every batch, a
+ * subscription with remaining demand is resubmitted to the executor, so
+ * subscribers with unbounded demand share the executor fairly.
+ *
+ * This class is only available on Java 9 or later. It is compiled for Java 9
+ * into the base layer of the jar, since it is public API that a versioned 
+ * layer may not add.
+ *
+ * @author Patrick Kramer
+ */
+public class PredictionPublisher implements Flow.Publisher<Double> {
+
+    /**
+     * The default maximum amount of predictions generated at a time.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final Predictor initial;
+    private final Executor executor;
+    private final int batchSize;
+    private final long count;
+
+    /**
+     * Initializes a new PredictionPublisher of infinitely many predictions,
+     * generated on the common ForkJoinPool.
+     * @param predictor The initialized Predictor, not null.
+     */
+    public PredictionPublisher(Predictor predictor) {
+        this(predictor, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Initializes a new PredictionPublisher.
+     * @param predictor The initialized Predictor, not null.
+     * @param executor  The executor that generates the predictions, not null.
+     * @param batchSize The maximum amount of predictions generated at a time,
+     *                  at least 1.
+     * @param count     The amount of predictions of every subscription, after
+     *                  which it completes, or {@code Long.MAX_VALUE} for an
+     *                  infinite subscription.
+     * @throws IllegalArgumentException - If the batch size or count is invalid.
+     */
+    public PredictionPublisher(Predictor predictor, Executor executor,
+            int batchSize, long count) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size less than 1");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count");
+        }
+        this.initial = predictor.copyState();
+        this.executor = Objects.requireNonNull(executor);
+        this.batchSize = batchSize;
+        this.count = count;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Double> subscriber) {
+        Objects.requireNonNull(subscriber);
+        // The initial state is never advanced, so it can be copied by
+        // several subscribing threads at once.
+        PredictionSubscription subscription = 
+                new PredictionSubscription(subscriber, initial.copyState());
+        subscriber.onSubscribe(subscription);
+        if (count == 0) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * The subscription of a single subscriber, with its own generation state.
+     *
+     * Signals are only sent by the drain loop, which runs on one thread at a
+     * time, guarded by {@code work}.
+     */
+    private class PredictionSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Double> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile Throwable error = null;
+
+        // Only accessed by the drain loop.
+        private Predictor state;
+        private double[] buffer;
+        private long emitted = 0;
+
+        PredictionSubscription(Flow.Subscriber<? super Double> subscriber,
+                Predictor state) {
+            this.subscriber = subscriber;
+            this.state = state;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException(
+                        "Non-positive request: " + n);
+            } else {
+                long current, next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        /**
+         * Completes a subscription without predictions.
+         */
+        void complete() {
+            schedule();
+        }
+
+        /**
+         * Runs the drain loop on the executor, unless it is already running.
+         */
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                submit();
+            }
+        }
+
+        /**
+         * Submits the drain loop to the executor.
+         */
+        private void submit() {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                cancelled = true;
+                state = null;
+                subscriber.onError(ex);
+            }
+        }
+
+        /**
+         * Sends at most one batch of predictions, and any terminal signal.
+         */
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                if (cancelled) {
+                    state = null;
+                    return;
+                }
+                Throwable failure = error;
+                if (failure != null) {
+                    cancelled = true;
+                    state = null;
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (emitted == count) {
+                    cancelled = true;
+                    state = null;
+                    subscriber.onComplete();
+                    return;
+                }
+                long demand = Math.min(requested.get(), count - emitted);
+                if (demand > 0) {
+                    emit((int) Math.min(demand, batchSize));
+                    if (!cancelled && requested.get() > 0) {
+                        // Yield the executor between batches.
+                        submit();
+                        return;
+                    }
+                    continue;
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Generates and sends a batch of predictions.
+         * @param size The amount of predictions, at most the demand.
+         */
+        private void emit(int size) {
+            if (buffer == null || buffer.length < size) {
+                buffer = new double[size];
+            }
+            for (int i = 0; i < size; i++) {
+                buffer[i] = state.getNext();
+            }
+            emitted += size;
+            if (requested.get() != Long.MAX_VALUE) {
+                requested.addAndGet(-size);
+            }
+            for (int i = 0; i < size && !cancelled; i++) {
+                subscriber.onNext(buffer[i]);
+            }
+        }
+    }
+}
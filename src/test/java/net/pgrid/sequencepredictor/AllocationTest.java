@@ -0,0 +1,270 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+/**
+ * Allocation regression test for the hot paths of the Predictor and the
+ * InputParser.
+ *
+ * Every sequence family of {@code PredictorTest} is extended to several sizes
+ * by the Predictor itself, and the bytes allocated by the measuring thread are
+ * compared against the budgets below. Measurements are repeated after a warm
+ * up, and the lowest result counts, so JIT compilation does not make the
+ * test flaky.
+ *
+ * The generation budgets are below the 16 bytes of a single boxed Double per
+ * term, so boxing a value at any level of the pattern fails the test.
+ *
+ * @author Patrick Kramer
+ */
+@RunWith(Parameterized.class)
+@SuppressWarnings("PublicField") //< public fields allow Parameterized Runner to init fields.
+public class AllocationTest {
+
+    /**
+     * The sizes each sequence family is tested at.
+     */
+    public static final int[] SIZES = { 8, 32, 256 };
+
+    /**
+     * The maximum amount of bytes {@code init()} may allocate per input value
+     * and per level visited by the search.
+     */
+    public static final long INIT_BUDGET = 160;
+
+    /**
+     * The maximum amount of bytes {@code getNext()} of a compacted Predictor
+     * may allocate per term.
+     */
+    public static final long NEXT_BUDGET = 8;
+
+    /**
+     * The maximum amount of bytes {@code stream(from, to)} may allocate per
+     * term.
+     */
+    public static final long STREAM_BUDGET = 8;
+
+    /**
+     * The maximum amount of bytes {@code InputParser.parse()} may allocate per
+     * token.
+     */
+    public static final long PARSE_BUDGET = 1024;
+
+    /**
+     * The amount of predictions generated per measurement, enough to make
+     * the cost of copying the state of a deep pattern negligible per term.
+     */
+    public static final int TERMS = 100_000;
+
+    /**
+     * The amount of measurements, including the warm up.
+     */
+    public static final int RUNS = 3;
+
+    /**
+     * The time in milliseconds a single detection may take.
+     */
+    public static final long DETECTION_TIMEOUT = 5000;
+
+    /**
+     * The sequence families whose search visits an exponential amount of
+     * levels in the input length. They are only tested at the smallest size.
+     */
+    public static final List<String> EXPONENTIAL =
+            Arrays.asList("fractions (simple)", "fractions");
+
+    /**
+     * The parameters for this parameterized unit test.
+     * @return The parameters.
+     */
+    @Parameterized.Parameters(name = "{index} - {1} ({2})")
+    public static List<Object[]> parameters() {
+        List<Object[]> result = new ArrayList<>();
+        for (Object[] family : PredictorTest.parameters()) {
+            for (int size : SIZES) {
+                result.add(new Object[] { family[0], family[2], size });
+                if (EXPONENTIAL.contains(family[2])) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The values of the sequence family, as given by {@code PredictorTest}.
+     */
+    @Parameter(0)
+    public double[] family;
+
+    /**
+     * A description of the sequence family.
+     */
+    @Parameter(1)
+    public String description;
+
+    /**
+     * The amount of input values.
+     */
+    @Parameter(2)
+    public int size;
+
+    private double[] values;
+    private long nodes;
+
+    /**
+     * Extends the sequence family to the size of this test case, and counts
+     * the levels the search visits to detect it.
+     * @throws NoPatternFoundException - If the pattern is not found within
+     *                                   {@code DETECTION_TIMEOUT}.
+     */
+    @Before
+    public void setUp() throws NoPatternFoundException {
+        assumeTrue("Allocation measurement not supported", isSupported());
+        Predictor predictor = new Predictor(family).init();
+        values = DoubleStream.concat(DoubleStream.of(family),
+                predictor.stream().limit(Math.max(0, size - family.length)))
+                .limit(size).toArray();
+        assertTrue("Sequence exceeds the range of double",
+                DoubleStream.of(values).allMatch(Double::isFinite));
+        SearchContext search = new SearchContext(
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DETECTION_TIMEOUT));
+        new Predictor(values).search(null, search);
+        nodes = search.getNodes();
+    }
+
+    /**
+     * Tests the bytes allocated by {@code init()} per input value.
+     */
+    @Test
+    public void testInit() {
+        long bytes = measure(() -> detect());
+        long perValue = bytes / (size * nodes);
+        assertTrue("init() allocated " + perValue + " bytes per value and level",
+                perValue <= INIT_BUDGET);
+    }
+
+    /**
+     * Tests the bytes allocated by {@code getNext()} per term.
+     *
+     * An initialized Predictor records every value it generates at every
+     * level, so the test generates from a compacted Predictor.
+     */
+    @Test
+    public void testGetNext() {
+        Predictor predictor = detect().compact();
+        long bytes = measure(() -> {
+            for (int i = 0; i < TERMS; i++) {
+                predictor.getNext();
+            }
+        });
+        long perTerm = bytes / TERMS;
+        assertTrue("getNext() allocated " + perTerm + " bytes per term",
+                perTerm <= NEXT_BUDGET);
+    }
+
+    /**
+     * Tests the bytes allocated by {@code stream(from, to)} per term.
+     */
+    @Test
+    public void testStream() {
+        Predictor predictor = detect();
+        long bytes = measure(() -> predictor.stream(0, TERMS).sum());
+        long perTerm = bytes / TERMS;
+        assertTrue("stream() allocated " + perTerm + " bytes per term",
+                perTerm <= STREAM_BUDGET);
+    }
+
+    /**
+     * Tests the bytes allocated by {@code InputParser.parse()} per token.
+     */
+    @Test
+    public void testParse() {
+        String input = IntStream.range(0, size)
+                .mapToObj(i -> Double.toString(values[i]))
+                .collect(Collectors.joining(", "));
+        long bytes = measure(() -> {
+            try {
+                new InputParser(input).parse().count();
+            } catch (InvalidTokenException ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        long perToken = bytes / size;
+        assertTrue("parse() allocated " + perToken + " bytes per token",
+                perToken <= PARSE_BUDGET);
+    }
+
+    /**
+     * Detects the pattern of the values of this test case.
+     * @return The initialized Predictor.
+     */
+    private Predictor detect() {
+        try {
+            return new Predictor(values).init();
+        } catch (NoPatternFoundException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Returns whether the JVM supports measuring the bytes allocated by a
+     * thread.
+     * @return True if supported.
+     */
+    private static boolean isSupported() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Runs the given task several times, and returns the lowest amount of
+     * bytes allocated by the current thread in a single run.
+     * @param task The task.
+     * @return     The amount of bytes.
+     */
+    private static long measure(Runnable task) {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long before = bean.getThreadAllocatedBytes(thread);
+            task.run();
+            min = Math.min(min, bean.getThreadAllocatedBytes(thread) - before);
+        }
+        return min;
+    }
+}
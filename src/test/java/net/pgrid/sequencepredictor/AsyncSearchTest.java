@@ -0,0 +1,170 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the asynchronous initialization of Predictors.
+ * @author Patrick Kramer
+ */
+public class AsyncSearchTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns a Predictor whose search takes practically forever.
+     * @return The Predictor.
+     */
+    private static Predictor slow() {
+        Random random = new Random(3);
+        double[] values = new double[40];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble();
+        }
+        return new Predictor(values);
+    }
+
+    /**
+     * Returns the cause of the failure of the given future.
+     * @param future The future.
+     * @return       The cause.
+     */
+    private static Throwable failure(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        } catch (TimeoutException ex) {
+            throw new AssertionError("Future did not complete", ex);
+        }
+        throw new AssertionError("Future completed normally");
+    }
+
+    /**
+     * Asserts that both threads of the executor are free, by running a
+     * search on each of them.
+     */
+    private void assertThreadsFree() throws Exception {
+        CountDownLatch running = new CountDownLatch(2);
+        CompletableFuture<?> first = CompletableFuture.runAsync(() -> {
+            running.countDown();
+            try {
+                running.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, executor);
+        assertEquals(5, new Predictor(1, 2, 3, 4).initAsync(executor)
+                .thenApply(Predictor::getNext).get(10, TimeUnit.SECONDS), 0);
+        running.countDown();
+        first.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tests that the future completes with the Predictor, or with the
+     * NoPatternFoundException of {@code init()}.
+     */
+    @Test
+    public void testInitAsync() throws Exception {
+        Predictor predictor = new Predictor(1, 4, 9, 16);
+        assertSame(predictor, predictor.initAsync(executor).get(10, TimeUnit.SECONDS));
+        assertEquals(25, predictor.getNext(), 0);
+
+        Throwable cause = failure(new Predictor(1).initAsync(executor));
+        assertEquals(NoPatternFoundException.class, cause.getClass());
+
+        String pattern = new Predictor(2, 4, 8).initAsync(executor)
+                .thenApply(Predictor::getPattern)
+                .exceptionally(ex -> "none")
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(new Predictor(2, 4, 8).init().getPattern(), pattern);
+    }
+
+    /**
+     * Tests that cancelling the future stops the search.
+     */
+    @Test
+    public void testCancel() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        List<CompletableFuture<Predictor>> futures = Predictor.initAllAsync(
+                Arrays.asList(slow(), slow()), r -> executor.execute(() -> {
+                    started.countDown();
+                    r.run();
+                }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (CompletableFuture<Predictor> future : futures) {
+            assertTrue(future.cancel(true));
+            assertTrue(future.isCancelled());
+        }
+        assertThreadsFree();
+    }
+
+    /**
+     * Tests that a search that exceeds its timeout completes with a
+     * SearchTimeoutException, and stops.
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        Throwable first = failure(slow().initAsync(executor, 50, TimeUnit.MILLISECONDS));
+        Throwable second = failure(slow().initAsync(executor, 50, TimeUnit.MILLISECONDS));
+        assertEquals(SearchTimeoutException.class, first.getClass());
+        assertEquals(SearchTimeoutException.class, second.getClass());
+        assertThreadsFree();
+    }
+
+    /**
+     * Tests that the timeout of a batch only fails the searches that are not
+     * complete.
+     */
+    @Test
+    public void testBatchTimeout() throws Exception {
+        List<CompletableFuture<Predictor>> futures = Predictor.initAllAsync(
+                Arrays.asList(new Predictor(1, 2, 3), new Predictor(1), slow(),
+                        new Predictor(1, 3, 9)), executor, 200, TimeUnit.MILLISECONDS);
+        assertEquals(4, futures.get(0).get(10, TimeUnit.SECONDS).getNext(), 0);
+        assertEquals(NoPatternFoundException.class, failure(futures.get(1)).getClass());
+        assertEquals(SearchTimeoutException.class, failure(futures.get(2)).getClass());
+        assertEquals(27, futures.get(3).get(10, TimeUnit.SECONDS).getNext(), 0);
+        assertThreadsFree();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Micro benchmark of the search and generation loops.
+ *
+ * Every case is run for a number of rounds after a warm up, and the fastest
+ * round is reported in nanoseconds per value. Cases come in pairs: the
+ * built-in operations dispatched through their {@code Opcode}, and the same
+ * arithmetic wrapped in operations created by {@code Operations.create},
+ * which are called through the PredictOperation interfaces like any
+ * user-supplied operation. The generation cases are also run on
+ * CompiledPatterns.
+ *
+ * Usage, from the test class path: {@code Benchmark [rounds]}
+ *
+ * @author Patrick Kramer
+ */
+public class Benchmark {
+
+    /**
+     * The amount of values per round of the apply cases.
+     */
+    private static final int LENGTH = 1 << 16;
+
+    /**
+     * The amount of values generated per round of the generation cases.
+     */
+    private static final int TERMS = 1 << 16;
+
+    /**
+     * The amount and length of the sequences of the init case.
+     */
+    private static final int CORPUS_SIZE = 200;
+    private static final int CORPUS_LENGTH = 10;
+
+    /**
+     * The built-in operations, and copies of them without an opcode.
+     */
+    private static final PredictOperation[] BUILT_IN = {
+        Operations.diff(), Operations.divide(), Operations.invert()
+    };
+    private static final PredictOperation[] WRAPPED = {
+        Operations.create("diff", (a, b) -> b - a, (a, b) -> a + b),
+        Operations.create("divide", (a, b) -> b / a, (a, b) -> a * b),
+        Operations.create("invert", d -> 1 / d, d -> 1 / d),
+    };
+
+    private final int rounds;
+
+    /**
+     * Consumes results, so the JIT cannot remove the measured loops. Stores
+     * to a field that outlives the loops are never eliminated.
+     */
+    private double sink = 0;
+
+    /**
+     * Initializes a new Benchmark.
+     * @param rounds The amount of measured rounds per case.
+     */
+    public Benchmark(int rounds) {
+        this.rounds = rounds;
+    }
+
+    /**
+     * Runs all cases and prints the results.
+     */
+    public void run() {
+        double[] in = new double[LENGTH];
+        double[] out = new double[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            in[i] = 1 + i % 97;
+        }
+        report("apply, opcode", measure(() -> {
+            for (PredictOperation operation : BUILT_IN) {
+                Opcode.of(operation).apply(in, LENGTH, out);
+                sink += out[LENGTH - 2];
+            }
+        }, 3L * LENGTH));
+        report("apply, interface", measure(() -> {
+            for (PredictOperation operation : WRAPPED) {
+                applyGeneric(operation, in, LENGTH, out);
+                sink += out[LENGTH - 2];
+            }
+        }, 3L * LENGTH));
+
+        report("getNext, opcode", measureNext(BUILT_IN));
+        report("getNext, interface", measureNext(WRAPPED));
+        report("nextDouble, compiled", measureCompiled(false));
+        report("fill, compiled", measureCompiled(true));
+
+        // Sequences without a pattern are left out, their search dominates.
+        SequenceGenerator generator = new SequenceGenerator(42);
+        List<SequenceGenerator.Sample> corpus = new ArrayList<>();
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            SequenceGenerator.Family family = SequenceGenerator.Family.values()[i % 5];
+            corpus.add(generator.generate(family, 1 + i % 3, CORPUS_LENGTH));
+        }
+        report("init, corpus", measure(() -> {
+            for (SequenceGenerator.Sample sample : corpus) {
+                try {
+                    sink += new Predictor(sample.getValues()).init().getNext();
+                } catch (NoPatternFoundException ex) {
+                    sink++;
+                }
+            }
+        }, (long) CORPUS_LENGTH * CORPUS_SIZE));
+    }
+
+    /**
+     * Measures the generation of a pattern of every operation: a cubic of
+     * differences, a geometric sequence, and the inverse of a line.
+     * @param operations The diff, divide and invert operations to use.
+     * @return           The fastest round, in nanoseconds per value.
+     */
+    private double measureNext(PredictOperation[] operations) {
+        PredictOperation diff = operations[0];
+        PredictOperation divide = operations[1];
+        PredictOperation invert = operations[2];
+        return measure(() -> {
+            Predictor cubic = chain(new double[] { 1, 1, 6, 6 }, diff, diff, diff);
+            Predictor geometric = chain(new double[] { 1, 1.0000001 }, divide);
+            Predictor inverse = chain(new double[] { 1, 1, 1e-9 }, invert, diff);
+            for (int i = 0; i < TERMS; i++) {
+                sink += cubic.getNext() + geometric.getNext() + inverse.getNext();
+            }
+        }, 3L * TERMS);
+    }
+
+    /**
+     * Measures the generation of the patterns of {@code measureNext} by
+     * their CompiledPatterns.
+     * @param fill True to fill arrays, false to call {@code nextDouble()}.
+     * @return     The fastest round, in nanoseconds per value.
+     */
+    private double measureCompiled(boolean fill) {
+        PredictOperation diff = Operations.diff();
+        CompiledPattern[] patterns = {
+            chain(new double[] { 1, 1, 6, 6 }, diff, diff, diff).compile(),
+            chain(new double[] { 1, 1.0000001 }, Operations.divide()).compile(),
+            chain(new double[] { 1, 1, 1e-9 }, Operations.invert(), diff).compile()
+        };
+        double[] values = new double[TERMS];
+        return measure(() -> {
+            for (CompiledPattern pattern : patterns) {
+                if (fill) {
+                    pattern.fill(values);
+                    sink += values[TERMS - 1];
+                } else {
+                    for (int i = 0; i < TERMS; i++) {
+                        sink += pattern.nextDouble();
+                    }
+                }
+            }
+        }, 3L * TERMS);
+    }
+
+    /**
+     * Returns a generating state copy of a pattern.
+     * @param last       The last value of every level, including the constant
+     *                   level.
+     * @param operations The operation of every level but the constant level.
+     * @return           The Predictor.
+     */
+    private static Predictor chain(double[] last, PredictOperation... operations) {
+        Predictor below = null;
+        for (int level = last.length - 1; level >= 0; level--) {
+            below = new Predictor(new double[] { last[level] },
+                    level < operations.length ? operations[level] : null, below);
+        }
+        return below.copyState();
+    }
+
+    /**
+     * Applies an operation through its interface, as the search does for
+     * user-supplied operations.
+     * @param operation The operation.
+     * @param in        The values.
+     * @param length    The amount of values.
+     * @param out       The results.
+     */
+    private static void applyGeneric(PredictOperation operation, double[] in,
+            int length, double[] out) {
+        if (operation instanceof BinaryPredictOperation) {
+            BinaryPredictOperation binary = (BinaryPredictOperation) operation;
+            for (int i = 1; i < length; i++) {
+                out[i - 1] = binary.applyAsDouble(in[i - 1], in[i]);
+            }
+        } else {
+            UnaryPredictOperation unary = (UnaryPredictOperation) operation;
+            for (int i = 0; i < length; i++) {
+                out[i] = unary.applyAsDouble(in[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs a case for the warm up and the measured rounds.
+     * @param round  A single round.
+     * @param values The amount of values per round.
+     * @return       The fastest round, in nanoseconds per value.
+     */
+    private double measure(Runnable round, long values) {
+        for (int i = 0; i < rounds; i++) {
+            round.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / values;
+    }
+
+    private static void report(String name, double nanos) {
+        System.out.printf("%-24s %8.2f ns/value%n", name, nanos);
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args The amount of rounds per case (default 20).
+     */
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: Benchmark [rounds]");
+            System.exit(2);
+        }
+        new Benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 20).run();
+    }
+}
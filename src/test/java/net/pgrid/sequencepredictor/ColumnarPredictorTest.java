@@ -0,0 +1,132 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.pgrid.sequencepredictor.SequenceGenerator.Sample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the ColumnarPredictor class.
+ * @author Patrick Kramer
+ */
+public class ColumnarPredictorTest {
+
+    /**
+     * The search timeout of the reference, in milliseconds.
+     */
+    public static final long TIMEOUT = 200;
+
+    /**
+     * Tests that every column gets the pattern and predictions of its own
+     * Predictor on a generated corpus.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testCorpus() throws NoPatternFoundException {
+        List<Sample> corpus = new SequenceGenerator(29).corpus(60, 10, 4);
+        double[][] columns = new double[corpus.size()][];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = corpus.get(c).getValues();
+        }
+        Predictor[] actual = new ColumnarPredictor(columns).init(10, TimeUnit.SECONDS);
+        int found = 0;
+        for (int c = 0; c < columns.length; c++) {
+            Predictor expected;
+            try {
+                expected = new Predictor(columns[c]).init(TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (SearchCancelledException ex) {
+                continue;
+            } catch (NoPatternFoundException ex) {
+                assertNull(corpus.get(c).toString(), actual[c]);
+                continue;
+            }
+            assertSame(corpus.get(c).toString(), expected, actual[c]);
+            found++;
+        }
+        assertTrue(found > columns.length / 2);
+    }
+
+    /**
+     * Tests columns that are not searched as doubles: non-finite values,
+     * counters with equal doubles, and integers beyond 2^53.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testSpecialColumns() throws NoPatternFoundException {
+        double[][] columns = {
+            {1, 2, Double.NaN, 4, 5},
+            {1E15, 1E15 + 1, 1E15 + 3, 1E15 + 6, 1E15 + 10},
+            {0x1p60, 0x1p60 + 0x1p10, 0x1p60 + 0x1p11, 0x1p60 + 0x1p10 * 3, 0x1p60 + 0x1p12},
+            {1, 2, 3, 4, 5},
+            {1, 2, 4, 8, 16},
+        };
+        Predictor[] actual = new ColumnarPredictor(columns).init();
+        assertNull(actual[0]);
+        assertEquals(1E15 + 15, actual[1].getNext(), 0);
+        assertEquals(0x1p60 + 0x1p10 * 5, actual[2].getNext(), 0);
+        for (int c = 1; c < columns.length; c++) {
+            Predictor expected = new Predictor(columns[c]).init();
+            if (c <= 2) {
+                expected.getNext();
+            }
+            assertSame("column " + c, expected, actual[c]);
+        }
+    }
+
+    /**
+     * Tests that columns of less than two values have no pattern.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testShort() throws NoPatternFoundException {
+        Predictor[] actual = new ColumnarPredictor(new double[][] {{1}, {2}}).init();
+        assertNull(actual[0]);
+        assertNull(actual[1]);
+        assertEquals(0, new ColumnarPredictor(new double[0][]).init().length);
+    }
+
+    /**
+     * Tests that columns of different lengths are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testLengths() {
+        new ColumnarPredictor(new double[][] {{1, 2, 3}, {1, 2}});
+    }
+
+    /**
+     * Asserts that two Predictors have the same levels and predictions.
+     * @param message  The message.
+     * @param expected The expected Predictor.
+     * @param actual   The actual Predictor.
+     */
+    private static void assertSame(String message, Predictor expected, Predictor actual) {
+        assertNotNull(message, actual);
+        assertEquals(message, expected.getPattern(), actual.getPattern());
+        for (Predictor e = expected, a = actual; e != null; e = e.getDiffs(), a = a.getDiffs()) {
+            assertEquals(message, e.getComputed(), a.getComputed());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(message, expected.getNext(), actual.getNext(), 0);
+        }
+    }
+}
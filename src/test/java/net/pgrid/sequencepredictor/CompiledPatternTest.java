@@ -0,0 +1,146 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the CompiledPattern class.
+ * @author Patrick Kramer
+ */
+public class CompiledPatternTest {
+
+    /**
+     * Tests that compiled patterns generate exactly the values of the
+     * Predictor, for a corpus of generated sequences.
+     */
+    @Test
+    public void testCorpus() {
+        SequenceGenerator generator = new SequenceGenerator(11);
+        int compiled = 0;
+        for (int i = 0; i < 300; i++) {
+            SequenceGenerator.Family family = SequenceGenerator.Family.values()[i % 5];
+            SequenceGenerator.Sample sample = generator.generate(family, 1 + i % 4, 10);
+            Predictor predictor;
+            try {
+                predictor = new Predictor(sample.getValues()).init();
+            } catch (NoPatternFoundException ex) {
+                continue;
+            }
+            CompiledPattern pattern = predictor.compile();
+            for (int n = 0; n < 20; n++) {
+                assertEquals(sample.toString(), predictor.getNext(), pattern.nextDouble(), 0);
+            }
+            double[] filled = new double[40];
+            pattern.fill(filled, 20, 20);
+            for (int n = 20; n < 40; n++) {
+                assertEquals(sample.toString(), predictor.getNext(), filled[n], 0);
+            }
+            compiled++;
+        }
+        assertTrue(compiled > 250);
+    }
+
+    /**
+     * Tests compiling constant patterns, unary operations at the end of the
+     * chain, and continuing after predictions of the Predictor.
+     */
+    @Test
+    public void testShapes() throws NoPatternFoundException {
+        CompiledPattern constant = new Predictor(4, 4, 4).init().compile();
+        assertEquals(0, constant.getDepth());
+        double[] values = new double[3];
+        constant.fill(values);
+        assertArrayEquals(new double[] { 4, 4, 4 }, values, 0);
+
+        // A unary operation above a constant level: u{n} = 1 / 2
+        Predictor half = new Predictor(new double[] { 0.5 }, Operations.invert(),
+                new Predictor(new double[] { 2 }, null, null));
+        assertEquals(1, half.compile().getDepth());
+        assertEquals(0.5, half.compile().nextDouble(), 0);
+
+        CompiledPattern harmonic = new Predictor(1, 1 / 2.0, 1 / 3.0, 1 / 4.0).init().compile();
+        assertEquals(2, harmonic.getDepth());
+        assertEquals(1 / 5.0, harmonic.nextDouble(), 1e-15);
+        assertEquals(1 / 6.0, harmonic.nextDouble(), 1e-15);
+
+        Predictor squares = new Predictor(1, 4, 9, 16).init();
+        squares.getNext();
+        squares.getNext();
+        CompiledPattern pattern = squares.compile();
+        assertEquals(2, pattern.getDepth());
+        assertEquals(49, pattern.nextDouble(), 0);
+        assertEquals(64, pattern.nextDouble(), 0);
+        assertEquals(49, squares.getNext(), 0);
+    }
+
+    /**
+     * Tests that user-supplied operations are compiled, and operations that
+     * read more history are rejected.
+     */
+    @Test
+    public void testUserOperations() {
+        BinaryPredictOperation twice = Operations.create("r{n} = u{n+1} - 2 * u{n}",
+                (a, b) -> b - 2 * a, (a, b) -> 2 * a + b);
+        // u{n+1} = 2 * u{n} + 1
+        Predictor predictor = new Predictor(new double[] { 1, 3, 7 }, twice,
+                new Predictor(new double[] { 1 }, null, null));
+        CompiledPattern pattern = predictor.compile();
+        assertEquals(15, pattern.nextDouble(), 0);
+        assertEquals(31, pattern.nextDouble(), 0);
+
+        PredictOperation history = new BinaryPredictOperation() {
+            @Override
+            public double applyAsDouble(double left, double right) {
+                return right - left;
+            }
+
+            @Override
+            public double applyInverse(double left, double right) {
+                return left + right;
+            }
+
+            @Override
+            public String description() {
+                return "history";
+            }
+
+            @Override
+            public int historySize() {
+                return 2;
+            }
+        };
+        try {
+            new Predictor(new double[] { 1, 2 }, history,
+                    new Predictor(new double[] { 1 }, null, null)).compile();
+            throw new AssertionError("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Operation cannot be compiled: history", ex.getMessage());
+        }
+    }
+
+    /**
+     * Tests that filling rejects ranges outside the array.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testFillRange() throws NoPatternFoundException {
+        new Predictor(1, 2, 3).init().compile().fill(new double[4], 2, 3);
+    }
+}
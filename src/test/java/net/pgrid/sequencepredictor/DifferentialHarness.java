@@ -0,0 +1,310 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.pgrid.sequencepredictor.SequenceGenerator.Sample;
+
+/**
+ * Compares the results of two ways of detecting and predicting sequences on a
+ * corpus.
+ *
+ * The reference engine is normally {@code reference(timeout)}, the plain
+ * {@code Predictor}. The candidate is an optimized path that should give the
+ * same results. For every sequence, both engines must either find the same
+ * pattern and (fuzzy) equal predictions, or both find no pattern. Sequences
+ * for which either engine runs out of time are skipped.
+ *
+ * @author Patrick Kramer
+ * @see SequenceGenerator
+ */
+public class DifferentialHarness {
+
+    /**
+     * A way of detecting and predicting sequences.
+     */
+    @FunctionalInterface
+    public interface Engine {
+        /**
+         * Detects the pattern of the values and predicts the next values.
+         * @param values The values, not to be modified.
+         * @param count  The amount of predictions.
+         * @return       The result.
+         * @throws NoPatternFoundException - If no pattern is found, or the
+         *                                   search is cancelled.
+         */
+        public Result run(double[] values, int count) throws NoPatternFoundException;
+    }
+
+    /**
+     * The result of an Engine for a single sequence.
+     */
+    public static final class Result {
+        private final String pattern;
+        private final double[] predictions;
+
+        /**
+         * Initializes a new Result.
+         * @param pattern     The detected pattern, as given by
+         *                    {@code Predictor.getPattern()}.
+         * @param predictions The predictions.
+         */
+        public Result(String pattern, double[] predictions) {
+            this.pattern = pattern;
+            this.predictions = predictions;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public double[] getPredictions() {
+            return predictions;
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " " + Arrays.toString(predictions);
+        }
+    }
+
+    /**
+     * A sequence for which the engines disagree.
+     */
+    public static final class Mismatch {
+        private final Sample sample;
+        private final String expected;
+        private final String actual;
+
+        Mismatch(Sample sample, String expected, String actual) {
+            this.sample = sample;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public Sample getSample() {
+            return sample;
+        }
+
+        /**
+         * Returns the result of the reference engine.
+         * @return The pattern and predictions, or the exception message.
+         */
+        public String getExpected() {
+            return expected;
+        }
+
+        /**
+         * Returns the result of the candidate engine.
+         * @return The pattern and predictions, or the exception message.
+         */
+        public String getActual() {
+            return actual;
+        }
+
+        @Override
+        public String toString() {
+            return sample + ": expected " + expected + " but was " + actual;
+        }
+    }
+
+    /**
+     * The outcome of comparing the engines on a corpus.
+     */
+    public static final class Report {
+        private final int compared;
+        private final int skipped;
+        private final List<Mismatch> mismatches;
+
+        Report(int compared, int skipped, List<Mismatch> mismatches) {
+            this.compared = compared;
+            this.skipped = skipped;
+            this.mismatches = Collections.unmodifiableList(mismatches);
+        }
+
+        /**
+         * Returns the amount of sequences compared, including mismatches.
+         * @return The amount of sequences.
+         */
+        public int getCompared() {
+            return compared;
+        }
+
+        /**
+         * Returns the amount of sequences skipped because an engine ran out
+         * of time.
+         * @return The amount of sequences.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public List<Mismatch> getMismatches() {
+            return mismatches;
+        }
+
+        @Override
+        public String toString() {
+            return compared + " compared, " + skipped + " skipped, "
+                    + mismatches.size() + " mismatches";
+        }
+    }
+
+    private final Engine reference;
+    private final Engine candidate;
+    private final int predictions;
+
+    /**
+     * Initializes a new DifferentialHarness.
+     * @param reference   The reference engine, not null.
+     * @param candidate   The engine to compare against the reference, not
+     *                    null.
+     * @param predictions The amount of predictions compared per sequence.
+     */
+    public DifferentialHarness(Engine reference, Engine candidate, int predictions) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.predictions = predictions;
+    }
+
+    /**
+     * Runs both engines on every sequence of the corpus and compares the
+     * results.
+     * @param corpus The sequences.
+     * @return       The report.
+     */
+    public Report run(List<Sample> corpus) {
+        int compared = 0;
+        int skipped = 0;
+        List<Mismatch> mismatches = new ArrayList<>();
+        for (Sample sample : corpus) {
+            Result expected, actual;
+            NoPatternFoundException expectedError = null, actualError = null;
+            try {
+                expected = reference.run(sample.getValues(), predictions);
+            } catch (SearchCancelledException ex) {
+                skipped++;
+                continue;
+            } catch (NoPatternFoundException ex) {
+                expected = null;
+                expectedError = ex;
+            }
+            try {
+                actual = candidate.run(sample.getValues(), predictions);
+            } catch (SearchCancelledException ex) {
+                skipped++;
+                continue;
+            } catch (NoPatternFoundException ex) {
+                actual = null;
+                actualError = ex;
+            }
+            compared++;
+            if (expected == null && actual == null) {
+                continue;
+            }
+            if (expected == null || actual == null || !matches(expected, actual)) {
+                mismatches.add(new Mismatch(sample,
+                        expected == null ? expectedError.getMessage() : expected.toString(),
+                        actual == null ? actualError.getMessage() : actual.toString()));
+            }
+        }
+        return new Report(compared, skipped, mismatches);
+    }
+
+    /**
+     * Returns whether two results are equal.
+     *
+     * The patterns must be equal, and the predictions must be equal according
+     * to {@code Predictor.fuzzyEq}. Non-finite predictions must be identical.
+     *
+     * @param expected The result of the reference engine.
+     * @param actual   The result of the candidate engine.
+     * @return         True if equal, false otherwise.
+     */
+    public static boolean matches(Result expected, Result actual) {
+        if (!expected.getPattern().equals(actual.getPattern())) {
+            return false;
+        }
+        double[] a = expected.getPredictions();
+        double[] b = actual.getPredictions();
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            boolean equal = Double.isFinite(a[i]) && Double.isFinite(b[i])
+                    ? Predictor.fuzzyEq(a[i], b[i])
+                    : Double.compare(a[i], b[i]) == 0;
+            if (!equal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the reference engine: {@code init} followed by
+     * {@code getNext()} for every prediction.
+     * @param timeout The maximum search time, in milliseconds.
+     * @return        The Engine.
+     */
+    public static Engine reference(long timeout) {
+        return (values, count) -> {
+            Predictor predictor = new Predictor(values).init(timeout, TimeUnit.MILLISECONDS);
+            double[] result = new double[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = predictor.getNext();
+            }
+            return new Result(predictor.getPattern(), result);
+        };
+    }
+
+    /**
+     * Returns the engine that searches with a Predictor for every level 
+     * visited, instead of the {@code SearchTableau}.
+     * @param timeout The maximum search time, in milliseconds.
+     * @return        The Engine.
+     */
+    static Engine recursive(long timeout) {
+        return (values, count) -> {
+            Predictor predictor = new Predictor(values).initRecursive(null, 
+                    new SearchContext(System.nanoTime() 
+                            + TimeUnit.MILLISECONDS.toNanos(timeout)));
+            double[] result = new double[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = predictor.getNext();
+            }
+            return new Result(predictor.getPattern(), result);
+        };
+    }
+    
+    /**
+     * Returns the engine for long inputs: {@code initPrefix()} followed by
+     * {@code stream(0, count)}.
+     * @return The Engine.
+     */
+    public static Engine prefix() {
+        return (values, count) -> {
+            Predictor predictor = new Predictor(values).initPrefix();
+            return new Result(predictor.getPattern(),
+                    predictor.stream(0, count).toArray());
+        };
+    }
+}
@@ -0,0 +1,108 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import net.pgrid.sequencepredictor.DifferentialHarness.Engine;
+import net.pgrid.sequencepredictor.DifferentialHarness.Report;
+import net.pgrid.sequencepredictor.DifferentialHarness.Result;
+import net.pgrid.sequencepredictor.SequenceGenerator.Family;
+import net.pgrid.sequencepredictor.SequenceGenerator.Sample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the DifferentialHarness class.
+ * @author Patrick Kramer
+ */
+public class DifferentialHarnessTest {
+    
+    /**
+     * The search timeout of the engines, in milliseconds.
+     */
+    public static final long TIMEOUT = 200;
+    
+    /**
+     * Tests that generating through stream(from, to) matches the reference.
+     */
+    @Test
+    public void testStream() {
+        Engine stream = (values, count) -> {
+            Predictor predictor = new Predictor(values).init(TIMEOUT, TimeUnit.MILLISECONDS);
+            return new Result(predictor.getPattern(), predictor.stream(0, count).toArray());
+        };
+        List<Sample> corpus = new SequenceGenerator(11).corpus(30, 10, 3);
+        Report report = new DifferentialHarness(
+                DifferentialHarness.reference(TIMEOUT), stream, 20).run(corpus);
+        assertTrue(report.toString(), report.getMismatches().isEmpty());
+        assertTrue(report.getCompared() > 0);
+        assertEquals(corpus.size(), report.getCompared() + report.getSkipped());
+    }
+    
+    /**
+     * Tests that initPrefix() matches the reference on long polynomials, 
+     * exponentials and alternating sequences. The search on long rational 
+     * and composed sequences takes too long for a unit test.
+     */
+    @Test
+    public void testPrefix() {
+        List<Sample> corpus = new SequenceGenerator(13).corpus(60, 64, 5).stream()
+                .filter(s -> s.getFamily() == Family.POLYNOMIAL
+                        || s.getFamily() == Family.EXPONENTIAL
+                        || s.getFamily() == Family.ALTERNATING)
+                .collect(Collectors.toList());
+        Report report = new DifferentialHarness(DifferentialHarness.reference(TIMEOUT * 10), 
+                DifferentialHarness.prefix(), 10).run(corpus);
+        assertTrue(report.toString(), report.getMismatches().isEmpty());
+        assertEquals(corpus.size(), report.getCompared());
+    }
+    
+    /**
+     * Tests that differing predictions are reported.
+     */
+    @Test
+    public void testMismatch() {
+        Engine reference = DifferentialHarness.reference(TIMEOUT);
+        Engine broken = (values, count) -> {
+            Result result = reference.run(values, count);
+            return new Result(result.getPattern(), 
+                    DoubleStream.of(result.getPredictions()).map(d -> d + 1).toArray());
+        };
+        List<Sample> corpus = new SequenceGenerator(17).corpus(10, 8, 2);
+        Report report = new DifferentialHarness(reference, broken, 5).run(corpus);
+        assertFalse(report.getMismatches().isEmpty());
+    }
+    
+    /**
+     * Tests the comparison of results.
+     */
+    @Test
+    public void testMatches() {
+        Result a = new Result("()", new double[] {1, Double.NaN, 1E20});
+        assertTrue(DifferentialHarness.matches(a, 
+                new Result("()", new double[] {1, Double.NaN, 1E20 + 1E5})));
+        assertFalse(DifferentialHarness.matches(a, 
+                new Result("()", new double[] {1, 0, 1E20})));
+        assertFalse(DifferentialHarness.matches(a, 
+                new Result("(x)", new double[] {1, Double.NaN, 1E20})));
+    }
+}
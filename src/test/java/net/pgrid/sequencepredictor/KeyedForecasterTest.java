@@ -0,0 +1,162 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Unit test for the KeyedForecaster class.
+ * @author Patrick Kramer
+ */
+public class KeyedForecasterTest {
+
+    // Generous, as the first detection in a fresh JVM loads the search.
+    private static final long DETECTION_TIMEOUT = 10000;
+
+    /**
+     * Tests that the predictions of a key follow its observations.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testPredict() throws NoPatternFoundException {
+        KeyedForecaster<String> forecaster = new KeyedForecaster<>(10, 1, TimeUnit.HOURS);
+        for (int n = 1; n <= 6; n++) {
+            forecaster.observe("squares", n * n);
+            forecaster.observe("powers", 1 << n);
+        }
+        assertArrayEquals(new double[] {49, 64, 81}, forecaster.predict("squares", 3), 0);
+        assertArrayEquals(new double[] {128, 256}, forecaster.predict("powers", 2), 0);
+        assertEquals(new Predictor(1, 4, 9, 16).init().getPattern(),
+                forecaster.getPattern("squares"));
+        // Predicting does not advance the key.
+        assertArrayEquals(new double[] {49}, forecaster.predict("squares", 1), 0);
+    }
+
+    /**
+     * Tests that a contradicting observation causes a new detection.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testContradiction() throws NoPatternFoundException {
+        KeyedForecaster<String> forecaster = new KeyedForecaster<>(10, 1, TimeUnit.HOURS);
+        for (int n = 0; n < 5; n++) {
+            forecaster.observe("key", n);
+        }
+        assertArrayEquals(new double[] {5}, forecaster.predict("key", 1), 0);
+        // The slope changes from 1 to 3. Detection is retried with backoff
+        // until the window only holds the new slope.
+        for (int n = 0; n < 20; n++) {
+            forecaster.observe("key", 100 + 3 * n);
+        }
+        assertArrayEquals(new double[] {160, 163}, forecaster.predict("key", 2), 0);
+    }
+
+    /**
+     * Tests that unknown keys and keys without a pattern cannot be predicted.
+     */
+    @Test
+    public void testNoPattern() {
+        KeyedForecaster<String> forecaster = new KeyedForecaster<>(10, 1, TimeUnit.HOURS);
+        forecaster.observe("short", 1);
+        forecaster.observe("short", 2);
+        for (String key : new String[] {"unknown", "short"}) {
+            try {
+                forecaster.predict(key, 1);
+                throw new AssertionError("Expected NoPatternFoundException");
+            } catch (NoPatternFoundException ex) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Tests that the least recently used key is evicted when full.
+     */
+    @Test
+    public void testLeastRecentlyUsed() {
+        KeyedForecaster<Integer> forecaster = new KeyedForecaster<>(2,
+                Long.MAX_VALUE, KeyedForecaster.DEFAULT_WINDOW,
+                DETECTION_TIMEOUT, 1, System::nanoTime);
+        forecaster.observe(1, 1);
+        forecaster.observe(2, 1);
+        forecaster.observe(1, 2);
+        forecaster.observe(3, 1);
+        assertEquals(2, forecaster.size());
+        forecaster.observe(1, 3);
+        try {
+            assertArrayEquals(new double[] {4}, forecaster.predict(1, 1), 0);
+        } catch (NoPatternFoundException ex) {
+            throw new AssertionError("Key 1 was evicted", ex);
+        }
+    }
+
+    /**
+     * Tests that idle keys are evicted after the time to live.
+     */
+    @Test
+    public void testTimeToLive() {
+        AtomicLong clock = new AtomicLong();
+        KeyedForecaster<Integer> forecaster = new KeyedForecaster<>(100, 10,
+                KeyedForecaster.DEFAULT_WINDOW,
+                DETECTION_TIMEOUT, 4, clock::get);
+        for (int key = 0; key < 10; key++) {
+            forecaster.observe(key, key);
+        }
+        clock.set(5);
+        forecaster.observe(0, 1);
+        clock.set(12);
+        forecaster.evictIdle();
+        assertEquals(1, forecaster.size());
+        clock.set(100);
+        forecaster.evictIdle();
+        assertEquals(0, forecaster.size());
+    }
+
+    /**
+     * Tests that keys can be observed from several threads at once.
+     * @throws Exception - If a thread fails.
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        KeyedForecaster<Integer> forecaster = new KeyedForecaster<>(1000, 1, TimeUnit.HOURS);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int n = 0; n < 20; n++) {
+                    for (int key = offset; key < 200; key += 4) {
+                        forecaster.observe(key, key * n + 7);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200, forecaster.size());
+        for (int key = 1; key < 200; key++) {
+            assertArrayEquals(new double[] {key * 20 + 7}, forecaster.predict(key, 1), 0);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Unit test for the Opcode enum.
+ * @author Patrick Kramer
+ */
+public class OpcodeTest {
+
+    private static final double[] SPECIAL = {
+        0, -0.0, 1, -1, 1e-300, 1e300, Double.MAX_VALUE, Double.MIN_VALUE,
+        Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    /**
+     * Tests that only the built-in operations have an opcode.
+     */
+    @Test
+    public void testOf() {
+        assertEquals(Opcode.DIFF, Opcode.of(Operations.diff()));
+        assertEquals(Opcode.DIVIDE, Opcode.of(Operations.divide()));
+        assertEquals(Opcode.INVERT, Opcode.of(Operations.invert()));
+        assertNull(Opcode.of(null));
+        assertNull(Opcode.of(Operations.create("diff", (a, b) -> b - a, (a, b) -> a + b)));
+    }
+
+    /**
+     * Tests that every opcode computes exactly the values of its operation.
+     */
+    @Test
+    public void testSameValues() {
+        Random random = new Random(7);
+        double[] in = new double[200];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = i < SPECIAL.length ? SPECIAL[i] 
+                    : (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+        }
+        double[] out = new double[in.length];
+        for (PredictOperation operation : Operations.getAll()) {
+            Opcode code = Opcode.of(operation);
+            int length = code.apply(in, in.length, out);
+            if (operation instanceof BinaryPredictOperation) {
+                BinaryPredictOperation binary = (BinaryPredictOperation) operation;
+                assertEquals(in.length - 1, length);
+                for (int i = 1; i < in.length; i++) {
+                    double a = in[i - 1];
+                    double b = in[i];
+                    assertEquals(binary.applyAsDouble(a, b), out[i - 1], 0);
+                    assertEquals(binary.applyAsDouble(a, b), code.apply(a, b), 0);
+                    assertEquals(binary.applyInverse(a, b), code.inverse(a, b), 0);
+                }
+            } else {
+                UnaryPredictOperation unary = (UnaryPredictOperation) operation;
+                assertEquals(in.length, length);
+                for (int i = 0; i < in.length; i++) {
+                    assertEquals(unary.applyAsDouble(in[i]), out[i], 0);
+                    assertEquals(unary.applyAsDouble(in[i]), code.apply(0, in[i]), 0);
+                    assertEquals(unary.applyInverse(in[i]), code.inverse(0, in[i]), 0);
+                }
+            }
+        }
+    }
+}
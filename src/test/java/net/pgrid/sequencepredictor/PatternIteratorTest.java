@@ -0,0 +1,79 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the PatternIterator class.
+ * @author Patrick Kramer
+ */
+public class PatternIteratorTest {
+    
+    /**
+     * Tests that the first alternative is the pattern found by init().
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testFirstIsInitPattern() throws NoPatternFoundException {
+        double[][] inputs = {
+            {1, 4, 9, 16},
+            {0, 1, 0, -1, 0, 1},
+            {-296, -284, -236, -44},
+            {1/2d, 2/3d, 3/4d, 4/5d, 5/6d, 6/7d},
+            // Nearly constant within the fuzzy tolerance, but not exactly.
+            {1e15, 1e15 + 1, 1e15 + 3, 1e15 + 6},
+        };
+        for (double[] input : inputs) {
+            String expected = new Predictor(input).init().getPattern();
+            Predictor first = new Predictor(input).alternatives(10).findFirst().get();
+            assertEquals(expected, first.getPattern());
+        }
+    }
+    
+    /**
+     * Tests that all alternatives are distinct and reproduce the input.
+     */
+    @Test
+    public void testAlternatives() {
+        double[] input = {2, 4, 8, 16};
+        List<Predictor> all = new Predictor(input).alternatives(4)
+                .collect(Collectors.toList());
+        assertTrue(all.size() > 1);
+        assertEquals(all.size(), all.stream().map(Predictor::getPattern).distinct().count());
+        for (Predictor p : all) {
+            assertEquals(4, p.getComputed().size());
+            assertEquals(32, p.getNext(), 1E-9);
+        }
+    }
+    
+    /**
+     * Tests that the maximum depth limits the length of the patterns.
+     */
+    @Test
+    public void testMaxDepth() {
+        double[] input = {1, 4, 9, 16, 25};
+        assertEquals(0, new Predictor(input).alternatives(1).count());
+        assertEquals("(r{n} = u{n+1} - u{n}) -> (r{n} = u{n+1} - u{n}) -> ()",
+                new Predictor(input).alternatives(2).findFirst().get().getPattern());
+        assertEquals(1, new Predictor(4, 4, 4).alternatives(0).count());
+    }
+}
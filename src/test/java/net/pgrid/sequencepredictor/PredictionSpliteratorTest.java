@@ -0,0 +1,129 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Test;
+
+/**
+ * Unit test for the PredictionSpliterator class.
+ * @author Patrick Kramer
+ */
+public class PredictionSpliteratorTest {
+    
+    /**
+     * Relative accuracy used for comparing predictions.
+     */
+    public static final double COMPARE_ACCURACY = 1E-9;
+    
+    /**
+     * Asserts that the parallel Stream over the range produces the same values
+     * as sequentially calling {@code getNext()}.
+     * @param from   The start of the range.
+     * @param to     The end of the range.
+     * @param values The input values.
+     * @throws NoPatternFoundException - Never
+     */
+    private static void assertRange(long from, long to, double... values) 
+            throws NoPatternFoundException {
+        Predictor predictor = new Predictor(values).init();
+        double[] actual = predictor.stream(from, to).parallel().toArray();
+        
+        Predictor reference = new Predictor(values).init();
+        double[] expected = new double[(int) (to - from)];
+        for (long i = 0; i < to; i++) {
+            double next = reference.getNext();
+            if (i >= from) {
+                expected[(int) (i - from)] = next;
+            }
+        }
+        
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("index " + (from + i), expected[i], actual[i], 
+                    Math.max(1, Math.abs(expected[i])) * COMPARE_ACCURACY);
+        }
+    }
+    
+    /**
+     * Tests a polynomial sequence, which seeks using a closed form.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testPolynomial() throws NoPatternFoundException {
+        assertRange(0, 20000, -6, 0, 20, 66, 150);
+    }
+    
+    /**
+     * Tests a geometric sequence, which seeks using a closed form.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testGeometric() throws NoPatternFoundException {
+        assertRange(3, 1000, 1, 1.01, 1.0201);
+    }
+    
+    /**
+     * Tests an alternating sequence, which seeks using checkpoints.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testAlternating() throws NoPatternFoundException {
+        assertRange(17, 50000, 0, 1, 0, -1, 0, 1);
+    }
+    
+    /**
+     * Tests a fraction sequence, which seeks using checkpoints.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testFractions() throws NoPatternFoundException {
+        assertRange(0, 5000, 1/2d, 2/3d, 3/4d, 4/5d, 5/6d, 6/7d);
+    }
+    
+    /**
+     * Tests that the range does not advance the Predictor itself.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testDoesNotAdvancePredictor() throws NoPatternFoundException {
+        Predictor predictor = new Predictor(1, 2, 3).init();
+        assertArrayEquals(new double[] {4, 5, 6}, 
+                predictor.stream(0, 3).toArray(), 0);
+        assertEquals(4, predictor.getNext(), 0);
+        assertArrayEquals(new double[] {7, 8}, 
+                predictor.stream(2, 4).toArray(), 0);
+    }
+    
+    /**
+     * Tests that the Spliterator splits into SIZED halves.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testSplit() throws NoPatternFoundException {
+        Predictor predictor = new Predictor(1, 4, 9, 16).init();
+        PredictionSpliterator spliterator = 
+                new PredictionSpliterator(predictor, 0, 4096);
+        PredictionSpliterator.OfDouble prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertEquals(2048, prefix.getExactSizeIfKnown());
+        assertEquals(2048, spliterator.getExactSizeIfKnown());
+        spliterator.tryAdvance((double d) -> assertEquals(2053 * 2053, d, 0));
+    }
+}
@@ -16,6 +16,12 @@
  */
 package net.pgrid.sequencepredictor;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
@@ -49,4 +55,160 @@ public class PredictorUnitTest {
         assertFalse("+/-epsilon", Predictor.fuzzyEq(-Predictor.FUZZY_EQ_THRESHOLD, Predictor.FUZZY_EQ_THRESHOLD));
         assertFalse("epsilon 0",  Predictor.fuzzyEq(0, Predictor.FUZZY_EQ_THRESHOLD));
     }
+    
+    /**
+     * Tests that a search is aborted once its deadline has passed.
+     * @throws NoPatternFoundException - Expected
+     */
+    @Test(expected = SearchTimeoutException.class)
+    public void testInitTimeout() throws NoPatternFoundException {
+        new Predictor(1, 4, 9, 16).init(0, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Tests that prefix detection on a long input finds the polynomial 
+     * pattern and correct predictions.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testInitPrefix() throws NoPatternFoundException {
+        double[] values = new double[100000];
+        for (int n = 0; n < values.length; n++) {
+            values[n] = 3.0 * n * n - 7 * n + 2;
+        }
+        Predictor predictor = new Predictor(values).initPrefix();
+        assertEquals(new Predictor(3, 1, 5, 15).init().getPattern(), predictor.getPattern());
+        for (long n = values.length; n < values.length + 10; n++) {
+            assertEquals(3.0 * n * n - 7 * n + 2, predictor.getNext(), 0);
+        }
+    }
+    
+    /**
+     * Tests that prefix detection widens the prefix when the pattern of the
+     * first prefix does not hold for the complete input.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testInitPrefixWidens() throws NoPatternFoundException {
+        double[] values = new double[1000];
+        for (int n = 0; n < values.length; n++) {
+            values[n] = Math.pow(n - 3, 5) + 2 * n;
+        }
+        Predictor full = new Predictor(values).init();
+        Predictor prefix = new Predictor(values).initPrefix(4);
+        assertEquals(full.getPattern(), prefix.getPattern());
+        assertEquals(full.getNext(), prefix.getNext(), 0);
+    }
+    
+    /**
+     * Tests that prefix detection continues from the last value of the 
+     * constant level, as init() does, when rounding makes its values differ.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testInitPrefixKeepsLastConstant() throws NoPatternFoundException {
+        double[] values = new double[1000];
+        for (int n = 0; n < values.length; n++) {
+            values[n] = 3 * Math.pow(1.01, n);
+        }
+        // Within the tolerance of the constant ratio, but not equal to it.
+        values[values.length - 1] *= 1 + 1E-12;
+        Predictor full = new Predictor(values).init();
+        Predictor prefix = new Predictor(values).initPrefix();
+        assertEquals(full.getPattern(), prefix.getPattern());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(full.getNext(), prefix.getNext(), 0);
+        }
+    }
+    
+    /**
+     * Tests that prefix detection compares integer levels exactly, as init()
+     * does, and does not adopt a pattern whose constant level only matches 
+     * within the tolerance.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testInitPrefixExact() throws NoPatternFoundException {
+        double[] values = new double[1000];
+        for (int n = 0; n < values.length; n++) {
+            values[n] = 1E12 * n + (n >= 500 ? 1 : 0);
+        }
+        Predictor full = new Predictor(values).init();
+        Predictor prefix = new Predictor(values).initPrefix();
+        assertEquals(full.getPattern(), prefix.getPattern());
+        assertEquals(full.getNext(), prefix.getNext(), 0);
+    }
+    
+    /**
+     * Tests that compaction keeps only the values generation needs, and does
+     * not change the predictions.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testCompact() throws NoPatternFoundException {
+        double[] values = new double[10000];
+        for (int n = 0; n < values.length; n++) {
+            values[n] = 2.0 * n * n * n - n + 5;
+        }
+        Predictor full = new Predictor(values).init();
+        Predictor compact = new Predictor(values).init().compact();
+        assertEquals(full.getPattern(), compact.getPattern());
+        for (Predictor level = compact; level != null; level = level.getDiffs()) {
+            assertEquals(1, level.getComputed().size());
+        }
+        assertEquals(full.stream(1000, 1010).boxed().collect(Collectors.toList()),
+                compact.stream(1000, 1010).boxed().collect(Collectors.toList()));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(full.getNext(), compact.getNext(), 0);
+        }
+        assertEquals(1, compact.getComputed().size());
+        
+        // Periodic patterns keep a full period.
+        Predictor periodic = new Predictor(1, 2, 3, 1, 2, 3, 1, 2).init().compact();
+        assertEquals(Arrays.asList(3.0, 1.0, 2.0), periodic.getComputed());
+        assertEquals(3, periodic.getNext(), 0);
+        assertEquals(1, periodic.getNext(), 0);
+        assertEquals(3, periodic.getComputed().size());
+    }
+    
+    /**
+     * Tests that state copies and compaction keep the complete history of 
+     * operations that do not bound it with {@code historySize()}.
+     */
+    @Test
+    public void testUnboundedHistory() {
+        PredictOperation sum = new PredictOperation() {
+            @Override
+            public List<Double> apply(List<Double> input) {
+                List<Double> result = new ArrayList<>();
+                for (int i = 1; i < input.size(); i++) {
+                    result.add(input.get(i) - input.get(i - 1));
+                }
+                return result;
+            }
+
+            @Override
+            public Double computeNext(List<Double> original, List<Double> computed) {
+                // The first value plus all differences.
+                double next = original.get(0);
+                for (double d : computed) {
+                    next += d;
+                }
+                return next;
+            }
+
+            @Override
+            public String description() {
+                return "sum";
+            }
+        };
+        Predictor predictor = new Predictor(Arrays.asList(1.0, 3.0, 5.0), sum,
+                new Predictor(2, 2));
+        assertEquals(Arrays.asList(7.0, 9.0, 11.0), 
+                predictor.stream(0, 3).boxed().collect(Collectors.toList()));
+        predictor.compact();
+        assertEquals(7, predictor.getNext(), 0);
+        assertEquals(9, predictor.getNext(), 0);
+        assertEquals(Arrays.asList(1.0, 3.0, 5.0, 7.0, 9.0), predictor.getComputed());
+    }
 }
@@ -0,0 +1,324 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import net.pgrid.sequencepredictor.DifferentialHarness.Report;
+import net.pgrid.sequencepredictor.SequenceGenerator.Sample;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the SearchTableau class.
+ * @author Patrick Kramer
+ */
+public class SearchTableauTest {
+    
+    /**
+     * The search timeout of the engines, in milliseconds.
+     */
+    public static final long TIMEOUT = 200;
+    
+    /**
+     * Tests that the tableau finds the same patterns as the recursive search
+     * on a generated corpus.
+     */
+    @Test
+    public void testCorpus() {
+        List<Sample> corpus = new SequenceGenerator(23).corpus(60, 12, 4);
+        Report report = new DifferentialHarness(DifferentialHarness.recursive(TIMEOUT), 
+                DifferentialHarness.reference(TIMEOUT), 10).run(corpus);
+        assertTrue(report.toString(), report.getMismatches().isEmpty());
+        assertTrue(report.getCompared() > corpus.size() / 2);
+    }
+    
+    /**
+     * Tests that the tableau finds the same patterns as the recursive search
+     * on the PredictorTest sequences.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testPredictorTest() throws NoPatternFoundException {
+        for (Object[] parameters : PredictorTest.parameters()) {
+            double[] values = (double[]) parameters[0];
+            Predictor expected = new Predictor(values).initRecursive(null, new SearchContext());
+            Predictor actual = new Predictor(values).init();
+            assertEquals(expected.getPattern(), actual.getPattern());
+            for (Predictor e = expected, a = actual; e != null; e = e.getDiffs(), a = a.getDiffs()) {
+                assertEquals(e.getComputed(), a.getComputed());
+            }
+        }
+    }
+    
+    /**
+     * Tests that integer levels are only constant when exactly equal.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testExact() throws NoPatternFoundException {
+        // All values are within FUZZY_EQ_THRESHOLD of each other.
+        double[] counter = {1E15, 1E15 + 1, 1E15 + 3, 1E15 + 6};
+        Predictor predictor = new Predictor(counter).init();
+        assertEquals("(r{n} = u{n+1} - u{n}) -> (r{n} = u{n+1} - u{n}) -> ()", 
+                predictor.getPattern());
+        assertEquals(1E15 + 10, predictor.getNext(), 0);
+    }
+    
+    /**
+     * Tests that branches which leave the integers, or overflow, continue in
+     * doubles and find the same patterns as the recursive search.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testFallback() throws NoPatternFoundException {
+        double[][] inputs = {
+            {0, 4, 10, 19, 32.5},               // differences grow by 3/2
+            {1, 2, 3, 5, 8, 13, 21},            // needs fractional ratios
+            {0x1p62, -0x1p62, 0x1p62, -0x1p62}, // differences overflow
+            {3, 1, 3, 1, 3},
+        };
+        for (double[] input : inputs) {
+            String expected;
+            try {
+                expected = new Predictor(input).initRecursive(null, new SearchContext())
+                        .getPattern();
+            } catch (NoPatternFoundException ex) {
+                expected = ex.getMessage();
+            }
+            String actual;
+            try {
+                actual = new Predictor(input).init().getPattern();
+            } catch (NoPatternFoundException ex) {
+                actual = ex.getMessage();
+            }
+            assertEquals(expected, actual);
+        }
+    }
+    
+    /**
+     * Tests that the tableau of a thread is reused, and that the pooled 
+     * tableau is not shared with a nested search.
+     */
+    @Test
+    public void testPool() {
+        SearchTableau outer = SearchTableau.acquire();
+        SearchTableau nested = SearchTableau.acquire();
+        assertTrue(outer != nested);
+        SearchTableau.release(nested);
+        SearchTableau.release(outer);
+        SearchTableau again = SearchTableau.acquire();
+        SearchTableau.release(again);
+        assertSame(outer, again);
+    }
+    
+    /**
+     * Tests the detection of periodic sequences by the pre-pass.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testPeriodic() throws NoPatternFoundException {
+        Predictor cycle = new Predictor(1, 2, 3, 1, 2, 3, 1, 2, 3).init();
+        assertEquals("(r{n} = u{n+3} - u{n}) -> ()", cycle.getPattern());
+        assertEquals(Arrays.asList(1.0, 2.0, 3.0, 1.0),
+                cycle.stream().limit(4).boxed().collect(Collectors.toList()));
+        
+        // Repeating with an offset per period.
+        Predictor steps = new Predictor(1, 3, 3, 5, 5).init();
+        assertEquals("(r{n} = u{n+2} - u{n}) -> ()", steps.getPattern());
+        assertEquals(7, steps.getNext(), 0);
+        assertEquals(7, steps.getNext(), 0);
+        assertEquals(9, steps.getNext(), 0);
+        
+        Predictor wave = new Predictor(0.5, 0.25, 0.5, -0.25, 0.5, 0.25, 0.5, 
+                -0.25, 0.5).init();
+        assertEquals("(r{n} = u{n+4} - u{n}) -> ()", wave.getPattern());
+        assertEquals(0.25, wave.getNext(), 0);
+        assertEquals(0.5, wave.getNext(), 0);
+        assertEquals(-0.25, wave.getNext(), 0);
+        
+        // The differences have to repeat at least twice, and polynomials are
+        // never periodic.
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(1., 2., 4., 8., 9.)));
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(
+                0.5, 0.25, 0.5, -0.25, 0.5, 0.25)));
+        Predictor cubic = new Predictor(0, 4, 5, 5, 6, 10).init();
+        assertEquals("(r{n} = u{n+1} - u{n}) -> (r{n} = u{n+1} - u{n}) -> "
+                + "(r{n} = u{n+1} - u{n}) -> ()", cubic.getPattern());
+        assertEquals(19, cubic.getNext(), 0);
+        assertEquals(35, cubic.getNext(), 0);
+        
+        // Integers are compared exactly, so near-periodic counters are not.
+        double big = 1L << 40;
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(
+                0., big, big, 2 * big, 2 * big, 3 * big + 1)));
+        assertTrue(SearchTableau.prepass(Arrays.asList(
+                0., big, big, 2 * big, 2 * big, 3 * big + 0.5)) != null);
+        
+        // Constant and arithmetic sequences and too short inputs are left to
+        // the search.
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(2., 2., 2., 2.)));
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(1., 2., 3., 4.)));
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(1., 2., 1.)));
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(1., 2., 4., 1.)));
+        assertEquals("(r{n} = u{n+1} - u{n}) -> ()", 
+                new Predictor(1, 2, 3, 4).init().getPattern());
+    }
+    
+    /**
+     * Tests that periodic patterns are generated by the other generators.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testPeriodicGenerators() throws NoPatternFoundException {
+        // Long enough for the backoff of the forecaster to retry detection
+        // with two periods in its window.
+        double[] values = { 3, 1, 4, 1, 5, 3, 1, 4, 1, 5, 3, 1, 4, 1, 5, 3, 1, 
+            4, 1, 5, 3 };
+        double[] expected = { 1, 4, 1, 5, 3, 1, 4 };
+        Predictor predictor = new Predictor(values).init();
+        
+        double[] compiled = new double[expected.length];
+        predictor.compile().fill(compiled);
+        assertArrayEquals(expected, compiled, 0);
+        assertArrayEquals(expected, 
+                new Predictor(values).initRecursive(null, new SearchContext())
+                        .stream().limit(expected.length).toArray(), 0);
+        assertEquals(predictor.getPattern(), 
+                new Predictor(values).alternatives(1).findFirst().get().getPattern());
+        assertEquals(predictor.getPattern(), new ColumnarPredictor(
+                new double[][] { values }).init()[0].getPattern());
+        
+        KeyedForecaster<String> forecaster = new KeyedForecaster<>(1, 1, TimeUnit.HOURS);
+        for (double value : values) {
+            forecaster.observe("key", value);
+        }
+        assertArrayEquals(expected, forecaster.predict("key", expected.length), 0);
+        assertArrayEquals(expected, forecaster.predict("key", expected.length), 0);
+        forecaster.observe("key", 1);
+        assertArrayEquals(new double[] { 4, 1 }, forecaster.predict("key", 2), 0);
+    }
+    
+    /**
+     * Tests the detection of polynomial and geometric sequences by the
+     * pre-pass.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testClosedForm() throws NoPatternFoundException {
+        String diff = "(" + Operations.diff().description() + ") -> ";
+        String divide = "(" + Operations.divide().description() + ") -> ";
+        assertEquals(divide + "()", new Predictor(3, 6, 12, 24, 48, 96).init().getPattern());
+        assertEquals(divide + "()", new Predictor(1, 1.5, 2.25, 3.375, 5.0625).init().getPattern());
+        // 3 * 2^n + 1
+        Predictor affine = new Predictor(4, 7, 13, 25, 49, 97).init();
+        assertEquals(diff + divide + "()", affine.getPattern());
+        assertEquals(193, affine.getNext(), 0);
+        // Integers with ratios that are not integral.
+        assertEquals(divide + "()", new Predictor(9, -6, 4).init().getPattern());
+        assertEquals(null, SearchTableau.prepass(Arrays.asList(9., -6., 4., 3.)));
+        
+        // Polynomials are found with the same levels as the search finds 
+        // them, and are left to the search by the static pre-pass.
+        SequenceGenerator generator = new SequenceGenerator(5);
+        for (int degree = 1; degree <= SearchTableau.MAX_DEGREE + 1; degree++) {
+            double[] values = generator.polynomial(degree, degree + 4).getValues();
+            Predictor expected = new Predictor(values).initRecursive(null, new SearchContext());
+            Predictor actual = new Predictor(values).init();
+            assertEquals(expected.getPattern(), actual.getPattern());
+            for (Predictor e = expected, a = actual; e != null; e = e.getDiffs(), a = a.getDiffs()) {
+                assertEquals(e.getComputed(), a.getComputed());
+            }
+            List<Double> list = new Predictor(values).getComputed();
+            assertEquals(null, SearchTableau.prepass(list));
+        }
+        
+        // The pattern is returned first and only once by the alternatives.
+        List<String> patterns = new Predictor(2, 4, 8, 16, 32).alternatives(4)
+                .map(Predictor::getPattern).collect(Collectors.toList());
+        assertEquals(divide + "()", patterns.get(0));
+        assertEquals(patterns.size(), patterns.stream().distinct().count());
+    }
+    
+    /**
+     * Tests that levels that narrowly miss being constant are recomputed in
+     * double-double precision.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testEscalation() throws NoPatternFoundException {
+        // 3 * (n+4)! / 4!, whose differences divided, differenced twice and
+        // inverted are the cubic 60, 105, 168, ..., which only misses being
+        // found in doubles by the rounding of the division.
+        double[] values = { 3, 15, 90, 630, 5040, 45360, 453600, 4989600,
+            59875200, 778377600 };
+        PredictOperation diff = Operations.diff();
+        PredictOperation[] chain = { diff, Operations.divide(), diff, diff,
+            Operations.invert(), diff, diff, diff };
+        double[] high = new double[values.length];
+        double[] low = new double[values.length];
+        assertEquals(3, DoubleDouble.replay(values, values.length, chain,
+                chain.length, high, low));
+        assertArrayEquals(new double[] { 3, 3, 3 }, Arrays.copyOf(high, 3), 1e-15);
+        
+        Predictor predictor = new Predictor(values).init();
+        assertEquals(chain.length + 1, predictor.getPattern().split(" -> ").length);
+        assertEquals(10897286400., predictor.getNext(), 1e-4);
+        Predictor expected = new Predictor(values).initRecursive(null, new SearchContext());
+        assertEquals(expected.getPattern(), predictor.getPattern());
+        assertEquals(predictor.getPattern(),
+                new Predictor(values).alternatives(chain.length).findFirst().get().getPattern());
+        assertEquals(predictor.getPattern(), new ColumnarPredictor(
+                new double[][] { values }).init()[0].getPattern());
+        
+        // Inputs that are not integers are rounded themselves, and are not
+        // recomputed.
+        double[] scaled = Arrays.stream(values).map(v -> v / 7).toArray();
+        assertEquals(-1, DoubleDouble.replay(scaled, scaled.length, chain,
+                chain.length, high, low));
+        assertTrue(DoubleDouble.nearMiss(new double[] { 1, 1 + 1e-8, 1 }, 3));
+        assertTrue(!DoubleDouble.nearMiss(new double[] { 1, 1 + 1e-8 }, 2));
+        assertTrue(!DoubleDouble.nearMiss(new double[] { 1, 1 + 1e-5, 1 }, 3));
+        assertTrue(!DoubleDouble.nearMiss(new double[] { 1, 1, 1 }, 3));
+    }
+    
+    /**
+     * Tests the errors for invalid input.
+     */
+    @Test
+    public void testErrors() {
+        String[] expected = {
+            "Not enough values to find pattern",
+            "Found non-real number in sequence",
+        };
+        double[][] inputs = { {1}, {1, Double.NaN, 3} };
+        for (int i = 0; i < inputs.length; i++) {
+            try {
+                new Predictor(inputs[i]).init();
+            } catch (NoPatternFoundException ex) {
+                assertEquals(expected[i], ex.getMessage());
+                continue;
+            }
+            throw new AssertionError("No exception for input " + i);
+        }
+    }
+}
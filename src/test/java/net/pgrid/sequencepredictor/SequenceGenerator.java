@@ -0,0 +1,380 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.StringJoiner;
+
+/**
+ * Generates synthetic sequences for benchmarks and stress tests.
+ *
+ * The generator covers every shape the chains of {@code Operations} can
+ * express: polynomials, exponentials, alternations, rational functions and
+ * random compositions of operations. It also generates adversarial inputs
+ * without a pattern, which make the search as broad as possible.
+ *
+ * All sequences only depend on the seed and the order of the calls, so a
+ * corpus can be reproduced exactly from its seed.
+ *
+ * @author Patrick Kramer
+ */
+public class SequenceGenerator {
+
+    /**
+     * The maximum amount of attempts to generate a finite, non-zero composed
+     * sequence.
+     */
+    public static final int MAX_ATTEMPTS = 100;
+
+    /**
+     * The factors used as the ratio of exponential sequences.
+     */
+    private static final double[] RATIOS = { -3, -2, -0.5, 0.5, 2, 3 };
+
+    /**
+     * The families of generated sequences.
+     */
+    public enum Family {
+        /** Polynomials of a given degree. */
+        POLYNOMIAL,
+        /** Scaled and translated exponentials, a * r^n + b. */
+        EXPONENTIAL,
+        /** Alternating signs over a linear sequence, plus an offset. */
+        ALTERNATING,
+        /** Rational functions, (a*n + b) / (c*n + d). */
+        RATIONAL,
+        /** Random chains of operations of a given depth. */
+        COMPOSED,
+        /** Random values without a pattern. */
+        NO_PATTERN
+    }
+
+    /**
+     * A generated sequence.
+     */
+    public static final class Sample {
+        private final Family family;
+        private final String description;
+        private final double[] values;
+
+        /**
+         * Initializes a new Sample.
+         * @param family      The family of the sequence.
+         * @param description A description of the generated sequence.
+         * @param values      The values of the sequence.
+         */
+        public Sample(Family family, String description, double[] values) {
+            this.family = family;
+            this.description = description;
+            this.values = values;
+        }
+
+        public Family getFamily() {
+            return family;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Returns the values of the sequence.
+         * @return The values, not to be modified.
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final Random random;
+
+    /**
+     * Initializes a new SequenceGenerator.
+     * @param seed The seed of the random generator.
+     */
+    public SequenceGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a mixed corpus of sequences.
+     *
+     * The families are used in turn, in the order of {@code Family}. The
+     * degree of polynomials and the depth of compositions vary from 1 up to
+     * {@code maxDepth}.
+     *
+     * @param count    The amount of sequences.
+     * @param length   The amount of values per sequence.
+     * @param maxDepth The maximum degree or depth, at least 1.
+     * @return         The generated sequences.
+     */
+    public List<Sample> corpus(int count, int length, int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Maximum depth less than 1");
+        }
+        Family[] families = Family.values();
+        List<Sample> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int depth = 1 + random.nextInt(maxDepth);
+            result.add(generate(families[i % families.length], depth, length));
+        }
+        return result;
+    }
+
+    /**
+     * Generates a sequence of the given family.
+     * @param family The family.
+     * @param depth  The degree of polynomials and the depth of compositions,
+     *               ignored by the other families.
+     * @param length The amount of values.
+     * @return       The generated sequence.
+     */
+    public Sample generate(Family family, int depth, int length) {
+        switch (family) {
+            case POLYNOMIAL:  return polynomial(depth, length);
+            case EXPONENTIAL: return exponential(length);
+            case ALTERNATING: return alternating(length);
+            case RATIONAL:    return rational(length);
+            case COMPOSED:    return composed(depth, length);
+            case NO_PATTERN:  return noPattern(length);
+            default: throw new AssertionError(family);
+        }
+    }
+
+    /**
+     * Generates a polynomial sequence with small integer coefficients.
+     * @param degree The degree of the polynomial.
+     * @param length The amount of values.
+     * @return       The generated sequence.
+     */
+    public Sample polynomial(int degree, int length) {
+        double[] coefficients = new double[degree + 1];
+        for (int i = 0; i <= degree; i++) {
+            coefficients[i] = smallInt();
+        }
+        double[] values = new double[length];
+        for (int n = 0; n < length; n++) {
+            double value = 0;
+            for (int i = degree; i >= 0; i--) {
+                value = value * n + coefficients[i];
+            }
+            values[n] = value;
+        }
+        return new Sample(Family.POLYNOMIAL, "polynomial of degree " + degree, values);
+    }
+
+    /**
+     * Generates an exponential sequence, a * r^n + b.
+     * @param length The amount of values.
+     * @return       The generated sequence.
+     */
+    public Sample exponential(int length) {
+        double a = smallInt();
+        double r = RATIOS[random.nextInt(RATIOS.length)];
+        double b = random.nextBoolean() ? 0 : smallInt();
+        double[] values = new double[length];
+        for (int n = 0; n < length; n++) {
+            values[n] = a * Math.pow(r, n) + b;
+        }
+        return new Sample(Family.EXPONENTIAL,
+                "exponential " + a + " * " + r + "^n + " + b, values);
+    }
+
+    /**
+     * Generates an alternating sequence, c + (-1)^n * (a + b*n).
+     * @param length The amount of values.
+     * @return       The generated sequence.
+     */
+    public Sample alternating(int length) {
+        double a = smallInt();
+        double b = random.nextBoolean() ? 0 : smallInt();
+        double c = random.nextBoolean() ? 0 : smallInt();
+        double[] values = new double[length];
+        for (int n = 0; n < length; n++) {
+            values[n] = c + ((n & 1) == 0 ? 1 : -1) * (a + b * n);
+        }
+        return new Sample(Family.ALTERNATING,
+                "alternating " + c + " + (-1)^n * (" + a + " + " + b + "n)", values);
+    }
+
+    /**
+     * Generates a rational sequence, (a*n + b) / (c*n + d).
+     *
+     * The denominator is positive for all values, and the sequence is never
+     * constant.
+     * @param length The amount of values.
+     * @return       The generated sequence.
+     */
+    public Sample rational(int length) {
+        double a, b, c, d;
+        do {
+            a = smallInt();
+            b = smallInt();
+            c = 1 + random.nextInt(5);
+            d = 1 + random.nextInt(5);
+        } while (a * d == b * c);
+        double[] values = new double[length];
+        for (int n = 0; n < length; n++) {
+            values[n] = (a * n + b) / (c * n + d);
+        }
+        return new Sample(Family.RATIONAL,
+                "rational (" + a + "n + " + b + ") / (" + c + "n + " + d + ")", values);
+    }
+
+    /**
+     * Generates a sequence from a random chain of operations.
+     *
+     * The chain consists of {@code depth} operations of {@code Operations},
+     * respecting {@code canApplyAfter}, over a constant. The sequence is
+     * generated by the Predictor itself, starting from small random values on
+     * every level. Chains that produce zero values, which no division can 
+     * follow, are rejected. If no chain produces suitable values after
+     * {@code MAX_ATTEMPTS} attempts, which happens for deep chains of
+     * divisions on long sequences, a polynomial of degree {@code depth} is
+     * generated instead.
+     *
+     * @param depth  The amount of operations.
+     * @param length The amount of values.
+     * @return       The generated sequence.
+     */
+    public Sample composed(int depth, int length) {
+        List<PredictOperation> all = Operations.getAll();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            List<PredictOperation> chain = new ArrayList<>(depth);
+            PredictOperation prev = null;
+            while (chain.size() < depth) {
+                PredictOperation op = all.get(random.nextInt(all.size()));
+                if (prev == null || op.canApplyAfter(prev)) {
+                    chain.add(op);
+                    prev = op;
+                }
+            }
+            double[] values = generate(chain, length);
+            if (values != null) {
+                StringJoiner description = new StringJoiner(") -> (", "(", ") -> ()");
+                chain.forEach(op -> description.add(op.description()));
+                return new Sample(Family.COMPOSED, description.toString(), values);
+            }
+        }
+        return polynomial(depth, length);
+    }
+
+    /**
+     * Generates random values without a pattern.
+     *
+     * The values are uniformly distributed in [1, 2), so no operation
+     * produces a zero or non-finite value, and no branch of the search is cut
+     * short. Searching these sequences takes time exponential in their length.
+     *
+     * @param length The amount of values.
+     * @return       The generated sequence.
+     */
+    public Sample noPattern(int length) {
+        double[] values = new double[length];
+        for (int n = 0; n < length; n++) {
+            values[n] = 1 + random.nextDouble();
+        }
+        return new Sample(Family.NO_PATTERN, "no pattern", values);
+    }
+
+    /**
+     * Generates the values of the given chain of operations.
+     * @param chain  The operations, from the top level down.
+     * @param length The amount of values.
+     * @return       The values, or null if they are not all finite and 
+     *               non-zero.
+     */
+    private double[] generate(List<PredictOperation> chain, int length) {
+        // The first value of every level. Below a unary operation the value
+        // is determined by the level above, below a binary operation it is
+        // free.
+        int depth = chain.size();
+        double[] first = new double[depth + 1];
+        first[0] = smallInt();
+        for (int i = 0; i < depth; i++) {
+            PredictOperation op = chain.get(i);
+            if (op instanceof UnaryPredictOperation) {
+                first[i + 1] = ((UnaryPredictOperation) op).applyAsDouble(first[i]);
+            } else if (op == Operations.divide()) {
+                first[i + 1] = RATIOS[random.nextInt(RATIOS.length)];
+            } else {
+                first[i + 1] = smallInt();
+            }
+        }
+
+        Predictor level = null;
+        for (int i = depth; i >= 0; i--) {
+            level = new Predictor(Collections.singletonList(first[i]),
+                    i < depth ? chain.get(i) : null, level);
+        }
+        double[] values = new double[length];
+        if (length > 0) {
+            values[0] = first[0];
+        }
+        for (int n = 1; n < length; n++) {
+            values[n] = level.getNext();
+            if (!Double.isFinite(values[n]) || values[n] == 0) {
+                return null;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns a random non-zero integer between -5 and 5.
+     * @return The integer, as double.
+     */
+    private double smallInt() {
+        int value = 1 + random.nextInt(5);
+        return random.nextBoolean() ? value : -value;
+    }
+
+    /**
+     * Prints a corpus to standard output, one comma-separated sequence per
+     * line, in the input format of the command line interface.
+     * @param args The seed, the amount of sequences, the length of every
+     *             sequence and the maximum depth.
+     */
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            System.err.println("Usage: SequenceGenerator <seed> <count> <length> <max-depth>");
+            System.exit(2);
+        }
+        List<Sample> corpus = new SequenceGenerator(Long.parseLong(args[0]))
+                .corpus(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                        Integer.parseInt(args[3]));
+        StringBuilder b = new StringBuilder();
+        for (Sample sample : corpus) {
+            b.setLength(0);
+            for (double value : sample.getValues()) {
+                if (b.length() > 0) {
+                    b.append(", ");
+                }
+                b.append(value);
+            }
+            System.out.println(b);
+        }
+    }
+}
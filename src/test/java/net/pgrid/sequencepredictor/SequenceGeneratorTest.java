@@ -0,0 +1,111 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import net.pgrid.sequencepredictor.SequenceGenerator.Family;
+import net.pgrid.sequencepredictor.SequenceGenerator.Sample;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the SequenceGenerator class.
+ * @author Patrick Kramer
+ */
+public class SequenceGeneratorTest {
+    
+    /**
+     * Tests that the same seed generates the same corpus.
+     */
+    @Test
+    public void testDeterministic() {
+        List<Sample> a = new SequenceGenerator(42).corpus(30, 20, 4);
+        List<Sample> b = new SequenceGenerator(42).corpus(30, 20, 4);
+        assertEquals(a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.get(i).getDescription(), b.get(i).getDescription());
+            assertArrayEquals(a.get(i).getValues(), b.get(i).getValues(), 0);
+        }
+    }
+    
+    /**
+     * Tests that a corpus covers every family with finite values.
+     */
+    @Test
+    public void testCorpus() {
+        Set<Family> families = EnumSet.noneOf(Family.class);
+        for (Sample sample : new SequenceGenerator(7).corpus(60, 64, 5)) {
+            families.add(sample.getFamily());
+            assertEquals(64, sample.getValues().length);
+            for (double value : sample.getValues()) {
+                assertTrue(sample.toString(), Double.isFinite(value));
+            }
+        }
+        assertEquals(EnumSet.allOf(Family.class), families);
+    }
+    
+    /**
+     * Tests that polynomials are detected with the generated degree.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testPolynomial() throws NoPatternFoundException {
+        SequenceGenerator generator = new SequenceGenerator(1);
+        for (int degree = 1; degree <= 5; degree++) {
+            double[] values = generator.polynomial(degree, 20).getValues();
+            Predictor predictor = new Predictor(values).init();
+            int depth = 0;
+            for (Predictor p = predictor; !p.isConstant(); p = p.getDiffs()) {
+                assertEquals(Operations.diff(), p.getOperation());
+                depth++;
+            }
+            assertEquals(degree, depth);
+        }
+    }
+    
+    /**
+     * Tests that composed sequences are predicted by their own pattern.
+     * @throws NoPatternFoundException - Never
+     */
+    @Test
+    public void testComposed() throws NoPatternFoundException {
+        SequenceGenerator generator = new SequenceGenerator(3);
+        for (int i = 0; i < 20; i++) {
+            Sample sample = generator.composed(2, 10);
+            double[] values = sample.getValues();
+            double[] input = new double[values.length - 1];
+            System.arraycopy(values, 0, input, 0, input.length);
+            double next = new Predictor(input).init().getNext();
+            assertEquals(sample.toString(), values[input.length], next, 
+                    Math.abs(next) * 1E-6);
+        }
+    }
+    
+    /**
+     * Tests that sequences without a pattern stay in range.
+     */
+    @Test
+    public void testNoPattern() {
+        for (double value : new SequenceGenerator(5).noPattern(1000).getValues()) {
+            assertTrue(value >= 1 && value < 2);
+        }
+    }
+}
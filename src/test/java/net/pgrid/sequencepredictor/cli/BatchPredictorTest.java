@@ -0,0 +1,99 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the BatchPredictor class.
+ * @author Patrick Kramer
+ */
+public class BatchPredictorTest {
+    
+    /**
+     * Runs the BatchPredictor over the given input.
+     * @param workers     The amount of workers.
+     * @param predictions The amount of predictions.
+     * @param input       The input.
+     * @return            The output lines.
+     */
+    private static String[] run(int workers, int predictions, String input) 
+            throws IOException, InterruptedException {
+        StringWriter out = new StringWriter();
+        new BatchPredictor(workers, predictions)
+                .run(new BufferedReader(new StringReader(input)), out);
+        return out.toString().split(System.lineSeparator());
+    }
+    
+    /**
+     * Tests that results are written in input order, one line per input line.
+     */
+    @Test
+    public void testOrderedOutput() throws IOException, InterruptedException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            input.append(i).append(", ").append(i + 1).append(", ")
+                 .append(i + 2).append('\n');
+        }
+        String[] lines = run(4, 2, input.toString());
+        assertEquals(500, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i], lines[i].startsWith(BatchPredictor.OK + '\t'));
+            assertTrue(lines[i], lines[i].endsWith("\t" + (i + 3.0) + ", " + (i + 4.0)));
+        }
+    }
+    
+    /**
+     * Tests that invalid input and missing patterns are reported per line.
+     */
+    @Test
+    public void testErrors() throws IOException, InterruptedException {
+        String[] lines = run(2, 3, "1, 2, x\n1\n1, 4, 9, 16\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith(BatchPredictor.ERROR + '\t'));
+        assertTrue(lines[1], lines[1].startsWith(BatchPredictor.ERROR + '\t'));
+        assertTrue(lines[2], lines[2].endsWith("\t25.0, 36.0, 49.0"));
+    }
+    
+    /**
+     * Tests that a line whose pattern is not found in time is reported as an
+     * error, without holding up the other lines.
+     */
+    @Test
+    public void testTimeout() throws IOException, InterruptedException {
+        // Without a deadline, the search of this line takes seconds.
+        StringBuilder input = new StringBuilder("1, 2, 3\n");
+        for (int i = 0; i < 200; i++) {
+            input.append(i > 0 ? ", " : "").append(i * 7919 % 1009);
+        }
+        input.append("\n4, 8, 16\n");
+        StringWriter out = new StringWriter();
+        new BatchPredictor(2, 1, 1000)
+                .run(new BufferedReader(new StringReader(input.toString())), out);
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].endsWith("\t4.0"));
+        assertEquals(BatchPredictor.ERROR + "\tSearch deadline exceeded", lines[1]);
+        assertTrue(lines[2], lines[2].endsWith("\t32.0"));
+    }
+}
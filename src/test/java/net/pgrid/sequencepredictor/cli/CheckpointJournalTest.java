@@ -0,0 +1,182 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for the CheckpointJournal class, and resuming a BatchPredictor.
+ * @author Patrick Kramer
+ */
+public class CheckpointJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes an input file of the given amount of lines, with mixed line
+     * terminators.
+     * @param lines The amount of lines.
+     * @return      The input file.
+     */
+    private Path input(int lines) throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i % 11 == 0) {
+                b.append("1, x");
+            } else {
+                b.append(i).append(", ").append(i * 3).append(", ").append(i * 9);
+            }
+            b.append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\n" : "\r");
+        }
+        Path input = folder.newFile().toPath();
+        Files.write(input, b.toString().getBytes(StandardCharsets.UTF_8));
+        return input;
+    }
+
+    /**
+     * Returns the output of an uninterrupted run over the given input.
+     * @param input The input file.
+     * @return      The output.
+     */
+    private static String expected(Path input) throws IOException, InterruptedException {
+        StringWriter out = new StringWriter();
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            new BatchPredictor(2, 3).run(in, out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Tests that records are synced once per interval, and when closed.
+     */
+    @Test
+    public void testSyncInterval() throws IOException {
+        Path path = folder.newFile().toPath();
+        try (CheckpointJournal journal = new CheckpointJournal(path, 10)) {
+            for (int i = 0; i < 25; i++) {
+                journal.append(i * 2, "OK\t" + i);
+            }
+            assertEquals(2, journal.getSyncs());
+            assertEquals(25, journal.getCompleted());
+            assertEquals(48, journal.getInputOffset());
+        }
+        try (CheckpointJournal journal = new CheckpointJournal(path, 10)) {
+            assertEquals(25, journal.getCompleted());
+            assertEquals(48, journal.getInputOffset());
+            assertEquals(0, journal.getSyncs());
+        }
+    }
+
+    /**
+     * Tests that a torn or corrupt tail is dropped when the journal is opened.
+     */
+    @Test
+    public void testRecovery() throws IOException {
+        Path path = folder.newFile().toPath();
+        try (CheckpointJournal journal = new CheckpointJournal(path, 1)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(i + 1, "OK\t" + i);
+            }
+        }
+        long length = Files.size(path);
+        // A torn record, without line terminator.
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(length - 1);
+        }
+        try (CheckpointJournal journal = new CheckpointJournal(path, 1)) {
+            assertEquals(9, journal.getCompleted());
+            assertEquals(9, journal.getInputOffset());
+            journal.append(10, "OK\t9");
+        }
+        assertEquals(length, Files.size(path));
+
+        // A corrupt result in the sixth record.
+        byte[] data = Files.readAllBytes(path);
+        int line = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n' && ++line == 6) {
+                data[i - 1] ^= 1;
+                break;
+            }
+        }
+        Files.write(path, data);
+        try (CheckpointJournal journal = new CheckpointJournal(path, 1)) {
+            assertEquals(5, journal.getCompleted());
+            assertEquals(5, journal.getInputOffset());
+            StringWriter out = new StringWriter();
+            assertEquals(5, journal.replay(out));
+            assertEquals(5, new BufferedReader(new StringReader(out.toString()))
+                    .lines().filter((s) -> s.startsWith("OK\t")).count());
+        }
+    }
+
+    /**
+     * Tests that resuming an interrupted run yields the output of an
+     * uninterrupted run, and predicts only the remaining lines.
+     */
+    @Test
+    public void testResume() throws IOException, InterruptedException {
+        Path input = input(500);
+        Path path = folder.newFile().toPath();
+        String expected = expected(input);
+
+        BatchPredictor batch = new BatchPredictor(2, 3);
+        try (CheckpointJournal journal = new CheckpointJournal(path, 64)) {
+            assertEquals(500, batch.run(input, new StringWriter(), journal));
+        }
+        // Interrupts the run after 200 lines, halfway a record.
+        byte[] data = Files.readAllBytes(path);
+        int line = 0;
+        int end = 0;
+        while (line < 200) {
+            if (data[end++] == '\n') {
+                line++;
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(end + 5);
+        }
+
+        StringWriter out = new StringWriter();
+        try (CheckpointJournal journal = new CheckpointJournal(path, 64)) {
+            assertEquals(200, journal.getCompleted());
+            assertEquals(300, batch.run(input, out, journal));
+            assertEquals(500, journal.getCompleted());
+            assertEquals(Files.size(input), journal.getInputOffset());
+        }
+        assertEquals(expected, out.toString());
+
+        // A completed run only replays the journal.
+        out = new StringWriter();
+        try (CheckpointJournal journal = new CheckpointJournal(path, 64)) {
+            assertEquals(0, batch.run(input, out, journal));
+        }
+        assertEquals(expected, out.toString());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the ShardCoordinator class.
+ * @author Patrick Kramer
+ */
+public class ShardCoordinatorTest {
+
+    /**
+     * Returns an input of the given amount of lines, including invalid lines
+     * and lines without a pattern.
+     * @param lines The amount of lines.
+     * @return      The input.
+     */
+    private static String input(int lines) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i % 17 == 0) {
+                b.append("1, x\n");
+            } else if (i % 13 == 0) {
+                b.append(i).append('\n');
+            } else {
+                b.append(i).append(", ").append(i * 2).append(", ")
+                 .append(i * 4).append('\n');
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * Returns the output of a BatchPredictor for the given input.
+     * @param input The input.
+     * @return      The output.
+     */
+    private static String expected(String input) throws IOException, InterruptedException {
+        StringWriter out = new StringWriter();
+        new BatchPredictor(1, 3).run(new BufferedReader(new StringReader(input)), out);
+        return out.toString();
+    }
+
+    /**
+     * Starts a thread that runs a ShardWorker against the given port.
+     * @param port The port of the coordinator.
+     * @return     The thread.
+     */
+    private static Thread worker(int port) {
+        Thread thread = new Thread(() -> {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                ShardWorker.run(socket, new BatchPredictor(1, 3));
+            } catch (IOException | InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Tests that the results of several workers are merged in input order.
+     */
+    @Test
+    public void testWorkers() throws IOException, InterruptedException {
+        String input = input(1000);
+        ShardCoordinator coordinator = new ShardCoordinator(null, 16, 0, 1, 3);
+        StringWriter out = new StringWriter();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            for (int i = 0; i < 3; i++) {
+                worker(server.getLocalPort());
+            }
+            long lines = coordinator.run(server, new BufferedReader(new StringReader(input)),
+                    out, Collections.<Process>emptyList());
+            assertEquals(1000, lines);
+        }
+        assertEquals(expected(input), out.toString());
+    }
+
+    /**
+     * Tests that the shard of a worker that disconnects is given to another
+     * worker.
+     */
+    @Test
+    public void testWorkerDies() throws Exception {
+        String input = input(100);
+        ShardCoordinator coordinator = new ShardCoordinator(null, 10, 0, 1, 3);
+        StringWriter out = new StringWriter();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            FutureTask<Long> run = new FutureTask<>(() -> coordinator.run(server,
+                    new BufferedReader(new StringReader(input)), out,
+                    Collections.<Process>emptyList()));
+            new Thread(run).start();
+            // Takes the first shard, and disconnects without a result.
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                    server.getLocalPort())) {
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(),
+                        StandardCharsets.UTF_8);
+                writer.write(ShardCoordinator.NEXT + '\n');
+                writer.flush();
+                String header = new BufferedReader(new InputStreamReader(
+                        socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+                assertTrue(header, header.startsWith(ShardCoordinator.SHARD + " 0 "));
+            }
+            worker(server.getLocalPort());
+            assertEquals(100, (long) run.get());
+        }
+        assertEquals(expected(input), out.toString());
+    }
+
+    /**
+     * Tests that the shard of a worker that stops answering is given to 
+     * another worker.
+     */
+    @Test
+    public void testWorkerTimesOut() throws Exception {
+        String input = input(100);
+        ShardCoordinator coordinator = new ShardCoordinator(null, 10, 0, 1, 3,
+                BatchPredictor.DEFAULT_TIMEOUT, 2000);
+        StringWriter out = new StringWriter();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            FutureTask<Long> run = new FutureTask<>(() -> coordinator.run(server,
+                    new BufferedReader(new StringReader(input)), out,
+                    Collections.<Process>emptyList()));
+            new Thread(run).start();
+            // Takes the first shard, and stays connected without a result.
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                    server.getLocalPort())) {
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(),
+                        StandardCharsets.UTF_8);
+                writer.write(ShardCoordinator.NEXT + '\n');
+                writer.flush();
+                String header = new BufferedReader(new InputStreamReader(
+                        socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+                assertTrue(header, header.startsWith(ShardCoordinator.SHARD + " 0 "));
+                worker(server.getLocalPort());
+                assertEquals(100, (long) run.get(1, TimeUnit.MINUTES));
+            }
+        }
+        assertEquals(expected(input), out.toString());
+    }
+
+    /**
+     * Tests that local workers connect to the address the coordinator is
+     * bound to, and to the loopback address for the wildcard address.
+     */
+    @Test
+    public void testHost() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (ServerSocket server = new ServerSocket(0, 50, loopback)) {
+            assertEquals(loopback, ShardCoordinator.host(server));
+        }
+        try (ServerSocket server = new ServerSocket(0)) {
+            assertEquals(loopback, ShardCoordinator.host(server));
+        }
+    }
+
+    /**
+     * Tests that an empty input produces no output.
+     */
+    @Test
+    public void testEmpty() throws IOException, InterruptedException {
+        ShardCoordinator coordinator = new ShardCoordinator(null, 10, 0, 1, 3);
+        StringWriter out = new StringWriter();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            assertEquals(0, coordinator.run(server, new BufferedReader(new StringReader("")),
+                    out, Collections.<Process>emptyList()));
+        }
+        assertEquals("", out.toString());
+    }
+
+    /**
+     * Tests a run with local worker processes, one of which is killed.
+     */
+    @Test
+    public void testProcesses() throws IOException, InterruptedException {
+        String input = input(2000);
+        ShardCoordinator coordinator = new ShardCoordinator(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50, 2, 1, 3);
+        StringWriter out = new StringWriter();
+        List<Process> workers = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            InetAddress host = ShardCoordinator.host(server);
+            workers.add(coordinator.start(host, server.getLocalPort()));
+            workers.add(coordinator.start(host, server.getLocalPort()));
+            workers.get(0).destroyForcibly();
+            coordinator.run(server, new BufferedReader(new StringReader(input)), out, workers);
+        } finally {
+            workers.forEach(Process::destroy);
+        }
+        assertEquals(expected(input), out.toString());
+    }
+}
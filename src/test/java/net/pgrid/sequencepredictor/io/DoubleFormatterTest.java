@@ -0,0 +1,82 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Unit test for the DoubleFormatter class.
+ * @author Patrick Kramer
+ */
+public class DoubleFormatterTest {
+    
+    private final DoubleFormatter formatter = new DoubleFormatter();
+    private final ByteBuffer buffer = ByteBuffer.allocate(DoubleFormatter.MAX_LENGTH);
+    
+    /**
+     * Formats the double using the DoubleFormatter.
+     * @param d The double.
+     * @return  The formatted String.
+     */
+    private String format(double d) {
+        buffer.clear();
+        formatter.format(d, buffer);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Tests the layout of common values, which matches {@code Double.toString}.
+     */
+    @Test
+    public void testLayout() {
+        assertEquals("0.0", format(0));
+        assertEquals("-0.0", format(-0.0));
+        assertEquals("1.0", format(1));
+        assertEquals("-2.5", format(-2.5));
+        assertEquals("0.1", format(0.1));
+        assertEquals("0.001", format(0.001));
+        assertEquals("1.0E-4", format(0.0001));
+        assertEquals("123456.789", format(123456.789));
+        assertEquals("9999999.0", format(9999999));
+        assertEquals("1.0E7", format(1E7));
+        assertEquals("1.0E23", format(1E23));
+        assertEquals("3.141592653589793", format(Math.PI));
+        assertEquals("1.7976931348623157E308", format(Double.MAX_VALUE));
+        assertEquals("4.9E-324", format(Double.MIN_VALUE));
+        assertEquals("NaN", format(Double.NaN));
+        assertEquals("-Infinity", format(Double.NEGATIVE_INFINITY));
+    }
+    
+    /**
+     * Tests that random doubles are parsed back into the same value.
+     */
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (!Double.isNaN(d)) {
+                String s = format(d);
+                assertEquals(s, d, Double.parseDouble(s), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import net.pgrid.sequencepredictor.NoPatternFoundException;
+import net.pgrid.sequencepredictor.Predictor;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Unit test for the PredictionWriter class.
+ * @author Patrick Kramer
+ */
+public class PredictionWriterTest {
+    
+    /**
+     * Tests that the binary format contains little-endian doubles.
+     */
+    @Test
+    public void testBinary() throws IOException, NoPatternFoundException {
+        Predictor predictor = new Predictor(1, 4, 9, 16).init();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PredictionWriter writer = new PredictionWriter(PredictionWriter.Format.BINARY, 7);
+        assertEquals(800, writer.write(predictor, 100, Channels.newChannel(out)));
+        
+        ByteBuffer result = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int n = 5; n < 105; n++) {
+            assertEquals(n * n, result.getDouble(), 0);
+        }
+        assertEquals(800, writer.getBytesWritten());
+    }
+    
+    /**
+     * Tests that the text format contains one value per line.
+     */
+    @Test
+    public void testText() throws IOException, NoPatternFoundException {
+        Predictor predictor = new Predictor(1, 1/2d, 1/4d).init();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PredictionWriter(PredictionWriter.Format.TEXT, 2)
+                .write(predictor, 4, Channels.newChannel(out));
+        assertEquals("0.125\n0.0625\n0.03125\n0.015625\n", 
+                new String(out.toByteArray(), StandardCharsets.US_ASCII));
+        
+        // The Predictor itself is not advanced.
+        assertEquals(0.125, predictor.getNext(), 0);
+    }
+}
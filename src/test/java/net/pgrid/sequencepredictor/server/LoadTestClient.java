@@ -0,0 +1,208 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local load-test client for the PredictionServer.
+ * 
+ * Sends a fixed amount of requests from a number of concurrent client threads
+ * and reports the throughput and the latency percentiles. When no port is 
+ * given, an embedded PredictionServer is started on a free port first.
+ * 
+ * Usage, from the test class path:
+ * {@code LoadTestClient [port] [threads] [requests]}
+ * 
+ * @author Patrick Kramer
+ */
+public class LoadTestClient {
+    
+    /**
+     * The sequences sent by the load test, in round-robin order.
+     */
+    private static final String[] SEQUENCES = {
+        "1, 2, 3, 4",
+        "1, 4, 9, 16",
+        "-6, 0, 20, 66, 150",
+        "0, 1, 0, 1",
+        "1, 3, 3, 5, 5",
+        "0, 1, 0, -1, 0, 1",
+        "8, 32, 128, 512",
+        "-296, -284, -236, -44",
+        "5, -10, 15, -20, 25, -30, 35",
+        "1, 0.5, 0.25, 0.125",
+    };
+    
+    private final URL url;
+    private final int threads;
+    private final int requests;
+    
+    private final long[] latencies;
+    private final int[] statuses;
+    
+    /**
+     * Initializes a new LoadTestClient.
+     * @param url      The URL of the prediction endpoint.
+     * @param threads  The amount of concurrent client threads.
+     * @param requests The total amount of requests.
+     */
+    public LoadTestClient(URL url, int threads, int requests) {
+        this.url = url;
+        this.threads = threads;
+        this.requests = requests;
+        this.latencies = new long[requests];
+        this.statuses = new int[requests];
+    }
+    
+    /**
+     * Sends all requests and waits for the responses.
+     * @return The elapsed time, in nanoseconds.
+     * @throws InterruptedException - If the thread is interrupted.
+     */
+    public long run() throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < requests) {
+                    long before = System.nanoTime();
+                    statuses[i] = send(SEQUENCES[i % SEQUENCES.length]);
+                    latencies[i] = System.nanoTime() - before;
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Sends a single request and reads the complete response.
+     * @param sequence The sequence to predict.
+     * @return         The status code, or -1 if the request failed.
+     */
+    private int send(String sequence) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            byte[] body = ("{\"sequence\":\"" + sequence + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 
+                    ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                // Reading the complete response allows the connection to be reused.
+                try (InputStream response = in) {
+                    byte[] buffer = new byte[1024];
+                    while (response.read(buffer) >= 0) {
+                        // Discard
+                    }
+                }
+            }
+            return status;
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Returns the latency percentile over all requests.
+     * @param sorted     The sorted latencies.
+     * @param percentile The percentile, in [0, 100].
+     * @return           The latency, in milliseconds.
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1E6;
+    }
+    
+    /**
+     * Prints a summary of the results.
+     * @param elapsed The elapsed time, in nanoseconds.
+     */
+    public void printSummary(long elapsed) {
+        int ok = 0, overloaded = 0, failed = 0;
+        for (int status : statuses) {
+            if (status == 200) {
+                ok++;
+            } else if (status == PredictionServer.STATUS_OVERLOADED) {
+                overloaded++;
+            } else {
+                failed++;
+            }
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("requests:   %d (%d ok, %d overloaded, %d failed)%n", 
+                requests, ok, overloaded, failed);
+        System.out.printf("throughput: %.1f requests/s%n", requests * 1E9 / elapsed);
+        System.out.printf("latency:    p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", 
+                percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100));
+    }
+    
+    /**
+     * Entry point of the load test.
+     * @param args The port (0 or absent to start an embedded server), the 
+     *             amount of client threads and the amount of requests.
+     * @throws Exception - If the load test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        // Keep a connection alive per client thread (the default is 5).
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", Integer.toString(threads));
+        }
+        
+        PredictionServer server = null;
+        if (port == 0) {
+            int workers = Runtime.getRuntime().availableProcessors();
+            server = new PredictionServer(0, workers, workers * PredictionServer.MAX_BATCH_SIZE);
+            server.start();
+            port = server.getPort();
+        }
+        try {
+            URL url = new URL("http", "localhost", port, PredictionServer.PATH);
+            LoadTestClient client = new LoadTestClient(url, threads, requests);
+            client.printSummary(client.run());
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+        }
+    }
+}
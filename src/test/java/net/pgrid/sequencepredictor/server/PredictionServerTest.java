@@ -0,0 +1,210 @@
+/* 
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the PredictionServer class.
+ * @author Patrick Kramer
+ */
+public class PredictionServerTest {
+    
+    /**
+     * A sequence whose search takes far longer than any deadline of the tests.
+     */
+    private static final String HARD = "3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5, 8, 9, 7, "
+            + "9, 3, 2, 3, 8, 4, 6, 2, 6, 4, 3";
+    
+    private PredictionServer server;
+    private HttpURLConnection connection;
+    
+    @Before
+    public void setUp() throws IOException {
+        server = new PredictionServer(0, 2, 16);
+        server.start();
+    }
+    
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+    
+    /**
+     * Sends the given body to the prediction endpoint.
+     * @param method The request method.
+     * @param body   The request body.
+     * @return       The response body.
+     */
+    private String send(String method, String body) throws IOException {
+        connection = open(server, method, body);
+        return read(connection);
+    }
+    
+    /**
+     * Sends the given body to the prediction endpoint of a server.
+     * @param server The server.
+     * @param method The request method.
+     * @param body   The request body.
+     * @return       The connection, with the request sent.
+     */
+    private static HttpURLConnection open(PredictionServer server, String method, 
+            String body) throws IOException {
+        URL url = new URL("http", "localhost", server.getPort(), PredictionServer.PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+    
+    /**
+     * Reads the response of a connection.
+     * @param connection The connection.
+     * @return           The response body.
+     */
+    private static String read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() < 400 
+                ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream response = in) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = response.read(buffer)) >= 0) {
+                result.write(buffer, 0, read);
+            }
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void testPrediction() throws IOException {
+        String response = send("POST", "{\"sequence\": \"1, 4, 9, 16\", \"predictions\": 3}");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("{\"pattern\":\"(r{n} = u{n+1} - u{n}) -> (r{n} = u{n+1} - u{n}) -> ()\","
+                + "\"predictions\":[25.0,36.0,49.0]}", response);
+    }
+    
+    @Test
+    public void testNoPattern() throws IOException {
+        send("POST", "{\"sequence\": \"1\"}");
+        assertEquals(PredictionServer.STATUS_NO_PATTERN, connection.getResponseCode());
+    }
+    
+    @Test
+    public void testInvalidRequest() throws IOException {
+        send("POST", "{\"sequence\": \"1, x\"}");
+        assertEquals(400, connection.getResponseCode());
+        send("POST", "{\"values\": [1, 2, 3]}");
+        assertEquals(400, connection.getResponseCode());
+        send("POST", "{\"sequence\": \"1, 2, 3\", \"predictions\": -1}");
+        assertEquals(400, connection.getResponseCode());
+    }
+    
+    @Test
+    public void testMethodNotAllowed() throws IOException {
+        send("GET", null);
+        assertEquals(405, connection.getResponseCode());
+    }
+    
+    @Test
+    public void testDeadline() throws IOException {
+        send("POST", "{\"sequence\": \"" + HARD + "\", \"timeoutMillis\": 50}");
+        assertEquals(PredictionServer.STATUS_TIMEOUT, connection.getResponseCode());
+    }
+    
+    /**
+     * Tests that requests are rejected while the queue is full, and that 
+     * queued requests time out while they wait.
+     */
+    @Test
+    public void testOverloaded() throws Exception {
+        PredictionServer single = new PredictionServer(0, 1, 1);
+        single.start();
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        try {
+            // One request keeps the worker busy, one fills the queue.
+            String body = "{\"sequence\": \"" + HARD + "\", \"timeoutMillis\": 2000}";
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                statuses.add(clients.submit(() -> {
+                    HttpURLConnection c = open(single, "POST", body);
+                    read(c);
+                    return c.getResponseCode();
+                }));
+            }
+            List<Integer> codes = new ArrayList<>();
+            for (Future<Integer> status : statuses) {
+                codes.add(status.get());
+            }
+            // Depending on when the worker takes the first request, the 
+            // second one is queued or rejected as well.
+            assertTrue(codes.toString(), codes.contains(PredictionServer.STATUS_OVERLOADED));
+            assertTrue(codes.toString(), codes.contains(PredictionServer.STATUS_TIMEOUT));
+            assertEquals(codes.toString(), 3, codes.stream()
+                    .filter(code -> code == PredictionServer.STATUS_OVERLOADED
+                            || code == PredictionServer.STATUS_TIMEOUT).count());
+        } finally {
+            clients.shutdownNow();
+            single.stop(0);
+        }
+    }
+    
+    @Test
+    public void testStopAnswersQueued() throws Exception {
+        PredictionServer single = new PredictionServer(0, 1, 4);
+        single.start();
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            String body = "{\"sequence\": \"" + HARD + "\", \"timeoutMillis\": 10000}";
+            Future<?> busy = clients.submit(() -> read(open(single, "POST", body)));
+            Thread.sleep(200);
+            Future<Integer> queued = clients.submit(() -> {
+                HttpURLConnection c = open(single, "POST", body);
+                read(c);
+                return c.getResponseCode();
+            });
+            Thread.sleep(200);
+            single.stop(0);
+            assertEquals(PredictionServer.STATUS_UNAVAILABLE, (int) queued.get());
+            busy.cancel(true);
+        } finally {
+            clients.shutdownNow();
+            single.stop(0);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test for the Flight Recorder events of the Java 11 Events class.
+ * @author Patrick Kramer
+ */
+public class EventsTest {
+
+    /**
+     * Tests that searches, branches and bulk generation emit their events
+     * while a recording is active.
+     * @throws NoPatternFoundException - Never
+     * @throws IOException             - If the recording cannot be dumped.
+     */
+    @Test
+    public void testRecording() throws NoPatternFoundException, IOException {
+        Path file = Files.createTempFile("events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(SearchEvent.class);
+            recording.enable(BranchEvent.class).withoutThreshold();
+            recording.enable(GenerationEvent.class);
+            recording.start();
+            // No pre-pass recognizes 1/n, so the search tries branches.
+            Predictor predictor = new Predictor(1, 1 / 2d, 1 / 3d, 1 / 4d).init();
+            predictor.stream(0, 1000).sum();
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            List<RecordedEvent> searches = named(events, "Search");
+            assertEquals(1, searches.size());
+            assertEquals(4, searches.get(0).getInt("inputLength"));
+            assertEquals(Events.FOUND, searches.get(0).getString("outcome"));
+            assertFalse(named(events, "Branch").isEmpty());
+            List<RecordedEvent> generations = named(events, "Generation");
+            assertEquals(1, generations.size());
+            assertEquals(1000, generations.get(0).getLong("count"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Tests that nothing is allocated for events while no recording is
+     * active.
+     */
+    @Test
+    public void testInactive() {
+        assertTrue(Events.beginSearch() == null);
+        assertTrue(Events.beginBranch() == null);
+        assertTrue(Events.beginGeneration() == null);
+    }
+
+    /**
+     * Returns the events of the given type of this library.
+     * @param events The recorded events.
+     * @param type   The name of the type, without the package.
+     * @return       The events of that type.
+     */
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String type) {
+        String name = "net.pgrid.sequencepredictor." + type;
+        return events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Copyright (C) 2015, Patrick Kramer
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.pgrid.sequencepredictor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the PredictionPublisher class.
+ * @author Patrick Kramer
+ */
+public class PredictionPublisherTest {
+
+    private ExecutorService executor;
+    private Predictor predictor;
+
+    @Before
+    public void setUp() throws NoPatternFoundException {
+        executor = Executors.newFixedThreadPool(2);
+        predictor = new Predictor(1, 4, 9, 16).init();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that a finite subscription receives all predictions in order and
+     * completes, and that the Predictor is not advanced.
+     * @throws InterruptedException - If interrupted.
+     */
+    @Test
+    public void testFinite() throws InterruptedException {
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        new PredictionPublisher(predictor, executor, 7, 100).subscribe(recorder);
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(100, recorder.values.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals((i + 5) * (i + 5), recorder.values.get(i), 0);
+        }
+        assertEquals(1, recorder.completed);
+        assertEquals(25, predictor.getNext(), 0);
+    }
+
+    /**
+     * Tests that predictions are only generated on demand.
+     * @throws InterruptedException - If interrupted.
+     */
+    @Test
+    public void testDemand() throws InterruptedException {
+        Recorder recorder = new Recorder(0);
+        new PredictionPublisher(predictor, executor, 4, Long.MAX_VALUE).subscribe(recorder);
+        recorder.subscription.request(10);
+        recorder.awaitCount(10);
+        Thread.sleep(50);
+        assertEquals(10, recorder.values.size());
+        recorder.subscription.request(3);
+        recorder.awaitCount(13);
+        Thread.sleep(50);
+        assertEquals(13, recorder.values.size());
+        assertEquals(17 * 17, recorder.values.get(12), 0);
+    }
+
+    /**
+     * Tests that subscribers have independent cursors.
+     * @throws InterruptedException - If interrupted.
+     */
+    @Test
+    public void testIndependent() throws InterruptedException {
+        PredictionPublisher publisher = new PredictionPublisher(predictor, executor, 16, 50);
+        Recorder first = new Recorder(Long.MAX_VALUE);
+        Recorder second = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        assertTrue(first.done.await(10, TimeUnit.SECONDS));
+        assertTrue(second.done.await(10, TimeUnit.SECONDS));
+        assertEquals(first.values, second.values);
+        assertEquals(50, first.values.size());
+    }
+
+    /**
+     * Tests that a cancelled subscription stops receiving predictions.
+     * @throws InterruptedException - If interrupted.
+     */
+    @Test
+    public void testCancel() throws InterruptedException {
+        Recorder recorder = new Recorder(0) {
+            @Override
+            public void onNext(Double item) {
+                super.onNext(item);
+                if (values.size() == 5) {
+                    subscription.cancel();
+                }
+            }
+        };
+        new PredictionPublisher(predictor, executor, 100, Long.MAX_VALUE).subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        recorder.awaitCount(5);
+        Thread.sleep(50);
+        assertEquals(5, recorder.values.size());
+        assertEquals(0, recorder.completed);
+    }
+
+    /**
+     * Tests that a non-positive request is signalled as an error.
+     * @throws InterruptedException - If interrupted.
+     */
+    @Test
+    public void testInvalidRequest() throws InterruptedException {
+        Recorder recorder = new Recorder(0);
+        new PredictionPublisher(predictor, executor, 4, Long.MAX_VALUE).subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    /**
+     * Tests that an empty subscription completes without requests.
+     * @throws InterruptedException - If interrupted.
+     */
+    @Test
+    public void testEmpty() throws InterruptedException {
+        Recorder recorder = new Recorder(0);
+        new PredictionPublisher(predictor, executor, 4, 0).subscribe(recorder);
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, recorder.completed);
+    }
+
+    /**
+     * Subscriber that records the signals it receives.
+     */
+    private static class Recorder implements Flow.Subscriber<Double> {
+        final List<Double> values = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicLong received = new AtomicLong();
+        final long initial;
+        volatile Flow.Subscription subscription;
+        volatile int completed = 0;
+        volatile Throwable error;
+
+        Recorder(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initial > 0) {
+                subscription.request(initial);
+            }
+        }
+
+        @Override
+        public void onNext(Double item) {
+            synchronized (values) {
+                values.add(item);
+            }
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed++;
+            done.countDown();
+        }
+
+        void awaitCount(long count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (received.get() < count && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(count, received.get());
+        }
+    }
+}